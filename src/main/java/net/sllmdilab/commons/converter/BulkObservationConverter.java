@@ -0,0 +1,270 @@
+package net.sllmdilab.commons.converter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+import net.sllmdilab.commons.exceptions.T5Exception;
+
+import ca.uhn.fhir.model.dstu2.resource.Bundle;
+import ca.uhn.fhir.model.dstu2.resource.Observation;
+
+/**
+ * Converts large numbers of observations to T5 messages on a {@link ForkJoinPool}, one message per observation as with
+ * {@link ObservationToT5XmlConverter#convertObservationToT5XmlString(Observation)}.
+ *
+ * Observations are converted in chunks. Each worker thread serializes into its own reused buffer, so a message costs
+ * one copy into its string; a buffer grown by an unusually large message is dropped after it. Iterators are read on
+ * the calling thread and at most four chunks per worker are in flight, so a backfill streams through in bounded
+ * memory. Messages are handed to the sink on the calling thread, either in input order or as soon as their chunk is
+ * done.
+ *
+ * If a conversion fails, the remaining chunks are cancelled and its exception is thrown from the calling method.
+ */
+public class BulkObservationConverter {
+
+	public static final int DEFAULT_CHUNK_SIZE = 256;
+
+	private static final int CHUNKS_IN_FLIGHT_PER_WORKER = 4;
+
+	/** Writers grown beyond this many chars by a large message, e.g. a long waveform, are not kept. */
+	static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+	private final ObservationToT5XmlConverter converter;
+	private final ForkJoinPool pool;
+	private final int chunkSize;
+
+	private final ThreadLocal<StringWriter> writers = new ThreadLocal<StringWriter>() {
+		@Override
+		protected StringWriter initialValue() {
+			return new StringWriter(2048);
+		}
+	};
+
+	/**
+	 * Converts on the common pool.
+	 */
+	public BulkObservationConverter(ObservationToT5XmlConverter converter) {
+		this(converter, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param converter
+	 *            shared by all workers
+	 * @param pool
+	 *            its parallelism is the number of messages converted at the same time
+	 * @param chunkSize
+	 *            observations per task
+	 */
+	public BulkObservationConverter(ObservationToT5XmlConverter converter, ForkJoinPool pool, int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+		}
+		this.converter = converter;
+		this.pool = pool;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Converts a list by splitting it recursively across the pool.
+	 *
+	 * @return the messages, in the order of the observations
+	 */
+	public List<String> convert(List<Observation> observations) {
+		String[] messages = new String[observations.size()];
+		pool.invoke(new ConvertRange(observations, messages, 0, messages.length));
+		return Arrays.asList(messages);
+	}
+
+	/**
+	 * Converts observations as they are read from the iterator, e.g. the iterator of a stream.
+	 *
+	 * @param ordered
+	 *            true to hand over the messages in the order of the observations, false to hand them over as soon as
+	 *            they are done
+	 * @param sink
+	 *            called on the calling thread
+	 */
+	public void convert(Iterator<Observation> observations, boolean ordered, Consumer<String> sink) {
+		int maxInFlight = Math.max(1, pool.getParallelism() * CHUNKS_IN_FLIGHT_PER_WORKER);
+		Deque<Future<List<String>>> inFlight = new ArrayDeque<Future<List<String>>>();
+		CompletionService<List<String>> completed = ordered ? null : new ExecutorCompletionService<List<String>>(pool);
+
+		try {
+			while (observations.hasNext()) {
+				List<Observation> chunk = nextChunk(observations);
+				if (ordered) {
+					inFlight.add(pool.submit(() -> convertChunk(chunk)));
+				} else {
+					inFlight.add(completed.submit(() -> convertChunk(chunk)));
+				}
+
+				if (inFlight.size() >= maxInFlight) {
+					emit(ordered ? inFlight.poll() : take(completed, inFlight), sink);
+				}
+			}
+			while (!inFlight.isEmpty()) {
+				emit(ordered ? inFlight.poll() : take(completed, inFlight), sink);
+			}
+		} finally {
+			for (Future<List<String>> future : inFlight) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Converts the observations of the bundles, other resources are skipped.
+	 *
+	 * @see #convert(Iterator, boolean, Consumer)
+	 */
+	public void convertBundles(Iterator<Bundle> bundles, boolean ordered, Consumer<String> sink) {
+		convert(new BundleObservationIterator(bundles), ordered, sink);
+	}
+
+	private List<Observation> nextChunk(Iterator<Observation> observations) {
+		List<Observation> chunk = new ArrayList<Observation>(chunkSize);
+		while (chunk.size() < chunkSize && observations.hasNext()) {
+			chunk.add(observations.next());
+		}
+		return chunk;
+	}
+
+	private List<String> convertChunk(List<Observation> chunk) {
+		List<String> messages = new ArrayList<String>(chunk.size());
+		for (Observation obs : chunk) {
+			messages.add(convertObservation(obs));
+		}
+		return messages;
+	}
+
+	private String convertObservation(Observation obs) {
+		StringWriter writer = writers.get();
+		writer.getBuffer().setLength(0);
+		try {
+			converter.writeObservationAsT5Xml(obs, writer);
+		} catch (IOException e) {
+			throw new T5Exception(e);
+		}
+		String message = writer.toString();
+		if (writer.getBuffer().capacity() > MAX_RETAINED_CAPACITY) {
+			writers.remove();
+		}
+		return message;
+	}
+
+	private static Future<List<String>> take(CompletionService<List<String>> completed,
+			Deque<Future<List<String>>> inFlight) {
+		try {
+			Future<List<String>> future = completed.take();
+			inFlight.remove(future);
+			return future;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new T5Exception("Interrupted while converting", e);
+		}
+	}
+
+	private static void emit(Future<List<String>> future, Consumer<String> sink) {
+		List<String> messages;
+		try {
+			messages = future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new T5Exception("Interrupted while converting", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new T5Exception(e.getCause());
+		}
+		for (String message : messages) {
+			sink.accept(message);
+		}
+	}
+
+	private final class ConvertRange extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<Observation> observations;
+		private final String[] messages;
+		private final int from;
+		private final int to;
+
+		ConvertRange(List<Observation> observations, String[] messages, int from, int to) {
+			this.observations = observations;
+			this.messages = messages;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= chunkSize) {
+				for (int i = from; i < to; i++) {
+					messages[i] = convertObservation(observations.get(i));
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ConvertRange(observations, messages, from, middle),
+						new ConvertRange(observations, messages, middle, to));
+			}
+		}
+	}
+
+	/**
+	 * The observations of a sequence of bundles.
+	 */
+	private static final class BundleObservationIterator implements Iterator<Observation> {
+
+		private final Iterator<Bundle> bundles;
+		private Iterator<Bundle.Entry> entries = Collections.<Bundle.Entry> emptyIterator();
+		private Observation next;
+
+		BundleObservationIterator(Iterator<Bundle> bundles) {
+			this.bundles = bundles;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (next == null) {
+				if (entries.hasNext()) {
+					Bundle.Entry entry = entries.next();
+					if (entry.getResource() instanceof Observation) {
+						next = (Observation) entry.getResource();
+					}
+				} else if (bundles.hasNext()) {
+					entries = bundles.next().getEntry().iterator();
+				} else {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public Observation next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Observation observation = next;
+			next = null;
+			return observation;
+		}
+	}
+}
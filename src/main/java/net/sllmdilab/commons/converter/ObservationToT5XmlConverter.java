@@ -1,23 +1,38 @@
 package net.sllmdilab.commons.converter;
 
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.UUID;
-
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import net.sllmdilab.commons.converter.T5MessageTemplate.Field;
+import net.sllmdilab.commons.converter.T5MessageTemplate.MessageBuffer;
 import net.sllmdilab.commons.exceptions.T5Exception;
-import net.sllmdilab.commons.util.Constants;
+import net.sllmdilab.commons.util.IdGenerator;
+import net.sllmdilab.commons.util.TimestampCodec;
+import net.sllmdilab.commons.util.XmlUtils;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import ca.uhn.fhir.model.dstu2.composite.CodeableConceptDt;
 import ca.uhn.fhir.model.dstu2.composite.QuantityDt;
+import ca.uhn.fhir.model.dstu2.composite.SampledDataDt;
+import ca.uhn.fhir.model.dstu2.resource.Bundle;
 import ca.uhn.fhir.model.dstu2.resource.Observation;
 import ca.uhn.fhir.model.primitive.DateTimeDt;
+import ca.uhn.fhir.model.primitive.StringDt;
 
 public class ObservationToT5XmlConverter {
 
@@ -25,6 +40,7 @@ public class ObservationToT5XmlConverter {
 	private static final String ELEMENT_IDENTIFIER = "Identifier";
 	private static final String ELEMENT_ORDER_OBSERVATIONS = "Order_Observations";
 	private static final String ELEMENT_ORDER = "Order";
+	private static final String ELEMENT_FILLER_ORDER_NUMBER = "FillerOrderNumber";
 	private static final String ELEMENT_UNIT = "Unit";
 	private static final String ELEMENT_METRIC = "Metric";
 	private static final String ELEMENT_VALUE = "Value";
@@ -50,17 +66,403 @@ public class ObservationToT5XmlConverter {
 	private static final String ATTRIBUTE_INDEX = "index";
 	private static final String ATTRIBUTE_CODING_SYSTEM_NAME = "codingSystemName";
 	private static final String ATTRIBUTE_TYPE_HL7V2 = "typeHL7V2";
+	private static final String ATTRIBUTE_SAMPLE_RATE = "sampleRate";
+	private static final String ATTRIBUTE_DATA_RANGE = "dataRange";
+	private static final String ATTRIBUTE_DESCRIPTION = "description";
+	private static final String ATTRIBUTE_SYNONYM = "synonym";
+	private static final String ATTRIBUTE_UCUM_UNIT = "ucumUnit";
+
+	private static final String TYPE_NUMERIC = "NM";
+	private static final String TYPE_STRING = "ST";
+	private static final String TYPE_NUMERIC_ARRAY = "NA";
+
+	/** Rendered in place of the value and time of an observation when the template is compiled. */
+	private static final String TEMPLATE_VALUE = "0.000314159265358979";
+	private static final long TEMPLATE_TIME = 7956915742222L;
+
+	private static final ThreadLocal<MessageBuffer> buffers = new ThreadLocal<MessageBuffer>();
+
+	private final IdGenerator messageIdGenerator;
+	private final RosettaEnricher enricher;
+	private final T5MessageTemplate singleObservationTemplate;
+
+	/**
+	 * Generates random message ids.
+	 */
+	public ObservationToT5XmlConverter() {
+		this(IdGenerator.RANDOM);
+	}
+
+	/**
+	 * @param messageIdGenerator
+	 *            generates the id of every message, e.g. {@link IdGenerator#TIME_ORDERED}
+	 */
+	public ObservationToT5XmlConverter(IdGenerator messageIdGenerator) {
+		this(messageIdGenerator, null);
+	}
+
+	/**
+	 * Adds what Rosetta says about the codes to every message: the <code>description</code> and <code>synonym</code>
+	 * of the ObsIdentifier and the <code>ucumUnit</code> of the Unit. The attributes are empty for codes which are not
+	 * in the tables.
+	 *
+	 * @param messageIdGenerator
+	 * @param enricher
+	 *            shared by converters to share its cache, null to not enrich
+	 */
+	public ObservationToT5XmlConverter(IdGenerator messageIdGenerator, RosettaEnricher enricher) {
+		this.messageIdGenerator = messageIdGenerator;
+		this.enricher = enricher;
+		this.singleObservationTemplate = compileSingleObservationTemplate();
+	}
 
+	/**
+	 * Builds the T5 message as a DOM document.
+	 */
 	public Document convertObservationToT5Xml(Observation obs) {
+		Document doc = XmlUtils.newDocument();
+
+		doc.appendChild(createRootElement(obs, doc));
+
+		return doc;
+	}
+
+	/**
+	 * Writes the T5 message as UTF-8 without building a DOM document. The bytes are the same as serializing the result
+	 * of {@link #convertObservationToT5Xml(Observation)} with a {@link javax.xml.transform.Transformer}, except for the
+	 * generated message id and time stamp. The stream is flushed but not closed.
+	 *
+	 * A numeric observation is written from a precompiled template in a single write to the stream.
+	 */
+	public void writeObservationAsT5Xml(Observation obs, OutputStream out) throws IOException {
+		if (!(obs.getValue() instanceof QuantityDt)) {
+			writeObservationAsT5Xml(obs, new OutputStreamWriter(out, StandardCharsets.UTF_8));
+			return;
+		}
+
+		MessageBuffer buffer = writeFromTemplate(obs);
 		try {
-			Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+			out.write(buffer.getBytes(), 0, buffer.length());
+			out.flush();
+		} finally {
+			releaseBuffer(buffer);
+		}
+	}
 
-			doc.appendChild(createRootElement(obs, doc));
+	/**
+	 * The T5 message as UTF-8, see {@link #writeObservationAsT5Xml(Observation, OutputStream)}.
+	 */
+	public byte[] convertObservationToT5XmlBytes(Observation obs) {
+		if (!(obs.getValue() instanceof QuantityDt)) {
+			return convertObservationToT5XmlString(obs).getBytes(StandardCharsets.UTF_8);
+		}
 
-			return doc;
-		} catch (ParserConfigurationException e) {
+		MessageBuffer buffer = writeFromTemplate(obs);
+		try {
+			return buffer.toByteArray();
+		} finally {
+			releaseBuffer(buffer);
+		}
+	}
+
+	/**
+	 * Writes the T5 message to a writer, see {@link #writeObservationAsT5Xml(Observation, OutputStream)}. The declared
+	 * encoding is always UTF-8.
+	 */
+	public void writeObservationAsT5Xml(Observation obs, Writer writer) throws IOException {
+		T5XmlWriter xml = new T5XmlWriter(writer);
+		xml.writeDeclaration();
+		writeRootElement(generateMessageId(), getCurrentTimeStamp(), getPatientIdentifier(obs),
+				Collections.singletonList(obs), xml);
+		xml.flush();
+	}
+
+	/**
+	 * The streamed T5 message as a string, for callers which serialized the DOM document to a string.
+	 */
+	public String convertObservationToT5XmlString(Observation obs) {
+		StringWriter writer = new StringWriter(1024);
+		try {
+			writeObservationAsT5Xml(obs, writer);
+		} catch (IOException e) {
 			throw new T5Exception(e);
 		}
+		return writer.toString();
+	}
+
+	/**
+	 * Converts a burst of observations into one T5 message per patient instead of one message per observation.
+	 *
+	 * Within a message every device (<code>Observation.device</code>) is an MDS and every code a Metric of that
+	 * device, indexed in order of first occurrence. Observations of the same code are consecutive Observation
+	 * elements of its Metric. The Order time stamp is the earliest time of the observations. A single observation
+	 * gives the same message as {@link #convertObservationToT5XmlString(Observation)}.
+	 *
+	 * @param observations
+	 * @return the messages keyed by patient identifier, in order of first occurrence
+	 */
+	public Map<String, String> convertObservationsToT5XmlStrings(Collection<Observation> observations) {
+		Map<String, List<Observation>> byPatient = new LinkedHashMap<String, List<Observation>>();
+		for (Observation obs : observations) {
+			getGroup(byPatient, getPatientIdentifier(obs)).add(obs);
+		}
+
+		Map<String, String> messages = new LinkedHashMap<String, String>();
+		for (Map.Entry<String, List<Observation>> patient : byPatient.entrySet()) {
+			StringWriter writer = new StringWriter(512 * patient.getValue().size() + 512);
+			try {
+				T5XmlWriter xml = new T5XmlWriter(writer);
+				xml.writeDeclaration();
+				writeRootElement(generateMessageId(), getCurrentTimeStamp(), patient.getKey(), patient.getValue(), xml);
+			} catch (IOException e) {
+				throw new T5Exception(e);
+			}
+			messages.put(patient.getKey(), writer.toString());
+		}
+		return messages;
+	}
+
+	/**
+	 * Converts the observations of a bundle, see {@link #convertObservationsToT5XmlStrings(Collection)}. Other
+	 * resources are ignored.
+	 */
+	public Map<String, String> convertBundleToT5XmlStrings(Bundle bundle) {
+		List<Observation> observations = new ArrayList<Observation>();
+		for (Bundle.Entry entry : bundle.getEntry()) {
+			if (entry.getResource() instanceof Observation) {
+				observations.add((Observation) entry.getResource());
+			}
+		}
+		return convertObservationsToT5XmlStrings(observations);
+	}
+
+	private static <T> List<T> getGroup(Map<String, List<T>> groups, String key) {
+		List<T> group = groups.get(key);
+		if (group == null) {
+			group = new ArrayList<T>();
+			groups.put(key, group);
+		}
+		return group;
+	}
+
+	/**
+	 * Renders a numeric observation with a marker for every field, so that the template has exactly the skeleton of
+	 * {@link #writeRootElement(String, String, String, List, T5XmlWriter)}.
+	 */
+	private T5MessageTemplate compileSingleObservationTemplate() {
+		Observation obs = new Observation();
+		obs.setId(T5MessageTemplate.marker(Field.UID));
+		obs.getSubject().setReference(T5MessageTemplate.marker(Field.PATIENT));
+		obs.getDevice().setReference("Device/template");
+		obs.setCode(new CodeableConceptDt(T5MessageTemplate.marker(Field.CODE_SYSTEM),
+				T5MessageTemplate.marker(Field.CODE)));
+		QuantityDt quantity = new QuantityDt();
+		quantity.setValue(new BigDecimal(TEMPLATE_VALUE));
+		quantity.setCode(T5MessageTemplate.marker(Field.UNIT));
+		obs.setValue(quantity);
+		obs.setEffective(new DateTimeDt(new Date(TEMPLATE_TIME)));
+
+		StringWriter writer = new StringWriter(1024);
+		try {
+			T5XmlWriter xml = new T5XmlWriter(writer);
+			xml.writeDeclaration();
+			writeRootElement(T5MessageTemplate.marker(Field.MESSAGE_ID), T5MessageTemplate.marker(Field.MESSAGE_TIME),
+					getPatientIdentifier(obs), Collections.singletonList(obs), xml);
+		} catch (IOException e) {
+			throw new T5Exception(e);
+		}
+
+		// The markers are unknown codes, so the enrichment attributes are rendered empty
+		String rendered = writer.toString()
+				.replace(TEMPLATE_VALUE, T5MessageTemplate.marker(Field.VALUE))
+				.replace(TimestampCodec.formatIso(TEMPLATE_TIME), T5MessageTemplate.marker(Field.TIME))
+				.replace(emptyAttribute(ATTRIBUTE_DESCRIPTION), attribute(ATTRIBUTE_DESCRIPTION, Field.DESCRIPTION))
+				.replace(emptyAttribute(ATTRIBUTE_SYNONYM), attribute(ATTRIBUTE_SYNONYM, Field.SYNONYM))
+				.replace(emptyAttribute(ATTRIBUTE_UCUM_UNIT), attribute(ATTRIBUTE_UCUM_UNIT, Field.UCUM_UNIT));
+		return T5MessageTemplate.compile(rendered);
+	}
+
+	private static String emptyAttribute(String name) {
+		return " " + name + "=\"\"";
+	}
+
+	private static String attribute(String name, Field field) {
+		return " " + name + "=\"" + T5MessageTemplate.marker(field) + "\"";
+	}
+
+	private MessageBuffer writeFromTemplate(Observation obs) {
+		String[] values = new String[Field.values().length];
+		values[Field.MESSAGE_ID.ordinal()] = generateMessageId();
+		values[Field.MESSAGE_TIME.ordinal()] = getCurrentTimeStamp();
+		values[Field.PATIENT.ordinal()] = getPatientIdentifier(obs);
+		values[Field.UID.ordinal()] = obs.getId().getValueAsString();
+		values[Field.CODE_SYSTEM.ordinal()] = getCodeSystem(obs);
+		values[Field.CODE.ordinal()] = getCode(obs);
+		values[Field.VALUE.ordinal()] = getValue(obs);
+		values[Field.UNIT.ordinal()] = getUnitCode(obs);
+		values[Field.TIME.ordinal()] = getFormattedAppliesTime(obs);
+		if (enricher != null) {
+			RosettaCodeMetadata code = enricher.getMetadata(getCode(obs));
+			values[Field.DESCRIPTION.ordinal()] = code == null ? "" : code.getDescription();
+			values[Field.SYNONYM.ordinal()] = code == null ? "" : code.getSynonym();
+			values[Field.UCUM_UNIT.ordinal()] = getUcumUnit(obs);
+		}
+
+		MessageBuffer buffer = buffers.get();
+		if (buffer == null) {
+			buffer = new MessageBuffer(1024);
+		} else {
+			// Taken until released, so a nested call gets a buffer of its own
+			buffers.remove();
+		}
+		buffer.clear();
+		singleObservationTemplate.write(values, buffer);
+		return buffer;
+	}
+
+	private static void releaseBuffer(MessageBuffer buffer) {
+		if (buffer.isRetainable()) {
+			buffers.set(buffer);
+		}
+	}
+
+	private void writeRootElement(String messageId, String timeStamp, String patientIdentifier,
+			List<Observation> observations, T5XmlWriter xml) throws IOException {
+		xml.startElement(ELEMENT_PCD_01_MESSAGE);
+		xml.attribute(ATTRIBUTE_ID, messageId);
+		xml.attribute(ATTRIBUTE_TIME_STAMP, timeStamp);
+
+		xml.startElement(ELEMENT_SENDING_APPLICATION);
+		xml.attribute(ATTRIBUTE_ID_LOCAL, "FHIR_API");
+		xml.attribute(ATTRIBUTE_ID_UNIVERSAL, "");
+		xml.attribute(ATTRIBUTE_ID_UNIVERSAL_TYPE, "");
+		xml.endElement(ELEMENT_SENDING_APPLICATION);
+
+		xml.startElement(ELEMENT_SENDING_FACILITY);
+		xml.attribute(ATTRIBUTE_ID_LOCAL, "");
+		xml.attribute(ATTRIBUTE_ID_UNIVERSAL, "");
+		xml.attribute(ATTRIBUTE_ID_UNIVERSAL_TYPE, "");
+		xml.endElement(ELEMENT_SENDING_FACILITY);
+
+		xml.startElement(ELEMENT_PATIENT_RESULT);
+		xml.startElement(ELEMENT_PATIENT);
+		writeTextElement(xml, ELEMENT_IDENTIFIER, patientIdentifier);
+		xml.endElement(ELEMENT_PATIENT);
+		writeOrderObservationElement(observations, xml);
+		xml.endElement(ELEMENT_PATIENT_RESULT);
+
+		xml.endElement(ELEMENT_PCD_01_MESSAGE);
+	}
+
+	private void writeOrderObservationElement(List<Observation> observations, T5XmlWriter xml) throws IOException {
+		long orderTime = Long.MAX_VALUE;
+		Map<String, Map<String, List<Observation>>> byDevice =
+				new LinkedHashMap<String, Map<String, List<Observation>>>();
+		for (Observation obs : observations) {
+			orderTime = Math.min(orderTime, getAppliesTime(obs));
+
+			String device = getDeviceIdentifier(obs);
+			Map<String, List<Observation>> byCode = byDevice.get(device);
+			if (byCode == null) {
+				byCode = new LinkedHashMap<String, List<Observation>>();
+				byDevice.put(device, byCode);
+			}
+			getGroup(byCode, getCodeSystem(obs) + " " + getCode(obs)).add(obs);
+		}
+
+		xml.startElement(ELEMENT_ORDER_OBSERVATIONS);
+
+		xml.startElement(ELEMENT_ORDER);
+		xml.attribute(ATTRIBUTE_TIME_STAMP, TimestampCodec.formatIso(orderTime));
+		xml.startElement(ELEMENT_FILLER_ORDER_NUMBER);
+		xml.endElement(ELEMENT_FILLER_ORDER_NUMBER);
+		xml.startElement(ELEMENT_UNIVERSAL_SERVICE_ID);
+		xml.attribute(ATTRIBUTE_CODING_SYSTEM_NAME, "T5");
+		xml.text("mobile monitoring");
+		xml.endElement(ELEMENT_UNIVERSAL_SERVICE_ID);
+		xml.endElement(ELEMENT_ORDER);
+
+		int mds = 1;
+		for (Map<String, List<Observation>> byCode : byDevice.values()) {
+			writeIndexedStart(xml, ELEMENT_MDS, mds);
+			writeIndexedStart(xml, ELEMENT_VMD, 1);
+			writeIndexedStart(xml, ELEMENT_CHAN, 1);
+
+			int metric = 1;
+			for (List<Observation> sameCode : byCode.values()) {
+				writeIndexedStart(xml, ELEMENT_METRIC, metric);
+				String hierarchy = mds + ".1.1." + metric;
+				for (int i = 0; i < sameCode.size(); i++) {
+					writeObservationElement(sameCode.get(i), hierarchy, i + 1, xml);
+				}
+				xml.endElement(ELEMENT_METRIC);
+				metric++;
+			}
+
+			xml.endElement(ELEMENT_CHAN);
+			xml.endElement(ELEMENT_VMD);
+			xml.endElement(ELEMENT_MDS);
+			mds++;
+		}
+
+		xml.endElement(ELEMENT_ORDER_OBSERVATIONS);
+	}
+
+	private void writeIndexedStart(T5XmlWriter xml, String name, int index) throws IOException {
+		xml.startElement(name);
+		xml.attribute(ATTRIBUTE_INDEX, Integer.toString(index));
+	}
+
+	private void writeObservationElement(Observation obs, String hierarchy, int index, T5XmlWriter xml)
+			throws IOException {
+		xml.startElement(ELEMENT_OBSERVATION);
+		xml.attribute(ATTRIBUTE_HIERARCHY, hierarchy);
+		xml.attribute(ATTRIBUTE_INDEX, Integer.toString(index));
+		xml.attribute(ATTRIBUTE_UID, obs.getId().getValueAsString());
+
+		xml.startElement(ELEMENT_OBS_IDENTIFIER);
+		xml.attribute(ATTRIBUTE_CODING_SYSTEM_NAME, getCodeSystem(obs));
+		if (enricher != null) {
+			RosettaCodeMetadata code = enricher.getMetadata(getCode(obs));
+			xml.attribute(ATTRIBUTE_DESCRIPTION, code == null ? "" : code.getDescription());
+			xml.attribute(ATTRIBUTE_SYNONYM, code == null ? "" : code.getSynonym());
+		}
+		xml.text(getCode(obs));
+		xml.endElement(ELEMENT_OBS_IDENTIFIER);
+
+		xml.startElement(ELEMENT_VALUE);
+		SampledWaveform waveform = getWaveform(obs);
+		if (waveform != null) {
+			// Attributes in the order DOM serializes them
+			if (waveform.formatDataRange() != null) {
+				xml.attribute(ATTRIBUTE_DATA_RANGE, waveform.formatDataRange());
+			}
+			xml.attribute(ATTRIBUTE_SAMPLE_RATE, waveform.formatSampleRate());
+			xml.attribute(ATTRIBUTE_TYPE_HL7V2, TYPE_NUMERIC_ARRAY);
+			xml.text(waveform.formatValues());
+		} else {
+			xml.attribute(ATTRIBUTE_TYPE_HL7V2, getValueType(obs));
+			xml.text(getValue(obs));
+		}
+		xml.endElement(ELEMENT_VALUE);
+
+		xml.startElement(ELEMENT_UNIT);
+		xml.attribute(ATTRIBUTE_CODING_SYSTEM_NAME, getCodeSystem(obs));
+		if (enricher != null) {
+			xml.attribute(ATTRIBUTE_UCUM_UNIT, getUcumUnit(obs));
+		}
+		xml.text(getUnitCode(obs));
+		xml.endElement(ELEMENT_UNIT);
+
+		writeTextElement(xml, ELEMENT_TIMESTAMP, getFormattedAppliesTime(obs));
+
+		xml.endElement(ELEMENT_OBSERVATION);
+	}
+
+	private void writeTextElement(T5XmlWriter xml, String name, String text) throws IOException {
+		xml.startElement(name);
+		xml.text(text);
+		xml.endElement(name);
 	}
 
 	private Element createRootElement(Observation obs, Document doc) {
@@ -112,7 +514,7 @@ public class ObservationToT5XmlConverter {
 
 	private Element createIdentifierElement(Observation obs, Document doc) {
 		Element patientElement = doc.createElement(ELEMENT_IDENTIFIER);
-		patientElement.setTextContent(obs.getSubject().getReference().getValueAsString());
+		patientElement.setTextContent(getPatientIdentifier(obs));
 
 		return patientElement;
 	}
@@ -147,21 +549,19 @@ public class ObservationToT5XmlConverter {
 		return universalServiceIDElement;
 	}
 
+	/**
+	 * T5 time stamps are UTC, whatever time zone the observation was given in.
+	 */
 	private String getFormattedAppliesTime(Observation obs) {
-		DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern(Constants.ISO_DATE_FORMAT).withZone(
-				ZoneId.of("UTC"));
-
-		DateTimeDt dateValue = (DateTimeDt) obs.getEffective();
-
-		ZoneId zoneId = (dateValue.getTimeZone() != null) ? dateValue.getTimeZone().toZoneId() : ZoneId.of("UTC");
-
-		ZonedDateTime date = ZonedDateTime.ofInstant(dateValue.getValue().toInstant(), zoneId);
+		return TimestampCodec.formatIso(getAppliesTime(obs));
+	}
 
-		return date.format(dateTimeFormatter);
+	private long getAppliesTime(Observation obs) {
+		return ((DateTimeDt) obs.getEffective()).getValue().getTime();
 	}
 
 	public Element createFillerOrderNumberElement(Observation obs, Document doc) {
-		return doc.createElement("FillerOrderNumber");
+		return doc.createElement(ELEMENT_FILLER_ORDER_NUMBER);
 	}
 
 	private Element createMdsElement(Observation obs, Document doc) {
@@ -220,8 +620,13 @@ public class ObservationToT5XmlConverter {
 	private Element createObsIdentifierElement(Observation obs, Document doc) {
 		Element obsIdentifierElement = doc.createElement(ELEMENT_OBS_IDENTIFIER);
 
-		obsIdentifierElement.setAttribute(ATTRIBUTE_CODING_SYSTEM_NAME, obs.getCode().getCodingFirstRep().getSystem());
-		obsIdentifierElement.setTextContent(obs.getCode().getCodingFirstRep().getCode());
+		obsIdentifierElement.setAttribute(ATTRIBUTE_CODING_SYSTEM_NAME, getCodeSystem(obs));
+		if (enricher != null) {
+			RosettaCodeMetadata code = enricher.getMetadata(getCode(obs));
+			obsIdentifierElement.setAttribute(ATTRIBUTE_DESCRIPTION, code == null ? "" : code.getDescription());
+			obsIdentifierElement.setAttribute(ATTRIBUTE_SYNONYM, code == null ? "" : code.getSynonym());
+		}
+		obsIdentifierElement.setTextContent(getCode(obs));
 
 		return obsIdentifierElement;
 	}
@@ -237,10 +642,18 @@ public class ObservationToT5XmlConverter {
 	private Element createValueElement(Observation obs, Document doc) {
 		Element valueElement = doc.createElement(ELEMENT_VALUE);
 
-		QuantityDt quantity = (QuantityDt) obs.getValue();
-
-		valueElement.setTextContent(quantity.getValue().toPlainString());
-		valueElement.setAttribute(ATTRIBUTE_TYPE_HL7V2, "NM");
+		SampledWaveform waveform = getWaveform(obs);
+		if (waveform != null) {
+			valueElement.setTextContent(waveform.formatValues());
+			valueElement.setAttribute(ATTRIBUTE_TYPE_HL7V2, TYPE_NUMERIC_ARRAY);
+			valueElement.setAttribute(ATTRIBUTE_SAMPLE_RATE, waveform.formatSampleRate());
+			if (waveform.formatDataRange() != null) {
+				valueElement.setAttribute(ATTRIBUTE_DATA_RANGE, waveform.formatDataRange());
+			}
+		} else {
+			valueElement.setTextContent(getValue(obs));
+			valueElement.setAttribute(ATTRIBUTE_TYPE_HL7V2, getValueType(obs));
+		}
 
 		return valueElement;
 	}
@@ -248,20 +661,90 @@ public class ObservationToT5XmlConverter {
 	private Element createUnitElement(Observation obs, Document doc) {
 		Element unitElement = doc.createElement(ELEMENT_UNIT);
 
-		unitElement.setAttribute(ATTRIBUTE_CODING_SYSTEM_NAME, obs.getCode().getCodingFirstRep().getSystem());
-
-		QuantityDt quantity = (QuantityDt) obs.getValue();
-		unitElement.setTextContent(quantity.getCode());
+		unitElement.setAttribute(ATTRIBUTE_CODING_SYSTEM_NAME, getCodeSystem(obs));
+		if (enricher != null) {
+			unitElement.setAttribute(ATTRIBUTE_UCUM_UNIT, getUcumUnit(obs));
+		}
+		unitElement.setTextContent(getUnitCode(obs));
 
 		return unitElement;
 	}
 
+	private String getPatientIdentifier(Observation obs) {
+		return obs.getSubject().getReference().getValueAsString();
+	}
+
+	private String getDeviceIdentifier(Observation obs) {
+		return obs.getDevice().getReference().getValueAsString();
+	}
+
+	private String getCodeSystem(Observation obs) {
+		return obs.getCode().getCodingFirstRep().getSystem();
+	}
+
+	private String getCode(Observation obs) {
+		return obs.getCode().getCodingFirstRep().getCode();
+	}
+
+	/**
+	 * Type of a single value. A string is written as <code>ST</code>, whatever text type it was read from.
+	 */
+	private String getValueType(Observation obs) {
+		if (obs.getValue() instanceof StringDt) {
+			return TYPE_STRING;
+		}
+		return TYPE_NUMERIC;
+	}
+
+	private String getValue(Observation obs) {
+		if (obs.getValue() instanceof QuantityDt) {
+			return ((QuantityDt) obs.getValue()).getValue().toPlainString();
+		} else if (obs.getValue() instanceof StringDt) {
+			return ((StringDt) obs.getValue()).getValue();
+		}
+		throw unsupportedValue(obs);
+	}
+
+	/**
+	 * @return the unit, null for a string value
+	 */
+	private String getUnitCode(Observation obs) {
+		if (obs.getValue() instanceof QuantityDt) {
+			return ((QuantityDt) obs.getValue()).getCode();
+		} else if (obs.getValue() instanceof SampledDataDt) {
+			return ((SampledDataDt) obs.getValue()).getOrigin().getCode();
+		} else if (obs.getValue() instanceof StringDt) {
+			return null;
+		}
+		throw unsupportedValue(obs);
+	}
+
+	private T5Exception unsupportedValue(Observation obs) {
+		String type = obs.getValue() == null ? "no value" : obs.getValue().getClass().getSimpleName();
+		return new T5Exception("Observation " + obs.getId().getValueAsString() + " has " + type
+				+ ", expected a Quantity, SampledData or string value");
+	}
+
+	private String getUcumUnit(Observation obs) {
+		RosettaCodeMetadata unit = enricher.getMetadata(getUnitCode(obs));
+		return unit == null ? "" : unit.getUcumUnit();
+	}
+
+	/**
+	 * @return the waveform of a <code>SampledData</code> observation, or null for a single value
+	 */
+	private SampledWaveform getWaveform(Observation obs) {
+		if (obs.getValue() instanceof SampledDataDt) {
+			return SampledWaveform.fromSampledData((SampledDataDt) obs.getValue());
+		}
+		return null;
+	}
+
 	private String generateMessageId() {
-		return UUID.randomUUID().toString();
+		return messageIdGenerator.generateId();
 	}
 
 	private String getCurrentTimeStamp() {
-		DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern(Constants.ISO_DATE_FORMAT);
-		return dateTimeFormatter.format(LocalDateTime.now());
+		return TimestampCodec.formatIso(System.currentTimeMillis(), TimeZone.getDefault());
 	}
 }
@@ -0,0 +1,47 @@
+package net.sllmdilab.commons.converter;
+
+/**
+ * What the Rosetta tables say about one term or unit code, resolved once for all observations of the code.
+ *
+ * Instances are immutable and obtained from {@link RosettaEnricher}.
+ */
+public final class RosettaCodeMetadata {
+
+	private final String code;
+	private final String description;
+	private final String synonym;
+	private final String ucumUnit;
+
+	RosettaCodeMetadata(String code, String description, String synonym, String ucumUnit) {
+		this.code = code;
+		this.description = description;
+		this.synonym = synonym;
+		this.ucumUnit = ucumUnit;
+	}
+
+	public String getCode() {
+		return code;
+	}
+
+	/**
+	 * Vendor description of a Harmonized term. Empty string for units and for terms the tables describe nowhere.
+	 */
+	public String getDescription() {
+		return description;
+	}
+
+	/**
+	 * Harmonized synonym of a term, empty string if there is none.
+	 */
+	public String getSynonym() {
+		return synonym;
+	}
+
+	/**
+	 * The first UCUM spelling the tables give for a unit or term, the code itself for a UCUM unit. Empty string if
+	 * there is none.
+	 */
+	public String getUcumUnit() {
+		return ucumUnit;
+	}
+}
@@ -0,0 +1,74 @@
+package net.sllmdilab.commons.converter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.sllmdilab.commons.t5.validators.HarmonizedTerm;
+import net.sllmdilab.commons.t5.validators.RosettaUnit;
+import net.sllmdilab.commons.t5.validators.RosettaValidator;
+
+/**
+ * Caches the {@link RosettaCodeMetadata} of every code seen, so each distinct code is looked up in the Rosetta tables
+ * once. Codes which are not in any table are rejected by {@link RosettaValidator#isKnownCode(String)} and never cached,
+ * so the cache is bounded by the size of the tables whatever devices send.
+ *
+ * Safe for use by any number of threads. Share one instance between converters to share the cache.
+ */
+public class RosettaEnricher {
+
+	private final RosettaValidator rosettaValidator;
+	private final ConcurrentMap<String, RosettaCodeMetadata> metadata =
+			new ConcurrentHashMap<String, RosettaCodeMetadata>();
+
+	public RosettaEnricher(RosettaValidator rosettaValidator) {
+		this.rosettaValidator = rosettaValidator;
+	}
+
+	/**
+	 * @param code
+	 *            REFID, MDC unit or UCUM unit
+	 * @return the metadata, or null if the code is null or unknown
+	 */
+	public RosettaCodeMetadata getMetadata(String code) {
+		if (code == null) {
+			return null;
+		}
+		RosettaCodeMetadata cached = metadata.get(code);
+		if (cached != null) {
+			return cached;
+		}
+		if (!rosettaValidator.isKnownCode(code)) {
+			return null;
+		}
+		return metadata.computeIfAbsent(code, this::lookup);
+	}
+
+	/**
+	 * The number of codes cached so far.
+	 */
+	public int size() {
+		return metadata.size();
+	}
+
+	private RosettaCodeMetadata lookup(String code) {
+		HarmonizedTerm term = rosettaValidator.getHarmonizedTerm(code);
+		if (term != null) {
+			return new RosettaCodeMetadata(code, term.getDescription(), term.getSynonym(), firstOf(term
+					.getUcumUnits()));
+		}
+		RosettaUnit unit = rosettaValidator.getUnit(code);
+		if (unit != null) {
+			return new RosettaCodeMetadata(code, "", "", firstOf(unit.getUcumUnit()));
+		}
+		// A REFID of the terms table only, or a UCUM unit
+		return new RosettaCodeMetadata(code, "", "", rosettaValidator.isInTermsTable(code) ? "" : code);
+	}
+
+	/**
+	 * The first of space separated values.
+	 */
+	private static String firstOf(String values) {
+		int end = values.indexOf(' ');
+		return end < 0 ? values : values.substring(0, end);
+	}
+}
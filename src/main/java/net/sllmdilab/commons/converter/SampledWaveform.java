@@ -0,0 +1,437 @@
+package net.sllmdilab.commons.converter;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import net.sllmdilab.commons.exceptions.T5Exception;
+
+import ca.uhn.fhir.model.dstu2.composite.SampledDataDt;
+import ca.uhn.fhir.model.dstu2.composite.SimpleQuantityDt;
+
+/**
+ * A waveform, i.e. FHIR <code>SampledData</code> or the T5 <code>NA</code> value type, with the samples as one
+ * primitive array.
+ *
+ * In T5 the samples are the <code>^</code> separated text of the <code>Value</code> element, and the sample rate in
+ * Hz and the data range <code>low^high</code> are attributes of it. FHIR keeps raw samples separated by spaces, which
+ * are scaled with <code>origin + factor * sample</code>, and the time between samples in milliseconds.
+ *
+ * Samples are kept exactly, as unscaled longs with one common decimal scale, so the scaling is integer arithmetic and
+ * writes no rounding errors. The FHIR codes <code>E</code>, <code>L</code> and <code>U</code> for samples without a
+ * value become empty T5 components and vice versa.
+ */
+public final class SampledWaveform {
+
+	private static final long NO_VALUE = Long.MIN_VALUE;
+	private static final int MAX_SCALE = 18;
+	private static final BigDecimal MILLIS_PER_SECOND = BigDecimal.valueOf(1000);
+	private static final MathContext RATE_PRECISION = MathContext.DECIMAL64;
+
+	private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i <= MAX_SCALE; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private final long[] samples;
+	private final int scale;
+	private final BigDecimal sampleRate;
+	private final BigDecimal lowerLimit;
+	private final BigDecimal upperLimit;
+	private final String unitCode;
+
+	private SampledWaveform(long[] samples, int scale, BigDecimal sampleRate, BigDecimal lowerLimit,
+			BigDecimal upperLimit, String unitCode) {
+		this.samples = samples;
+		this.scale = scale;
+		this.sampleRate = sampleRate;
+		this.lowerLimit = lowerLimit;
+		this.upperLimit = upperLimit;
+		this.unitCode = unitCode;
+	}
+
+	/**
+	 * Scales the samples of FHIR sampled data to their values.
+	 *
+	 * @throws T5Exception
+	 *             if the data has more than one dimension, no period, or samples which are not decimal numbers or
+	 *             exceed 18 digits after scaling
+	 */
+	public static SampledWaveform fromSampledData(SampledDataDt sampledData) {
+		Integer dimensions = sampledData.getDimensions();
+		if (dimensions != null && dimensions != 1) {
+			throw new T5Exception("Sampled data with " + dimensions + " dimensions, expected one observation per lead");
+		}
+		BigDecimal period = sampledData.getPeriod();
+		if (period == null || period.signum() <= 0) {
+			throw new T5Exception("Sampled data without period");
+		}
+
+		String data = sampledData.getData() == null ? "" : sampledData.getData();
+		long[] samples = new long[countTokens(data, ' ')];
+		int sampleScale = parseSamples(data, ' ', samples);
+
+		BigDecimal origin = sampledData.getOrigin() == null ? null : sampledData.getOrigin().getValue();
+		BigDecimal factor = sampledData.getFactor();
+		int scale = sampleScale;
+		if ((origin != null && origin.signum() != 0) || (factor != null && factor.compareTo(BigDecimal.ONE) != 0)) {
+			scale = applyOriginAndFactor(samples, sampleScale, origin == null ? BigDecimal.ZERO : origin,
+					factor == null ? BigDecimal.ONE : factor);
+		}
+
+		return new SampledWaveform(samples, scale, MILLIS_PER_SECOND.divide(period, RATE_PRECISION),
+				sampledData.getLowerLimit(), sampledData.getUpperLimit(),
+				sampledData.getOrigin() == null ? null : sampledData.getOrigin().getCode());
+	}
+
+	/**
+	 * Reads the T5 representation.
+	 *
+	 * @param values
+	 *            <code>^</code> separated samples
+	 * @param sampleRate
+	 *            in Hz
+	 * @param dataRange
+	 *            <code>low^high</code>, either may be empty, or null
+	 * @param unitCode
+	 * @throws T5Exception
+	 *             if a number can not be parsed
+	 */
+	public static SampledWaveform fromT5(String values, String sampleRate, String dataRange, String unitCode) {
+		long[] samples = new long[countTokens(values, '^')];
+		int scale = parseSamples(values, '^', samples);
+
+		BigDecimal lowerLimit = null;
+		BigDecimal upperLimit = null;
+		if (dataRange != null) {
+			int separator = dataRange.indexOf('^');
+			String low = separator < 0 ? dataRange : dataRange.substring(0, separator);
+			String high = separator < 0 ? "" : dataRange.substring(separator + 1);
+			lowerLimit = parseDecimal(low);
+			upperLimit = parseDecimal(high);
+		}
+
+		return new SampledWaveform(samples, scale, parseDecimal(sampleRate), lowerLimit, upperLimit, unitCode);
+	}
+
+	/**
+	 * FHIR sampled data with origin 0 and the values as samples.
+	 */
+	public SampledDataDt toSampledData() {
+		SampledDataDt sampledData = new SampledDataDt();
+
+		SimpleQuantityDt origin = new SimpleQuantityDt();
+		origin.setValue(BigDecimal.ZERO);
+		origin.setCode(unitCode);
+		sampledData.setOrigin(origin);
+
+		if (sampleRate != null && sampleRate.signum() > 0) {
+			sampledData.setPeriod(MILLIS_PER_SECOND.divide(sampleRate, RATE_PRECISION).stripTrailingZeros());
+		}
+		sampledData.setLowerLimit(lowerLimit);
+		sampledData.setUpperLimit(upperLimit);
+		sampledData.setDimensions(1);
+		sampledData.setData(formatValues(' ', "E"));
+		return sampledData;
+	}
+
+	public int size() {
+		return samples.length;
+	}
+
+	/**
+	 * False for samples the device could not measure.
+	 */
+	public boolean hasValue(int sample) {
+		return samples[sample] != NO_VALUE;
+	}
+
+	/**
+	 * @return the value, or NaN if the sample has none
+	 */
+	public double getValue(int sample) {
+		long unscaled = samples[sample];
+		return unscaled == NO_VALUE ? Double.NaN : (double) unscaled / POWERS_OF_TEN[scale];
+	}
+
+	/**
+	 * In Hz.
+	 */
+	public BigDecimal getSampleRate() {
+		return sampleRate;
+	}
+
+	public BigDecimal getLowerLimit() {
+		return lowerLimit;
+	}
+
+	public BigDecimal getUpperLimit() {
+		return upperLimit;
+	}
+
+	public String getUnitCode() {
+		return unitCode;
+	}
+
+	/**
+	 * The T5 <code>sampleRate</code> attribute.
+	 */
+	public String formatSampleRate() {
+		return sampleRate == null ? null : sampleRate.stripTrailingZeros().toPlainString();
+	}
+
+	/**
+	 * The T5 <code>dataRange</code> attribute, <code>low^high</code>.
+	 *
+	 * @return the range, or null if the data has no limits
+	 */
+	public String formatDataRange() {
+		if (lowerLimit == null && upperLimit == null) {
+			return null;
+		}
+		return (lowerLimit == null ? "" : lowerLimit.toPlainString()) + "^"
+				+ (upperLimit == null ? "" : upperLimit.toPlainString());
+	}
+
+	/**
+	 * The T5 value, the samples separated by <code>^</code>.
+	 */
+	public String formatValues() {
+		return formatValues('^', "");
+	}
+
+	private String formatValues(char separator, String noValue) {
+		// ECG samples rarely need more than five characters including the separator
+		StringBuilder builder = new StringBuilder(samples.length * 5);
+		for (int i = 0; i < samples.length; i++) {
+			if (i > 0) {
+				builder.append(separator);
+			}
+			if (samples[i] == NO_VALUE) {
+				builder.append(noValue);
+			} else {
+				appendDecimal(builder, samples[i], scale);
+			}
+		}
+		return builder.toString();
+	}
+
+	private static void appendDecimal(StringBuilder builder, long unscaled, int scale) {
+		if (unscaled < 0) {
+			builder.append('-');
+			unscaled = -unscaled;
+		}
+		if (scale == 0) {
+			builder.append(unscaled);
+			return;
+		}
+
+		long fraction = unscaled % POWERS_OF_TEN[scale];
+		builder.append(unscaled / POWERS_OF_TEN[scale]);
+		if (fraction == 0) {
+			return;
+		}
+
+		int digits = scale;
+		while (fraction % 10 == 0) {
+			fraction /= 10;
+			digits--;
+		}
+		builder.append('.');
+		for (int leadingZeros = digits - stringSize(fraction); leadingZeros > 0; leadingZeros--) {
+			builder.append('0');
+		}
+		builder.append(fraction);
+	}
+
+	private static int stringSize(long value) {
+		int size = 1;
+		while (size <= MAX_SCALE && value >= POWERS_OF_TEN[size]) {
+			size++;
+		}
+		return size;
+	}
+
+	private static int countTokens(String text, char separator) {
+		if (separator != ' ') {
+			return text.isEmpty() ? 0 : countSeparators(text, separator) + 1;
+		}
+		int count = 0;
+		boolean inToken = false;
+		for (int i = 0; i < text.length(); i++) {
+			boolean whitespace = Character.isWhitespace(text.charAt(i));
+			if (!whitespace && !inToken) {
+				count++;
+			}
+			inToken = !whitespace;
+		}
+		return count;
+	}
+
+	private static int countSeparators(String text, char separator) {
+		int count = 0;
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) == separator) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Parses the samples into the array as unscaled values with the largest scale of any sample. FHIR data is
+	 * separated by whitespace, T5 data by <code>^</code> with empty components for missing samples.
+	 *
+	 * @return the common scale
+	 */
+	private static int parseSamples(String text, char separator, long[] samples) {
+		// Each sample is first stored with its own scale, then all are brought to the largest
+		byte[] scales = new byte[samples.length];
+		int maxScale = 0;
+		int position = 0;
+		for (int i = 0; i < samples.length; i++) {
+			int start = position;
+			int end;
+			if (separator == ' ') {
+				while (Character.isWhitespace(text.charAt(start))) {
+					start++;
+				}
+				end = start;
+				while (end < text.length() && !Character.isWhitespace(text.charAt(end))) {
+					end++;
+				}
+				position = end;
+			} else {
+				end = text.indexOf(separator, start);
+				if (end < 0) {
+					end = text.length();
+				}
+				position = end + 1;
+			}
+
+			if (isNoValue(text, start, end, separator)) {
+				samples[i] = NO_VALUE;
+			} else {
+				scales[i] = (byte) parseUnscaled(text, start, end, samples, i);
+				maxScale = Math.max(maxScale, scales[i]);
+			}
+		}
+
+		for (int i = 0; i < samples.length; i++) {
+			if (samples[i] != NO_VALUE && scales[i] != maxScale) {
+				samples[i] = scaleExact(samples[i], maxScale - scales[i]);
+			}
+		}
+		return maxScale;
+	}
+
+	private static boolean isNoValue(String text, int start, int end, char separator) {
+		if (separator == ' ') {
+			if (end - start != 1) {
+				return false;
+			}
+			char c = text.charAt(start);
+			return c == 'E' || c == 'L' || c == 'U';
+		}
+		return start == end;
+	}
+
+	/**
+	 * Parses a plain decimal number into samples[index].
+	 *
+	 * @return the number of fraction digits
+	 */
+	private static int parseUnscaled(String text, int start, int end, long[] samples, int index) {
+		int position = start;
+		boolean negative = false;
+		if (position < end && (text.charAt(position) == '-' || text.charAt(position) == '+')) {
+			negative = text.charAt(position) == '-';
+			position++;
+		}
+
+		long unscaled = 0;
+		int digits = 0;
+		int fractionDigits = -1;
+		for (; position < end; position++) {
+			char c = text.charAt(position);
+			if (c == '.' && fractionDigits < 0) {
+				fractionDigits = 0;
+			} else if (c >= '0' && c <= '9') {
+				if (++digits > MAX_SCALE) {
+					throw new T5Exception("Sample with more than " + MAX_SCALE + " digits: "
+							+ text.substring(start, end));
+				}
+				unscaled = unscaled * 10 + (c - '0');
+				if (fractionDigits >= 0) {
+					fractionDigits++;
+				}
+			} else {
+				throw new T5Exception("Invalid sample: " + text.substring(start, end));
+			}
+		}
+		if (digits == 0) {
+			throw new T5Exception("Invalid sample: " + text.substring(start, end));
+		}
+
+		samples[index] = negative ? -unscaled : unscaled;
+		return Math.max(fractionDigits, 0);
+	}
+
+	/**
+	 * Replaces every sample with <code>origin + factor * sample</code>.
+	 *
+	 * @return the scale of the results
+	 */
+	private static int applyOriginAndFactor(long[] samples, int sampleScale, BigDecimal origin, BigDecimal factor) {
+		int productScale = sampleScale + Math.max(factor.scale(), 0);
+		int scale = Math.max(productScale, Math.max(origin.scale(), 0));
+		if (scale > MAX_SCALE) {
+			throw new T5Exception("Origin, factor and samples have more than " + MAX_SCALE + " decimals");
+		}
+
+		long unscaledFactor = unscaled(factor, factor.scale());
+		long unscaledOrigin = unscaled(origin, scale);
+		try {
+			for (int i = 0; i < samples.length; i++) {
+				if (samples[i] != NO_VALUE) {
+					long product = Math.multiplyExact(unscaledFactor, samples[i]);
+					samples[i] = Math.addExact(unscaledOrigin, Math.multiplyExact(product,
+							POWERS_OF_TEN[scale - productScale]));
+				}
+			}
+		} catch (ArithmeticException e) {
+			throw new T5Exception("Scaled sample exceeds " + MAX_SCALE + " digits", e);
+		}
+		return scale;
+	}
+
+	private static long unscaled(BigDecimal value, int scale) {
+		try {
+			return value.setScale(Math.max(scale, 0)).unscaledValue().longValueExact();
+		} catch (ArithmeticException e) {
+			throw new T5Exception("Origin or factor out of range: " + value, e);
+		}
+	}
+
+	private static long scaleExact(long unscaled, int scale) {
+		try {
+			return Math.multiplyExact(unscaled, POWERS_OF_TEN[scale]);
+		} catch (ArithmeticException e) {
+			throw new T5Exception("Sample exceeds " + MAX_SCALE + " digits at the common scale", e);
+		}
+	}
+
+	private static BigDecimal parseDecimal(String text) {
+		if (text == null || text.trim().isEmpty()) {
+			return null;
+		}
+		try {
+			return new BigDecimal(text.trim());
+		} catch (NumberFormatException e) {
+			throw new T5Exception("Invalid number: " + text, e);
+		}
+	}
+}
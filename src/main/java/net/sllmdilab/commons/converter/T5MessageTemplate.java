@@ -0,0 +1,226 @@
+package net.sllmdilab.commons.converter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A T5 message precompiled into constant UTF-8 byte segments with slots for the variable fields in between.
+ *
+ * The template is compiled from a message rendered by {@link T5XmlWriter} with a marker in place of every field, so
+ * it always has the same skeleton as the streamed output. Writing it copies the segments and escapes only the field
+ * values, with the same escaping rules as {@link T5XmlWriter}, directly into a byte buffer. A text field which is null
+ * or empty closes its element with <code>/&gt;</code>, like the writer does.
+ */
+final class T5MessageTemplate {
+
+	enum Field {
+		MESSAGE_ID, MESSAGE_TIME, PATIENT, UID, CODE_SYSTEM, CODE, DESCRIPTION, SYNONYM, VALUE, UNIT, UCUM_UNIT, TIME
+	}
+
+	private static final char MARKER_START = '\uE000';
+	private static final char MARKER_END = '\uE001';
+
+	private static final byte[] EMPTY_ELEMENT_END = { '/', '>' };
+
+	private final byte[][] segments;
+	private final Field[] slots;
+	/** For text slots the end tag of the element, null for attribute slots. */
+	private final byte[][] endTags;
+
+	private T5MessageTemplate(byte[][] segments, Field[] slots, byte[][] endTags) {
+		this.segments = segments;
+		this.slots = slots;
+		this.endTags = endTags;
+	}
+
+	/**
+	 * The text which marks a field in the rendered message. Markers are private use characters, which the writer does
+	 * not escape.
+	 */
+	static String marker(Field field) {
+		return new String(new char[] { MARKER_START, (char) ('A' + field.ordinal()), MARKER_END });
+	}
+
+	/**
+	 * @param rendered
+	 *            a message with {@link #marker(Field)} for every field
+	 */
+	static T5MessageTemplate compile(String rendered) {
+		List<String> texts = new ArrayList<String>();
+		List<Field> fields = new ArrayList<Field>();
+
+		int position = 0;
+		int start;
+		while ((start = rendered.indexOf(MARKER_START, position)) >= 0) {
+			texts.add(rendered.substring(position, start));
+			fields.add(Field.values()[rendered.charAt(start + 1) - 'A']);
+			position = start + 3;
+		}
+		texts.add(rendered.substring(position));
+
+		byte[][] endTags = new byte[fields.size()][];
+		for (int slot = 0; slot < fields.size(); slot++) {
+			String before = texts.get(slot);
+			if (before.endsWith(">")) {
+				// Text content: the start tag is left open and the end tag is written with the value
+				String after = texts.get(slot + 1);
+				int endTagLength = after.indexOf('>') + 1;
+				endTags[slot] = after.substring(0, endTagLength).getBytes(StandardCharsets.UTF_8);
+				texts.set(slot, before.substring(0, before.length() - 1));
+				texts.set(slot + 1, after.substring(endTagLength));
+			}
+		}
+
+		byte[][] segments = new byte[texts.size()][];
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = texts.get(i).getBytes(StandardCharsets.UTF_8);
+		}
+		return new T5MessageTemplate(segments, fields.toArray(new Field[fields.size()]), endTags);
+	}
+
+	/**
+	 * Writes the message into the buffer.
+	 *
+	 * @param values
+	 *            indexed by {@link Field#ordinal()}
+	 */
+	void write(String[] values, MessageBuffer buffer) {
+		for (int slot = 0; slot < slots.length; slot++) {
+			buffer.append(segments[slot]);
+
+			String value = values[slots[slot].ordinal()];
+			if (endTags[slot] == null) {
+				buffer.appendEscaped(value, true);
+			} else if (value == null || value.isEmpty()) {
+				buffer.append(EMPTY_ELEMENT_END);
+			} else {
+				buffer.append((byte) '>');
+				buffer.appendEscaped(value, false);
+				buffer.append(endTags[slot]);
+			}
+		}
+		buffer.append(segments[slots.length]);
+	}
+
+	/**
+	 * A growable byte array, reused per thread for the messages it writes.
+	 */
+	static final class MessageBuffer {
+
+		/** Buffers grown beyond this by a large message are not kept. */
+		static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+		private byte[] bytes;
+		private int length;
+
+		MessageBuffer(int capacity) {
+			bytes = new byte[capacity];
+		}
+
+		byte[] getBytes() {
+			return bytes;
+		}
+
+		int length() {
+			return length;
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(bytes, length);
+		}
+
+		void clear() {
+			length = 0;
+		}
+
+		boolean isRetainable() {
+			return bytes.length <= MAX_RETAINED_CAPACITY;
+		}
+
+		void append(byte b) {
+			ensureCapacity(1);
+			bytes[length++] = b;
+		}
+
+		void append(byte[] segment) {
+			ensureCapacity(segment.length);
+			System.arraycopy(segment, 0, bytes, length, segment.length);
+			length += segment.length;
+		}
+
+		/**
+		 * Encodes the value as UTF-8 with the escaping of {@link T5XmlWriter}. Unpaired surrogates become
+		 * <code>?</code>, like the UTF-8 encoder of an {@link java.io.OutputStreamWriter} writes them. Null is written
+		 * as nothing.
+		 */
+		void appendEscaped(String value, boolean attribute) {
+			if (value == null) {
+				return;
+			}
+			// Every char needs at most three bytes, character references are handled separately
+			ensureCapacity(value.length() * 3);
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c < 0x80) {
+					if (c == '&') {
+						appendAscii("&amp;");
+					} else if (c == '<') {
+						appendAscii("&lt;");
+					} else if (c == '>') {
+						appendAscii("&gt;");
+					} else if (c == '"' && attribute) {
+						appendAscii("&quot;");
+					} else if ((c < 0x20 && (attribute || (c != '\t' && c != '\n'))) || (c == 0x7F && !attribute)) {
+						appendCharacterReference(c);
+					} else {
+						ensureCapacity(1);
+						bytes[length++] = (byte) c;
+					}
+				} else if (c < 0x800) {
+					if (c <= 0x9F && !attribute) {
+						appendCharacterReference(c);
+					} else {
+						ensureCapacity(2);
+						bytes[length++] = (byte) (0xC0 | (c >> 6));
+						bytes[length++] = (byte) (0x80 | (c & 0x3F));
+					}
+				} else if (Character.isSurrogate(c)) {
+					if (Character.isHighSurrogate(c) && i + 1 < value.length()
+							&& Character.isLowSurrogate(value.charAt(i + 1))) {
+						appendCharacterReference(value.codePointAt(i));
+						i++;
+					} else {
+						ensureCapacity(1);
+						bytes[length++] = '?';
+					}
+				} else {
+					ensureCapacity(3);
+					bytes[length++] = (byte) (0xE0 | (c >> 12));
+					bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+					bytes[length++] = (byte) (0x80 | (c & 0x3F));
+				}
+			}
+		}
+
+		private void appendCharacterReference(int codePoint) {
+			appendAscii("&#");
+			appendAscii(Integer.toString(codePoint));
+			appendAscii(";");
+		}
+
+		private void appendAscii(String text) {
+			ensureCapacity(text.length());
+			for (int i = 0; i < text.length(); i++) {
+				bytes[length++] = (byte) text.charAt(i);
+			}
+		}
+
+		private void ensureCapacity(int additional) {
+			if (length + additional > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + additional));
+			}
+		}
+	}
+}
@@ -0,0 +1,228 @@
+package net.sllmdilab.commons.converter;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.function.Consumer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import net.sllmdilab.commons.exceptions.T5Exception;
+import net.sllmdilab.commons.exceptions.XmlParsingException;
+import net.sllmdilab.commons.util.TimestampCodec;
+
+import ca.uhn.fhir.model.api.IDatatype;
+import ca.uhn.fhir.model.api.TemporalPrecisionEnum;
+import ca.uhn.fhir.model.dstu2.composite.CodeableConceptDt;
+import ca.uhn.fhir.model.dstu2.composite.QuantityDt;
+import ca.uhn.fhir.model.dstu2.composite.SampledDataDt;
+import ca.uhn.fhir.model.dstu2.resource.Observation;
+import ca.uhn.fhir.model.primitive.DateTimeDt;
+import ca.uhn.fhir.model.primitive.DecimalDt;
+import ca.uhn.fhir.model.primitive.StringDt;
+
+/**
+ * Converts T5 PCD-01 XML, e.g. trends read back from the database, into FHIR observations. The inverse of
+ * {@link ObservationToT5XmlConverter}.
+ *
+ * The XML is streamed and every <code>Observation</code> element is handed over as soon as it has been read, so no
+ * DOM document is built and a handler can process responses larger than the heap. Any number of messages may occur
+ * anywhere in the document, e.g. inside a wrapper element of a query result.
+ */
+public class T5XmlToObservationConverter {
+
+	private static final String ELEMENT_PATIENT_RESULT = "Patient_Result";
+	private static final String ELEMENT_PATIENT = "Patient";
+	private static final String ELEMENT_IDENTIFIER = "Identifier";
+	private static final String ELEMENT_OBSERVATION = "Observation";
+	private static final String ELEMENT_OBS_IDENTIFIER = "ObsIdentifier";
+	private static final String ELEMENT_VALUE = "Value";
+	private static final String ELEMENT_UNIT = "Unit";
+	private static final String ELEMENT_TIMESTAMP = "Timestamp";
+
+	private static final String ATTRIBUTE_UID = "uid";
+	private static final String ATTRIBUTE_CODING_SYSTEM_NAME = "codingSystemName";
+	private static final String ATTRIBUTE_TYPE_HL7V2 = "typeHL7V2";
+	private static final String ATTRIBUTE_SAMPLE_RATE = "sampleRate";
+	private static final String ATTRIBUTE_DATA_RANGE = "dataRange";
+
+	private static final String TYPE_NUMERIC = "NM";
+	private static final String TYPE_NUMERIC_ARRAY = "NA";
+
+	private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+	private final XMLInputFactory inputFactory;
+
+	public T5XmlToObservationConverter() {
+		inputFactory = XMLInputFactory.newInstance();
+		inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+
+	/**
+	 * @param t5Xml
+	 * @return the observations in document order
+	 * @throws XmlParsingException
+	 *             if the XML is not well-formed or a value can not be parsed
+	 */
+	public List<Observation> convertT5XmlToObservations(String t5Xml) throws XmlParsingException {
+		List<Observation> observations = new ArrayList<Observation>();
+		convertT5XmlToObservations(new StringReader(t5Xml), observations::add);
+		return observations;
+	}
+
+	/**
+	 * Parses the XML and calls the handler once per observation, in document order.
+	 *
+	 * @param in
+	 *            XML in the encoding it declares
+	 * @param handler
+	 * @throws XmlParsingException
+	 *             if the XML is not well-formed or a value can not be parsed
+	 */
+	public void convertT5XmlToObservations(InputStream in, Consumer<Observation> handler) throws XmlParsingException {
+		try {
+			parse(inputFactory.createXMLStreamReader(in), handler);
+		} catch (XMLStreamException e) {
+			throw new XmlParsingException(e);
+		}
+	}
+
+	/**
+	 * Parses the XML and calls the handler once per observation, in document order.
+	 *
+	 * @param reader
+	 * @param handler
+	 * @throws XmlParsingException
+	 *             if the XML is not well-formed or a value can not be parsed
+	 */
+	public void convertT5XmlToObservations(Reader reader, Consumer<Observation> handler) throws XmlParsingException {
+		try {
+			parse(inputFactory.createXMLStreamReader(reader), handler);
+		} catch (XMLStreamException e) {
+			throw new XmlParsingException(e);
+		}
+	}
+
+	private void parse(XMLStreamReader reader, Consumer<Observation> handler) throws XMLStreamException {
+		try {
+			String patientIdentifier = null;
+			boolean inPatient = false;
+
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					String name = reader.getLocalName();
+					if (ELEMENT_PATIENT_RESULT.equals(name)) {
+						patientIdentifier = null;
+					} else if (ELEMENT_PATIENT.equals(name)) {
+						inPatient = true;
+					} else if (inPatient && ELEMENT_IDENTIFIER.equals(name)) {
+						patientIdentifier = reader.getElementText().trim();
+					} else if (ELEMENT_OBSERVATION.equals(name)) {
+						handler.accept(readObservation(reader, patientIdentifier));
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT && ELEMENT_PATIENT.equals(reader.getLocalName())) {
+					inPatient = false;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Reads one <code>Observation</code>, the reader is positioned on its start tag and is left on its end tag.
+	 */
+	private Observation readObservation(XMLStreamReader reader, String patientIdentifier) throws XMLStreamException {
+		Observation observation = new Observation();
+		observation.setId(reader.getAttributeValue(null, ATTRIBUTE_UID));
+		if (patientIdentifier != null) {
+			observation.getSubject().setReference(patientIdentifier);
+		}
+
+		String codeSystem = null;
+		String code = null;
+		String valueType = null;
+		String value = null;
+		String sampleRate = null;
+		String dataRange = null;
+		String unit = null;
+
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			} else if (event == XMLStreamConstants.START_ELEMENT) {
+				String name = reader.getLocalName();
+				if (ELEMENT_OBS_IDENTIFIER.equals(name)) {
+					codeSystem = reader.getAttributeValue(null, ATTRIBUTE_CODING_SYSTEM_NAME);
+					code = reader.getElementText().trim();
+				} else if (ELEMENT_VALUE.equals(name)) {
+					valueType = reader.getAttributeValue(null, ATTRIBUTE_TYPE_HL7V2);
+					sampleRate = reader.getAttributeValue(null, ATTRIBUTE_SAMPLE_RATE);
+					dataRange = reader.getAttributeValue(null, ATTRIBUTE_DATA_RANGE);
+					value = reader.getElementText().trim();
+				} else if (ELEMENT_UNIT.equals(name)) {
+					unit = reader.getElementText().trim();
+				} else if (ELEMENT_TIMESTAMP.equals(name)) {
+					observation.setEffective(parseTimestamp(reader.getElementText().trim()));
+				} else {
+					depth++;
+				}
+			}
+		}
+
+		observation.setCode(new CodeableConceptDt(codeSystem, code));
+		if (TYPE_NUMERIC_ARRAY.equals(valueType)) {
+			observation.setValue(createWaveform(value, sampleRate, dataRange, unit));
+		} else if (value != null && !value.isEmpty()) {
+			observation.setValue(createValue(valueType, value, unit));
+		}
+		return observation;
+	}
+
+	private static IDatatype createValue(String valueType, String value, String unit) {
+		if (TYPE_NUMERIC.equals(valueType)) {
+			QuantityDt quantity = new QuantityDt();
+			try {
+				quantity.setValue(new DecimalDt(new BigDecimal(value)));
+			} catch (NumberFormatException e) {
+				throw new XmlParsingException("Invalid numeric value " + value, e);
+			}
+			quantity.setCode(unit);
+			return quantity;
+		}
+		return new StringDt(value);
+	}
+
+	private static SampledDataDt createWaveform(String value, String sampleRate, String dataRange, String unit) {
+		try {
+			return SampledWaveform.fromT5(value == null ? "" : value, sampleRate, dataRange, unit).toSampledData();
+		} catch (T5Exception e) {
+			throw new XmlParsingException("Invalid waveform", e);
+		}
+	}
+
+	/**
+	 * Time stamps are written in UTC without offset, an explicit offset is respected.
+	 */
+	private static DateTimeDt parseTimestamp(String timestamp) {
+		try {
+			return new DateTimeDt(new Date(TimestampCodec.parseIso(timestamp)), TemporalPrecisionEnum.MILLI, UTC);
+		} catch (DateTimeParseException e) {
+			throw new XmlParsingException("Invalid time stamp " + timestamp, e);
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package net.sllmdilab.commons.converter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes XML in exactly the form the JDK {@link javax.xml.transform.Transformer} serializes a DOM document with UTF-8
+ * encoding, so streamed and DOM based T5 messages are byte-identical.
+ *
+ * That serializer differs from {@link javax.xml.stream.XMLStreamWriter} in the declaration, which includes
+ * <code>standalone="no"</code>, and in escaping: control characters, line breaks in attributes and characters
+ * outside the Basic Multilingual Plane are written as character references. Elements without content are closed with
+ * <code>/&gt;</code>. DOM sorts attributes by name, so callers add them in that order.
+ */
+final class T5XmlWriter {
+
+	static final String DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+
+	private final Writer writer;
+	private boolean startTagOpen;
+
+	T5XmlWriter(Writer writer) {
+		this.writer = writer;
+	}
+
+	void writeDeclaration() throws IOException {
+		writer.write(DECLARATION);
+	}
+
+	void startElement(String name) throws IOException {
+		closeStartTag();
+		writer.write('<');
+		writer.write(name);
+		startTagOpen = true;
+	}
+
+	/**
+	 * A null value is written as an empty attribute, like DOM does.
+	 */
+	void attribute(String name, String value) throws IOException {
+		writer.write(' ');
+		writer.write(name);
+		writer.write("=\"");
+		if (value != null) {
+			escape(value, true);
+		}
+		writer.write('"');
+	}
+
+	/**
+	 * Null or empty text adds no content, like setting it as DOM text content.
+	 */
+	void text(String text) throws IOException {
+		if (text == null || text.isEmpty()) {
+			return;
+		}
+		closeStartTag();
+		escape(text, false);
+	}
+
+	void endElement(String name) throws IOException {
+		if (startTagOpen) {
+			writer.write("/>");
+			startTagOpen = false;
+		} else {
+			writer.write("</");
+			writer.write(name);
+			writer.write('>');
+		}
+	}
+
+	void flush() throws IOException {
+		writer.flush();
+	}
+
+	private void closeStartTag() throws IOException {
+		if (startTagOpen) {
+			writer.write('>');
+			startTagOpen = false;
+		}
+	}
+
+	private void escape(String value, boolean attribute) throws IOException {
+		int written = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			String replacement = null;
+			int end = i + 1;
+
+			if (c == '&') {
+				replacement = "&amp;";
+			} else if (c == '<') {
+				replacement = "&lt;";
+			} else if (c == '>') {
+				replacement = "&gt;";
+			} else if (c == '"' && attribute) {
+				replacement = "&quot;";
+			} else if (c < 0x20 && (attribute || (c != '\t' && c != '\n'))) {
+				replacement = "&#" + (int) c + ";";
+			} else if (c >= 0x7F && c <= 0x9F && !attribute) {
+				replacement = "&#" + (int) c + ";";
+			} else if (Character.isHighSurrogate(c) && end < value.length()
+					&& Character.isLowSurrogate(value.charAt(end))) {
+				replacement = "&#" + value.codePointAt(i) + ";";
+				end++;
+			}
+
+			if (replacement != null) {
+				writer.write(value, written, i - written);
+				writer.write(replacement);
+				written = end;
+				i = end - 1;
+			}
+		}
+		writer.write(value, written, value.length() - written);
+	}
+}
@@ -0,0 +1,385 @@
+package net.sllmdilab.commons.converter;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A UCUM unit expression reduced to a factor, an offset and a dimension vector over the base dimensions, such that a
+ * value <code>x</code> in the unit is <code>x * factor + offset</code> in the base units.
+ *
+ * Only the subset of UCUM used by the Rosetta units table is understood. Logarithmic units such as <code>dB</code>
+ * and <code>[pH]</code> can not be expressed this way and are rejected, as are unknown atoms.
+ */
+final class UcumUnit {
+
+	/**
+	 * Base dimensions, in the order of the dimension vector. The letters are those of the <code>DIM</code> column of
+	 * the Rosetta units table.
+	 */
+	static final String[] DIMENSIONS = { "L", "M", "T", "I", "Q", "N", "J", "[iU]", "[rad]" };
+
+	private static final int LENGTH = 0;
+	private static final int MASS = 1;
+	private static final int TIME = 2;
+	private static final int CURRENT = 3;
+	private static final int TEMPERATURE = 4;
+	private static final int AMOUNT = 5;
+	private static final int LUMINOSITY = 6;
+	private static final int INTERNATIONAL_UNIT = 7;
+	private static final int ANGLE = 8;
+
+	private static final Map<String, Double> PREFIXES = new HashMap<String, Double>();
+	private static final Map<String, Atom> ATOMS = new HashMap<String, Atom>();
+
+	static {
+		String[] prefixes = { "Y", "Z", "E", "P", "T", "G", "M", "k", "h", "da", "d", "c", "m", "u", "n", "p", "f", "a",
+				"z", "y" };
+		int[] exponents = { 24, 21, 18, 15, 12, 9, 6, 3, 2, 1, -1, -2, -3, -6, -9, -12, -15, -18, -21, -24 };
+		for (int i = 0; i < prefixes.length; i++) {
+			PREFIXES.put(prefixes[i], Math.pow(10, exponents[i]));
+		}
+
+		base("m", LENGTH);
+		base("g", MASS);
+		base("s", TIME);
+		base("A", CURRENT);
+		base("K", TEMPERATURE);
+		base("mol", AMOUNT);
+		base("cd", LUMINOSITY);
+		base("[iU]", INTERNATIONAL_UNIT);
+		base("rad", ANGLE);
+		ATOMS.put("[IU]", ATOMS.get("[iU]"));
+
+		define("1", 1, "", false);
+		define("%", 0.01, "", false);
+		define("[ppth]", 1e-3, "", false);
+		define("[ppm]", 1e-6, "", false);
+		define("[pi]", Math.PI, "", false);
+		define("deg", Math.PI / 180, "rad", false);
+		define("sr", 1, "", true);
+
+		define("min", 60, "s", false);
+		define("h", 3600, "s", false);
+		define("d", 86400, "s", false);
+		define("wk", 604800, "s", false);
+		define("a", 31557600, "s", false);
+		define("mo", 31557600 / 12, "s", false);
+		define("Hz", 1, "s-1", true);
+
+		define("L", 1e-3, "m3", true);
+		define("l", 1e-3, "m3", true);
+		define("[in_i]", 0.0254, "m", false);
+		define("[ft_i]", 0.3048, "m", false);
+		define("[yd_i]", 0.9144, "m", false);
+		define("[drp]", 0.05, "mL", false);
+		define("[lb_av]", 453.59237, "g", false);
+		define("[oz_av]", 28.349523125, "g", false);
+		define("eq", 1, "mol", true);
+		define("osm", 1, "mol", true);
+
+		define("N", 1, "kg.m/s2", true);
+		define("dyn", 1, "g.cm/s2", true);
+		define("gf", 9.80665, "g.m/s2", true);
+		define("Pa", 1, "N/m2", true);
+		define("bar", 1e5, "Pa", true);
+		define("m[Hg]", 133322.387415, "Pa", true);
+		define("m[H2O]", 9806.65, "Pa", true);
+		define("[psi]", 6894.757293168361, "Pa", false);
+		define("J", 1, "N.m", true);
+		define("eV", 1.602176634e-19, "J", true);
+		define("cal", 4.184, "J", true);
+		define("[Cal]", 4184, "J", false);
+		define("W", 1, "J/s", true);
+		define("C", 1, "A.s", true);
+		define("V", 1, "J/C", true);
+		define("Ohm", 1, "V/A", true);
+		define("S", 1, "Ohm-1", true);
+		define("F", 1, "C/V", true);
+		define("T", 1, "kg/(A.s2)", true);
+		define("lm", 1, "cd.sr", true);
+		define("[PRU]", 1, "mm[Hg].s/mL", false);
+		define("[wood'U]", 1, "mm[Hg].min/L", false);
+
+		ATOMS.put("Cel", new Atom(of(1, 273.15, TEMPERATURE), false));
+		ATOMS.put("[degF]", new Atom(of(5.0 / 9, 459.67 * 5 / 9, TEMPERATURE), false));
+	}
+
+	private final double factor;
+	private final double offset;
+	private final int[] dimensions;
+
+	private UcumUnit(double factor, double offset, int[] dimensions) {
+		this.factor = factor;
+		this.offset = offset;
+		this.dimensions = dimensions;
+	}
+
+	private static UcumUnit of(double factor, double offset, int dimension) {
+		int[] dimensions = new int[DIMENSIONS.length];
+		dimensions[dimension] = 1;
+		return new UcumUnit(factor, offset, dimensions);
+	}
+
+	private static void base(String symbol, int dimension) {
+		ATOMS.put(symbol, new Atom(of(1, 0, dimension), true));
+	}
+
+	private static void define(String symbol, double factor, String definition, boolean metric) {
+		UcumUnit unit = definition.isEmpty() ? new UcumUnit(1, 0, new int[DIMENSIONS.length]) : parse(definition);
+		ATOMS.put(symbol, new Atom(unit.scale(factor), metric));
+	}
+
+	/**
+	 * Parses a UCUM expression such as <code>mL/kg/min</code> or <code>dyn.s/cm5</code>.
+	 *
+	 * @return the unit, or null if the expression is not understood
+	 */
+	static UcumUnit parse(String expression) {
+		Parser parser = new Parser(expression);
+		try {
+			UcumUnit unit = parser.parseTerm();
+			if (!parser.atEnd()) {
+				return null;
+			}
+			return unit;
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Parses a formula of the <code>DIM</code> column, such as <code>LMT-2L-2</code>, into a dimension vector.
+	 *
+	 * @return the dimension vector, or null if the formula uses a dimension which is not a base dimension
+	 */
+	static int[] parseDimensions(String formula) {
+		int[] dimensions = new int[DIMENSIONS.length];
+		int position = 0;
+		if ("1".equals(formula)) {
+			return dimensions;
+		}
+
+		while (position < formula.length()) {
+			int dimension = -1;
+			for (int i = 0; i < DIMENSIONS.length; i++) {
+				if (formula.startsWith(DIMENSIONS[i], position)) {
+					dimension = i;
+					position += DIMENSIONS[i].length();
+					break;
+				}
+			}
+			if (dimension < 0) {
+				return null;
+			}
+
+			int start = position;
+			if (position < formula.length() && formula.charAt(position) == '-') {
+				position++;
+			}
+			while (position < formula.length() && Character.isDigit(formula.charAt(position))) {
+				position++;
+			}
+			dimensions[dimension] += start == position ? 1 : Integer.parseInt(formula.substring(start, position));
+		}
+		return dimensions;
+	}
+
+	double getFactor() {
+		return factor;
+	}
+
+	double getOffset() {
+		return offset;
+	}
+
+	int[] getDimensions() {
+		return dimensions.clone();
+	}
+
+	boolean isCommensurable(int[] otherDimensions) {
+		return Arrays.equals(dimensions, otherDimensions);
+	}
+
+	private UcumUnit scale(double scale) {
+		return new UcumUnit(factor * scale, offset * scale, dimensions);
+	}
+
+	private UcumUnit multiply(UcumUnit other, int sign) {
+		if (offset != 0 || other.offset != 0) {
+			throw new IllegalArgumentException("Units with an offset can not be combined.");
+		}
+
+		int[] combined = new int[DIMENSIONS.length];
+		for (int i = 0; i < combined.length; i++) {
+			combined[i] = dimensions[i] + sign * other.dimensions[i];
+		}
+		return new UcumUnit(sign > 0 ? factor * other.factor : factor / other.factor, 0, combined);
+	}
+
+	private UcumUnit pow(int exponent) {
+		if (exponent == 1) {
+			return this;
+		}
+		if (offset != 0) {
+			throw new IllegalArgumentException("Units with an offset can not be raised to a power.");
+		}
+
+		int[] raised = new int[DIMENSIONS.length];
+		for (int i = 0; i < raised.length; i++) {
+			raised[i] = dimensions[i] * exponent;
+		}
+		return new UcumUnit(Math.pow(factor, exponent), 0, raised);
+	}
+
+	private static final class Atom {
+
+		private final UcumUnit unit;
+		private final boolean metric;
+
+		private Atom(UcumUnit unit, boolean metric) {
+			this.unit = unit;
+			this.metric = metric;
+		}
+	}
+
+	/**
+	 * Recursive descent over <code>term := ['/'] component (('.' | '/') component)*</code>, where a component is a
+	 * parenthesized term, an integer, <code>10*n</code> or a prefixed atom with an optional exponent. Annotations in
+	 * curly braces are ignored.
+	 */
+	private static final class Parser {
+
+		private final String expression;
+		private int position;
+
+		private Parser(String expression) {
+			this.expression = expression;
+		}
+
+		private boolean atEnd() {
+			return position == expression.length();
+		}
+
+		private UcumUnit parseTerm() {
+			UcumUnit unit;
+			if (peek() == '/') {
+				position++;
+				unit = new UcumUnit(1, 0, new int[DIMENSIONS.length]).multiply(parseComponent(), -1);
+			} else {
+				unit = parseComponent();
+			}
+
+			while (!atEnd() && (peek() == '.' || peek() == '/')) {
+				int sign = expression.charAt(position++) == '.' ? 1 : -1;
+				unit = unit.multiply(parseComponent(), sign);
+			}
+			return unit;
+		}
+
+		private UcumUnit parseComponent() {
+			if (peek() == '(') {
+				position++;
+				UcumUnit unit = parseTerm();
+				if (peek() != ')') {
+					throw new IllegalArgumentException("Unbalanced parenthesis.");
+				}
+				position++;
+				return unit;
+			}
+
+			String symbol = stripAnnotations(readSymbol());
+			if (symbol.isEmpty()) {
+				return new UcumUnit(1, 0, new int[DIMENSIONS.length]);
+			}
+
+			int powerOfTen = symbol.indexOf('*') == 2 ? 3 : symbol.indexOf('^') == 2 ? 3 : -1;
+			if (powerOfTen > 0 && symbol.startsWith("10")) {
+				return new UcumUnit(Math.pow(10, Integer.parseInt(symbol.substring(powerOfTen))), 0,
+						new int[DIMENSIONS.length]);
+			}
+			if (isInteger(symbol)) {
+				return new UcumUnit(Double.parseDouble(symbol), 0, new int[DIMENSIONS.length]);
+			}
+
+			int exponentStart = symbol.length();
+			while (exponentStart > 0 && Character.isDigit(symbol.charAt(exponentStart - 1))) {
+				exponentStart--;
+			}
+			if (exponentStart > 0 && exponentStart < symbol.length() && (symbol.charAt(exponentStart - 1) == '-'
+					|| symbol.charAt(exponentStart - 1) == '+')) {
+				exponentStart--;
+			}
+			int exponent = exponentStart == symbol.length() ? 1 : Integer.parseInt(symbol.substring(exponentStart));
+
+			return resolve(symbol.substring(0, exponentStart)).pow(exponent);
+		}
+
+		private UcumUnit resolve(String symbol) {
+			Atom atom = ATOMS.get(symbol);
+			if (atom != null) {
+				return atom.unit;
+			}
+
+			for (int length = 2; length > 0; length--) {
+				if (symbol.length() > length) {
+					Double prefix = PREFIXES.get(symbol.substring(0, length));
+					atom = ATOMS.get(symbol.substring(length));
+					if (prefix != null && atom != null && atom.metric) {
+						return atom.unit.scale(prefix);
+					}
+				}
+			}
+			throw new IllegalArgumentException("Unknown unit " + symbol + ".");
+		}
+
+		/**
+		 * Reads up to the next operator or parenthesis outside of square and curly brackets.
+		 */
+		private String readSymbol() {
+			int start = position;
+			int depth = 0;
+			while (!atEnd()) {
+				char c = expression.charAt(position);
+				if (c == '[' || c == '{') {
+					depth++;
+				} else if (c == ']' || c == '}') {
+					depth--;
+				} else if (depth == 0 && (c == '.' || c == '/' || c == '(' || c == ')')) {
+					break;
+				}
+				position++;
+			}
+			return expression.substring(start, position);
+		}
+
+		private char peek() {
+			return atEnd() ? 0 : expression.charAt(position);
+		}
+
+		private static String stripAnnotations(String symbol) {
+			StringBuilder stripped = new StringBuilder(symbol.length());
+			int depth = 0;
+			for (int i = 0; i < symbol.length(); i++) {
+				char c = symbol.charAt(i);
+				if (c == '{') {
+					depth++;
+				} else if (c == '}') {
+					depth--;
+				} else if (depth == 0) {
+					stripped.append(c);
+				}
+			}
+			return stripped.toString();
+		}
+
+		private static boolean isInteger(String symbol) {
+			for (int i = 0; i < symbol.length(); i++) {
+				if (!Character.isDigit(symbol.charAt(i))) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
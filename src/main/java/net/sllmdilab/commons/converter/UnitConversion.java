@@ -0,0 +1,67 @@
+package net.sllmdilab.commons.converter;
+
+/**
+ * Conversion of values from one unit to a commensurable unit, <code>to = from * factor + offset</code>. The offset is
+ * zero except between temperature scales.
+ *
+ * Instances are immutable and obtained from {@link UnitConverter}.
+ */
+public final class UnitConversion {
+
+	static final UnitConversion IDENTITY = new UnitConversion(1, 0);
+
+	private final double factor;
+	private final double offset;
+
+	UnitConversion(double factor, double offset) {
+		this.factor = factor;
+		this.offset = offset;
+	}
+
+	public double getFactor() {
+		return factor;
+	}
+
+	public double getOffset() {
+		return offset;
+	}
+
+	public boolean isIdentity() {
+		return factor == 1 && offset == 0;
+	}
+
+	public double convert(double value) {
+		return value * factor + offset;
+	}
+
+	/**
+	 * Converts all values of the series in place.
+	 */
+	public void convert(double[] values) {
+		convert(values, 0, values.length);
+	}
+
+	/**
+	 * Converts <code>length</code> values of the series starting at <code>offset</code> in place.
+	 */
+	public void convert(double[] values, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > values.length) {
+			throw new IndexOutOfBoundsException("Range " + offset + "+" + length + " out of bounds for length "
+					+ values.length + ".");
+		}
+		if (isIdentity()) {
+			return;
+		}
+
+		int end = offset + length;
+		if (this.offset == 0) {
+			for (int i = offset; i < end; i++) {
+				values[i] *= factor;
+			}
+		} else {
+			for (int i = offset; i < end; i++) {
+				values[i] = values[i] * factor + this.offset;
+			}
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package net.sllmdilab.commons.converter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sllmdilab.commons.exceptions.UnitConversionException;
+import net.sllmdilab.commons.t5.validators.RosettaUnit;
+import net.sllmdilab.commons.t5.validators.RosettaValidator;
+
+/**
+ * Converts values between commensurable units of the Rosetta units table, e.g. <code>MDC_DIM_MILLI_VOLT</code> and
+ * <code>uV</code> or <code>mm[Hg]</code> and <code>kPa</code>. Units are given either as MDC code or as one of the UCUM
+ * spellings of the table.
+ *
+ * The dimension of a unit is taken from the <code>DIM</code> column and its scale from the first UCUM spelling which
+ * agrees with that dimension. Units whose <code>DIM</code> is empty or not a product of base dimensions, such as
+ * logarithmic units, are not convertible. All conversions are computed once on construction.
+ */
+public class UnitConverter {
+
+	private final Map<String, Slot> slots = new HashMap<String, Slot>();
+	private final UnitConversion[][][] conversions;
+
+	public UnitConverter(RosettaValidator rosettaValidator) {
+		Map<String, List<UcumUnit>> classes = new HashMap<String, List<UcumUnit>>();
+		Map<String, Integer> classIndexes = new HashMap<String, Integer>();
+
+		for (RosettaUnit unit : rosettaValidator.getUnits()) {
+			int[] dimensions = UcumUnit.parseDimensions(unit.getDim());
+			if (unit.getDim().isEmpty() || dimensions == null) {
+				continue;
+			}
+
+			String classKey = Arrays.toString(dimensions);
+			Integer classIndex = classIndexes.get(classKey);
+			if (classIndex == null) {
+				classIndex = classIndexes.size();
+				classIndexes.put(classKey, classIndex);
+				classes.put(classKey, new ArrayList<UcumUnit>());
+			}
+			List<UcumUnit> members = classes.get(classKey);
+
+			for (String ucumUnit : unit.getUcumUnit().split(" ")) {
+				UcumUnit parsed = ucumUnit.isEmpty() ? null : UcumUnit.parse(ucumUnit);
+				if (parsed == null || !parsed.isCommensurable(dimensions)) {
+					continue;
+				}
+
+				Slot slot = slots.get(ucumUnit);
+				if (slot == null) {
+					slot = new Slot(classIndex, members.size());
+					members.add(parsed);
+					slots.put(ucumUnit, slot);
+				}
+				if (!slots.containsKey(unit.getMdcUnit())) {
+					slots.put(unit.getMdcUnit(), slot);
+				}
+			}
+		}
+
+		conversions = new UnitConversion[classIndexes.size()][][];
+		for (Map.Entry<String, Integer> entry : classIndexes.entrySet()) {
+			conversions[entry.getValue()] = createConversions(classes.get(entry.getKey()));
+		}
+	}
+
+	private static UnitConversion[][] createConversions(List<UcumUnit> members) {
+		UnitConversion[][] classConversions = new UnitConversion[members.size()][members.size()];
+		for (int from = 0; from < members.size(); from++) {
+			UcumUnit fromUnit = members.get(from);
+			for (int to = 0; to < members.size(); to++) {
+				UcumUnit toUnit = members.get(to);
+				if (from == to) {
+					classConversions[from][to] = UnitConversion.IDENTITY;
+				} else {
+					classConversions[from][to] = new UnitConversion(fromUnit.getFactor() / toUnit.getFactor(),
+							(fromUnit.getOffset() - toUnit.getOffset()) / toUnit.getFactor());
+				}
+			}
+		}
+		return classConversions;
+	}
+
+	/**
+	 * True if both units are known and measure the same kind of quantity.
+	 *
+	 * @param fromUnit
+	 *            MDC code or UCUM unit.
+	 * @param toUnit
+	 *            MDC code or UCUM unit.
+	 * @return
+	 */
+	public boolean isConvertible(String fromUnit, String toUnit) {
+		Slot from = slots.get(fromUnit);
+		Slot to = slots.get(toUnit);
+		return from != null && to != null && from.classIndex == to.classIndex;
+	}
+
+	/**
+	 * Get the conversion between two units.
+	 *
+	 * @param fromUnit
+	 *            MDC code or UCUM unit.
+	 * @param toUnit
+	 *            MDC code or UCUM unit.
+	 * @return
+	 * @throws UnitConversionException
+	 *             if a unit is unknown or the units are not commensurable.
+	 */
+	public UnitConversion getConversion(String fromUnit, String toUnit) {
+		Slot from = getSlot(fromUnit);
+		Slot to = getSlot(toUnit);
+		if (from.classIndex != to.classIndex) {
+			throw new UnitConversionException("Units " + fromUnit + " and " + toUnit + " are not commensurable.");
+		}
+		return conversions[from.classIndex][from.index][to.index];
+	}
+
+	public double convert(double value, String fromUnit, String toUnit) {
+		return getConversion(fromUnit, toUnit).convert(value);
+	}
+
+	/**
+	 * Converts all values of the series in place.
+	 */
+	public void convert(double[] values, String fromUnit, String toUnit) {
+		getConversion(fromUnit, toUnit).convert(values);
+	}
+
+	private Slot getSlot(String unit) {
+		Slot slot = slots.get(unit);
+		if (slot == null) {
+			throw new UnitConversionException("Unit " + unit + " is not convertible.");
+		}
+		return slot;
+	}
+
+	private static final class Slot {
+
+		private final int classIndex;
+		private final int index;
+
+		private Slot(int classIndex, int index) {
+			this.classIndex = classIndex;
+			this.index = index;
+		}
+	}
+}
@@ -3,20 +3,13 @@ package net.sllmdilab.commons.database;
 import static java.lang.System.currentTimeMillis;
 
 import java.io.IOException;
-import java.io.StringReader;
-import java.text.SimpleDateFormat;
-import java.util.TimeZone;
-
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 
 import net.sllmdilab.commons.exceptions.DatabaseException;
-import net.sllmdilab.commons.util.Constants;
+import net.sllmdilab.commons.util.XmlUtils;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import com.marklogic.xcc.ContentSource;
@@ -30,11 +23,7 @@ public class MLDBClient {
 
 	private ContentSource contentSource;
 
-	private final SimpleDateFormat isoDateFormat = new SimpleDateFormat(Constants.ISO_DATE_FORMAT);
-
 	public MLDBClient(ContentSource contenSource) {
-		isoDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-
 		this.contentSource = contenSource;
 	}
 
@@ -59,14 +48,13 @@ public class MLDBClient {
 
 		try {
 			return parseXml(response);
-		} catch (SAXException | IOException | ParserConfigurationException e) {
+		} catch (SAXException | IOException e) {
 			throw new DatabaseException(e);
 		}
 	}
 
-	private Document parseXml(String response) throws SAXException, IOException, ParserConfigurationException {
-		return DocumentBuilderFactory.newInstance().newDocumentBuilder()
-				.parse(new InputSource(new StringReader(response)));
+	private Document parseXml(String response) throws SAXException, IOException {
+		return XmlUtils.parse(response, false);
 	}
 
 	public String insertDocument(String uri, String document) {
@@ -0,0 +1,27 @@
+package net.sllmdilab.commons.exceptions;
+
+public class UnitConversionException extends T5Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	public UnitConversionException() {
+	}
+
+	public UnitConversionException(String message) {
+		super(message);
+	}
+
+	public UnitConversionException(Throwable cause) {
+		super(cause);
+	}
+
+	public UnitConversionException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	public UnitConversionException(String message, Throwable cause,
+			boolean enableSuppression, boolean writableStackTrace) {
+		super(message, cause, enableSuppression, writableStackTrace);
+	}
+
+}
@@ -0,0 +1,52 @@
+package net.sllmdilab.commons.t5.validators;
+
+/**
+ * Immutable, fully resolved entry of the Rosetta harmonized table.
+ */
+public final class HarmonizedTerm {
+	private final String refid;
+	private final String description;
+	private final String ucumUnits;
+	private final String synonym;
+	private final int contextFreeCode;
+
+	HarmonizedTerm(String refid, String description, String ucumUnits, String synonym, int contextFreeCode) {
+		this.refid = refid;
+		this.description = description;
+		this.ucumUnits = ucumUnits;
+		this.synonym = synonym;
+		this.contextFreeCode = contextFreeCode;
+	}
+
+	public String getRefid() {
+		return refid;
+	}
+
+	/**
+	 * Vendor description, empty string if the table has none.
+	 */
+	public String getDescription() {
+		return description;
+	}
+
+	/**
+	 * Space separated UCUM units, empty string if the table has none.
+	 */
+	public String getUcumUnits() {
+		return ucumUnits;
+	}
+
+	/**
+	 * Synonym of this term, or the term this term is a synonym of. Empty string if there is none.
+	 */
+	public String getSynonym() {
+		return synonym;
+	}
+
+	/**
+	 * The <code>CF_CODE10</code> of the term, -1 if unknown.
+	 */
+	public int getContextFreeCode() {
+		return contextFreeCode;
+	}
+}
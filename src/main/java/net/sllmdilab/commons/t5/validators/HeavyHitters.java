@@ -0,0 +1,130 @@
+package net.sllmdilab.commons.t5.validators;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving sketch of the most frequent keys of a stream, in a fixed number of counters.
+ *
+ * A key which is not counted yet takes over the counter with the smallest count when all counters are taken, and
+ * continues from that count. So a key which becomes frequent is always admitted, however many keys came before it,
+ * and every key more frequent than one in <code>capacity</code> of the stream is guaranteed to be counted. Counts are
+ * upper bounds, too high by at most the count the key took over.
+ *
+ * The counters are a min-heap, so taking over a counter costs a logarithmic number of swaps. Thread safe.
+ */
+final class HeavyHitters {
+
+	private final int capacity;
+	private final Map<String, Counter> counters;
+	private final Counter[] heap;
+	private int size;
+
+	HeavyHitters(int capacity) {
+		this.capacity = capacity;
+		this.counters = new HashMap<String, Counter>(capacity * 2);
+		this.heap = new Counter[capacity];
+	}
+
+	synchronized void increment(String key) {
+		Counter counter = counters.get(key);
+		if (counter == null) {
+			if (size < capacity) {
+				counter = new Counter(key, size);
+				counter.count = 1;
+				heap[size++] = counter;
+				counters.put(key, counter);
+				siftUp(counter.index);
+				return;
+			}
+			counter = heap[0];
+			counters.remove(counter.key);
+			counter.key = key;
+			counters.put(key, counter);
+		}
+		counter.count++;
+		siftDown(counter.index);
+	}
+
+	/**
+	 * @param limit
+	 * @return the most frequent keys with their counts, most frequent first
+	 */
+	synchronized Map<String, Long> getTop(int limit) {
+		List<Counter> sorted = new ArrayList<Counter>(counters.values());
+		Collections.sort(sorted, new Comparator<Counter>() {
+			@Override
+			public int compare(Counter first, Counter second) {
+				int byCount = Long.compare(second.count, first.count);
+				return byCount != 0 ? byCount : first.key.compareTo(second.key);
+			}
+		});
+
+		Map<String, Long> top = new LinkedHashMap<String, Long>();
+		for (Counter counter : sorted.subList(0, Math.min(limit, sorted.size()))) {
+			top.put(counter.key, counter.count);
+		}
+		return top;
+	}
+
+	synchronized void clear() {
+		counters.clear();
+		for (int i = 0; i < size; i++) {
+			heap[i] = null;
+		}
+		size = 0;
+	}
+
+	private void siftUp(int index) {
+		Counter counter = heap[index];
+		while (index > 0) {
+			int parent = (index - 1) / 2;
+			if (heap[parent].count <= counter.count) {
+				break;
+			}
+			heap[index] = heap[parent];
+			heap[index].index = index;
+			index = parent;
+		}
+		heap[index] = counter;
+		counter.index = index;
+	}
+
+	private void siftDown(int index) {
+		Counter counter = heap[index];
+		while (true) {
+			int child = 2 * index + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+				child++;
+			}
+			if (heap[child].count >= counter.count) {
+				break;
+			}
+			heap[index] = heap[child];
+			heap[index].index = index;
+			index = child;
+		}
+		heap[index] = counter;
+		counter.index = index;
+	}
+
+	private static final class Counter {
+
+		private String key;
+		private long count;
+		private int index;
+
+		private Counter(String key, int index) {
+			this.key = key;
+			this.index = index;
+		}
+	}
+}
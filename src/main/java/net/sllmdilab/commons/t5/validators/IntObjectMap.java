@@ -0,0 +1,86 @@
+package net.sllmdilab.commons.t5.validators;
+
+/**
+ * Open-addressing hash map from primitive int keys to values, so numeric code lookups need neither boxing nor string
+ * building. Null values are not supported.
+ *
+ * Filled while a validator is created and only read afterwards, it is not safe for concurrent writes.
+ */
+final class IntObjectMap<V> {
+
+	private int[] keys;
+	private Object[] values;
+	private int size;
+
+	IntObjectMap() {
+		keys = new int[16];
+		values = new Object[16];
+	}
+
+	@SuppressWarnings("unchecked")
+	V get(int key) {
+		int mask = keys.length - 1;
+		for (int slot = mix(key) & mask;; slot = (slot + 1) & mask) {
+			Object value = values[slot];
+			if (value == null) {
+				return null;
+			}
+			if (keys[slot] == key) {
+				return (V) value;
+			}
+		}
+	}
+
+	/**
+	 * Adds the mapping unless the key is already mapped, the first value put for a key wins.
+	 */
+	void putIfAbsent(int key, V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Null values are not supported.");
+		}
+		if ((size + 1) * 2 > keys.length) {
+			resize();
+		}
+
+		int mask = keys.length - 1;
+		for (int slot = mix(key) & mask;; slot = (slot + 1) & mask) {
+			if (values[slot] == null) {
+				keys[slot] = key;
+				values[slot] = value;
+				size++;
+				return;
+			}
+			if (keys[slot] == key) {
+				return;
+			}
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void resize() {
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+
+		keys = new int[oldKeys.length * 2];
+		values = new Object[oldValues.length * 2];
+		size = 0;
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != null) {
+				putIfAbsent(oldKeys[i], (V) oldValues[i]);
+			}
+		}
+	}
+
+	/**
+	 * Spreads the bits of codes that differ only in their low bits, such as consecutive codes in one partition.
+	 */
+	private static int mix(int key) {
+		int hash = key * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+}
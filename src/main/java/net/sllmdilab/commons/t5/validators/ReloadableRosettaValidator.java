@@ -0,0 +1,166 @@
+package net.sllmdilab.commons.t5.validators;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import net.sllmdilab.commons.exceptions.RosettaInitializationException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the {@link RosettaValidator} of the Rosetta tables in a directory and replaces it when the tables change.
+ *
+ * Readers call {@link #get()} and use the returned validator. A reload builds a complete new validator and then swaps
+ * the reference, so lookups never block and never see a partially loaded table; a reader keeps the validator it got
+ * until it asks again. If the new tables can not be loaded the current validator stays in place.
+ *
+ * Reloads happen on {@link #reload()}, or automatically after {@link #startWatching()} when one of the three files is
+ * created or modified. Changes are collected until the directory has been quiet for a short while, so that copying
+ * all three files triggers one reload.
+ */
+public final class ReloadableRosettaValidator implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(ReloadableRosettaValidator.class);
+
+	private static final long QUIET_PERIOD_MILLIS = 500;
+
+	private final Path directory;
+	private final RosettaMetrics metrics;
+	private final Object reloadLock = new Object();
+
+	private volatile RosettaValidator current;
+
+	private WatchService watchService;
+	private Thread watcher;
+
+	/**
+	 * Loads the tables of the directory.
+	 *
+	 * @param directory
+	 *            directory with <code>rosetta_harmonized.xml</code>, <code>rosetta_terms.xml</code> and
+	 *            <code>rosetta_units.xml</code>
+	 * @throws RosettaInitializationException
+	 *             if the initial tables can not be loaded
+	 */
+	public ReloadableRosettaValidator(Path directory) throws RosettaInitializationException {
+		this(directory, RosettaMetrics.NONE);
+	}
+
+	/**
+	 * Loads the tables of the directory. Every loaded validator reports to the metrics.
+	 *
+	 * @param directory
+	 * @param metrics
+	 * @throws RosettaInitializationException
+	 *             if the initial tables can not be loaded
+	 */
+	public ReloadableRosettaValidator(Path directory, RosettaMetrics metrics) throws RosettaInitializationException {
+		this.directory = directory;
+		this.metrics = metrics;
+		this.current = new RosettaValidator(directory, metrics);
+	}
+
+	/**
+	 * The validator of the most recently loaded tables.
+	 */
+	public RosettaValidator get() {
+		return current;
+	}
+
+	/**
+	 * Loads the tables of the directory and swaps in the new validator.
+	 *
+	 * @return true if the new tables were loaded, false if loading failed and the current validator was kept
+	 */
+	public boolean reload() {
+		synchronized (reloadLock) {
+			try {
+				RosettaValidator reloaded = new RosettaValidator(directory, metrics);
+				current = reloaded;
+				logger.info("Reloaded Rosetta tables from " + directory + ".");
+				return true;
+			} catch (RosettaInitializationException e) {
+				logger.error("Could not reload Rosetta tables from " + directory + ", keeping current tables.", e);
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Starts a daemon thread which reloads the tables when they change.
+	 *
+	 * @throws IOException
+	 *             if the directory can not be watched
+	 */
+	public synchronized void startWatching() throws IOException {
+		if (watcher != null) {
+			return;
+		}
+
+		watchService = FileSystems.getDefault().newWatchService();
+		directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+		watcher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watch(watchService);
+			}
+		}, "rosetta-reloader");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	/**
+	 * Stops watching the directory. The current validator remains usable.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (watcher != null) {
+			watchService.close();
+			watcher.interrupt();
+			watcher = null;
+			watchService = null;
+		}
+	}
+
+	private void watch(WatchService service) {
+		try {
+			while (true) {
+				WatchKey key = service.take();
+				boolean changed = drain(key);
+
+				// Wait for the directory to become quiet before loading
+				while ((key = service.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+					changed |= drain(key);
+				}
+
+				if (changed) {
+					reload();
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			logger.debug("Stopped watching Rosetta tables in " + directory + ".");
+		}
+	}
+
+	private boolean drain(WatchKey key) {
+		boolean changed = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				changed = true;
+			} else if (RosettaSources.isSourceName(((Path) event.context()).getFileName().toString())) {
+				changed = true;
+			}
+		}
+		key.reset();
+		return changed;
+	}
+}
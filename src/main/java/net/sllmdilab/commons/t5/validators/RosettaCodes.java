@@ -0,0 +1,59 @@
+package net.sllmdilab.commons.t5.validators;
+
+/**
+ * Helpers for the numeric MDC codes of the Rosetta tables. A context-free code is the partition in the upper 16 bits
+ * and the code within the partition (<code>CODE10</code>, <code>UCODE10</code>) in the lower 16 bits.
+ */
+final class RosettaCodes {
+
+	static final int NO_CODE = -1;
+
+	/**
+	 * Partition of the units of measurement, used when a unit only lists its <code>UCODE10</code>.
+	 */
+	static final int PARTITION_DIMENSIONS = 4;
+
+	private RosettaCodes() {
+	}
+
+	/**
+	 * Parses a code column. Columns listing several codes yield the first one.
+	 *
+	 * @return the code, or {@link #NO_CODE} if the column is empty or not numeric
+	 */
+	static int parse(String value) {
+		int end = value.indexOf(' ');
+		String first = end < 0 ? value : value.substring(0, end);
+		if (first.isEmpty()) {
+			return NO_CODE;
+		}
+
+		try {
+			int code = Integer.parseInt(first);
+			return code < 0 ? NO_CODE : code;
+		} catch (NumberFormatException e) {
+			return NO_CODE;
+		}
+	}
+
+	/**
+	 * @return the context-free code, or {@link #NO_CODE} if partition or code are out of range
+	 */
+	static int contextFreeCode(int partition, int code) {
+		if (partition < 0 || partition > 0x7FFF || code < 0 || code > 0xFFFF) {
+			return NO_CODE;
+		}
+		return (partition << 16) | code;
+	}
+
+	/**
+	 * The context-free code column if present, otherwise computed from partition and code.
+	 */
+	static int contextFreeCode(String contextFreeCode, int partition, int code) {
+		int result = parse(contextFreeCode);
+		if (result == NO_CODE && partition != NO_CODE && code != NO_CODE) {
+			result = contextFreeCode(partition, code);
+		}
+		return result;
+	}
+}
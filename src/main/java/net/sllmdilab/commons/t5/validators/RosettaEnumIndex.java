@@ -0,0 +1,73 @@
+package net.sllmdilab.commons.t5.validators;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Enumerated values of the harmonized table, built once from the space separated <code>Enum_Values</code> column.
+ *
+ * Tokens are canonicalized so that each distinct token is stored once, and terms listing the same enumeration, such
+ * as the pump mode terms, share one set.
+ */
+final class RosettaEnumIndex {
+
+	private final Map<String, Set<String>> valuesByRefid;
+
+	RosettaEnumIndex(RosettaTable harmonizedTable) {
+		int refidColumn = harmonizedTable.getColumnIndex("REFID");
+		int enumColumn = harmonizedTable.getColumnIndex("Enum_Values");
+
+		Map<String, String> tokens = new HashMap<String, String>();
+		Map<String, Set<String>> setsByEnumeration = new HashMap<String, Set<String>>();
+		Map<String, Set<String>> valuesMap = new HashMap<String, Set<String>>();
+
+		for (int row = 0; row < harmonizedTable.getRowCount(); row++) {
+			String refid = harmonizedTable.getValue(row, refidColumn);
+			String enumeration = harmonizedTable.getValue(row, enumColumn).trim();
+			if (refid.isEmpty() || enumeration.isEmpty()) {
+				continue;
+			}
+
+			Set<String> values = setsByEnumeration.get(enumeration);
+			if (values == null) {
+				values = new LinkedHashSet<String>();
+				for (String token : enumeration.split("\\s+")) {
+					String canonical = tokens.get(token);
+					if (canonical == null) {
+						canonical = token;
+						tokens.put(token, token);
+					}
+					values.add(canonical);
+				}
+				values = Collections.unmodifiableSet(values);
+				setsByEnumeration.put(enumeration, values);
+			}
+
+			Set<String> existing = valuesMap.get(refid);
+			if (existing != null && existing != values) {
+				// The same REFID listed twice with different enumerations accepts the values of both
+				Set<String> union = new LinkedHashSet<String>(existing);
+				union.addAll(values);
+				values = Collections.unmodifiableSet(union);
+			}
+			valuesMap.put(refid, values);
+		}
+		valuesByRefid = valuesMap;
+	}
+
+	/**
+	 * @return the values in table order, or an empty set if the term is not enumerated
+	 */
+	Set<String> getValues(String refid) {
+		Set<String> values = valuesByRefid.get(refid);
+		return values == null ? Collections.<String> emptySet() : values;
+	}
+
+	boolean isValidValue(String refid, String value) {
+		Set<String> values = valuesByRefid.get(refid);
+		return values != null && values.contains(value);
+	}
+}
@@ -0,0 +1,195 @@
+package net.sllmdilab.commons.t5.validators;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Estimates the heap retained by the fields of an object, assuming a 64 bit VM with compressed references.
+ *
+ * Objects of this package are measured field by field. JDK classes can not be inspected reflectively on newer VMs, so
+ * strings, maps and collections are estimated from their size as if they were a {@link String}, {@link HashMap} or
+ * {@link ArrayList}, and other JDK objects count only their own fields. Objects reachable from several fields are
+ * counted for the first field that reaches them.
+ */
+final class RosettaHeapEstimator {
+
+	private static final int OBJECT_HEADER = 12;
+	private static final int ARRAY_HEADER = 16;
+	private static final int REFERENCE = 4;
+	private static final int ALIGNMENT = 8;
+
+	private static final int HASH_MAP = 48;
+	private static final int HASH_MAP_ENTRY = 40;
+	private static final int ARRAY_LIST = 24;
+	private static final int STRING = 24;
+
+	private final Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+	private final Map<Class<?>, List<Field>> fieldsByClass = new HashMap<Class<?>, List<Field>>();
+
+	/**
+	 * @param excluded
+	 *            objects which are not part of the owner, such as shared services
+	 * @return estimated bytes per reference field, in declaration order
+	 */
+	Map<String, Long> estimateFields(Object owner, Object... excluded) {
+		visited.add(owner);
+		Collections.addAll(visited, excluded);
+
+		Map<String, Long> sizes = new LinkedHashMap<String, Long>();
+		for (Field field : getFields(owner.getClass())) {
+			Object value = field.getType().isPrimitive() ? null : getValue(field, owner);
+			if (value != null && !Arrays.asList(excluded).contains(value)) {
+				sizes.put(field.getName(), estimate(value));
+			}
+		}
+		return sizes;
+	}
+
+	/**
+	 * @return estimated bytes of the objects reachable from root which have not been counted before
+	 */
+	long estimate(Object root) {
+		long bytes = 0;
+		Deque<Object> pending = new ArrayDeque<Object>();
+		push(root, pending);
+
+		while (!pending.isEmpty()) {
+			Object object = pending.pop();
+			Class<?> type = object.getClass();
+
+			if (type.isArray()) {
+				bytes += estimateArray(object, pending);
+			} else if (object instanceof String) {
+				bytes += align(STRING) + align(ARRAY_HEADER + 2L * ((String) object).length());
+			} else if (isJdkClass(type) && object instanceof Map) {
+				Map<?, ?> map = (Map<?, ?>) object;
+				bytes += estimateHashTable(map.size());
+				for (Map.Entry<?, ?> entry : map.entrySet()) {
+					push(entry.getKey(), pending);
+					push(entry.getValue(), pending);
+				}
+			} else if (isJdkClass(type) && object instanceof Collection) {
+				Collection<?> collection = (Collection<?>) object;
+				if (object instanceof Set) {
+					bytes += estimateHashTable(collection.size());
+				} else {
+					bytes += align(ARRAY_LIST) + align(ARRAY_HEADER + (long) REFERENCE * collection.size());
+				}
+				for (Object element : collection) {
+					push(element, pending);
+				}
+			} else {
+				bytes += estimateObject(object, pending);
+			}
+		}
+		return bytes;
+	}
+
+	private long estimateArray(Object array, Deque<Object> pending) {
+		int length = Array.getLength(array);
+		Class<?> componentType = array.getClass().getComponentType();
+		if (componentType.isPrimitive()) {
+			return align(ARRAY_HEADER + (long) primitiveSize(componentType) * length);
+		}
+
+		Object[] elements = (Object[]) array;
+		for (Object element : elements) {
+			push(element, pending);
+		}
+		return align(ARRAY_HEADER + (long) REFERENCE * length);
+	}
+
+	private long estimateObject(Object object, Deque<Object> pending) {
+		long size = OBJECT_HEADER;
+		boolean follow = !isJdkClass(object.getClass());
+		for (Field field : getFields(object.getClass())) {
+			Class<?> fieldType = field.getType();
+			if (fieldType.isPrimitive()) {
+				size += primitiveSize(fieldType);
+			} else {
+				size += REFERENCE;
+				if (follow) {
+					push(getValue(field, object), pending);
+				}
+			}
+		}
+		return align(size);
+	}
+
+	/**
+	 * A hash map of the given size at the default load factor.
+	 */
+	private static long estimateHashTable(int size) {
+		int capacity = 16;
+		while (capacity * 3 / 4 < size) {
+			capacity <<= 1;
+		}
+		return align(HASH_MAP) + align(ARRAY_HEADER + (long) REFERENCE * capacity) + (long) HASH_MAP_ENTRY * size;
+	}
+
+	private void push(Object object, Deque<Object> pending) {
+		if (object != null && !(object instanceof Class) && !(object instanceof Enum) && visited.add(object)) {
+			pending.push(object);
+		}
+	}
+
+	private List<Field> getFields(Class<?> type) {
+		List<Field> fields = fieldsByClass.get(type);
+		if (fields == null) {
+			fields = new ArrayList<Field>();
+			for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+				for (Field field : current.getDeclaredFields()) {
+					if (!Modifier.isStatic(field.getModifiers())) {
+						fields.add(field);
+					}
+				}
+			}
+			fieldsByClass.put(type, fields);
+		}
+		return fields;
+	}
+
+	private static Object getValue(Field field, Object object) {
+		try {
+			field.setAccessible(true);
+			return field.get(object);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static boolean isJdkClass(Class<?> type) {
+		String name = type.getName();
+		return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("sun.")
+				|| name.startsWith("jdk.");
+	}
+
+	private static int primitiveSize(Class<?> type) {
+		if (type == long.class || type == double.class) {
+			return 8;
+		} else if (type == int.class || type == float.class) {
+			return 4;
+		} else if (type == short.class || type == char.class) {
+			return 2;
+		} else {
+			return 1;
+		}
+	}
+
+	private static long align(long size) {
+		return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+	}
+}
@@ -0,0 +1,65 @@
+package net.sllmdilab.commons.t5.validators;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+
+import net.sllmdilab.commons.exceptions.RosettaInitializationException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads the Rosetta tables from the precompiled snapshot, falling back to parsing the XML files when the snapshot is
+ * missing, unreadable or was compiled from other XML files than the ones on the classpath.
+ */
+final class RosettaLoader {
+	private static final Logger logger = LoggerFactory.getLogger(RosettaLoader.class);
+
+	private RosettaLoader() {
+	}
+
+	static RosettaTables loadDefault(RosettaMetrics metrics) {
+		return load(RosettaSources.getDefault(), RosettaLoader.class.getResource(RosettaSnapshot.DEFAULT_RESOURCE),
+				metrics);
+	}
+
+	static RosettaTables load(RosettaSources sources, URL snapshot) {
+		return load(sources, snapshot, RosettaMetrics.NONE);
+	}
+
+	/**
+	 * @param snapshot
+	 *            location of the snapshot, may be null
+	 * @param metrics
+	 *            receives the load time of the snapshot or of each XML file
+	 */
+	static RosettaTables load(RosettaSources sources, URL snapshot, RosettaMetrics metrics) {
+		if (snapshot != null) {
+			try {
+				long start = System.nanoTime();
+				RosettaTables tables = RosettaSnapshot.load(snapshot);
+				if (Arrays.equals(tables.getSourceChecksums(), sources.checksums())) {
+					metrics.recordLoad(RosettaSources.getFileName(snapshot), countRows(tables), System.nanoTime()
+							- start);
+					return tables;
+				}
+				logger.info("Rosetta snapshot " + snapshot + " is stale, parsing XML tables.");
+			} catch (IOException | RosettaInitializationException e) {
+				logger.warn("Could not read Rosetta snapshot " + snapshot + ", parsing XML tables.", e);
+			}
+		} else {
+			logger.debug("No Rosetta snapshot found, parsing XML tables.");
+		}
+
+		return new RosettaXmlReader().read(sources, metrics);
+	}
+
+	private static int countRows(RosettaTables tables) {
+		int rows = 0;
+		for (RosettaTable table : tables.getTables()) {
+			rows += table.getRowCount();
+		}
+		return rows;
+	}
+}
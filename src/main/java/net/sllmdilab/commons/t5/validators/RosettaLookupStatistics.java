@@ -0,0 +1,251 @@
+package net.sllmdilab.commons.t5.validators;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Default {@link RosettaMetrics}, counting calls and misses per method in {@link LongAdder}s so that recording does not
+ * contend between threads.
+ *
+ * Latencies are kept in a histogram with one bucket per power of two nanoseconds, percentiles are the upper bound of
+ * their bucket. Missed keys are counted to find devices sending unknown codes, in a {@link HeavyHitters} sketch of
+ * {@value #MAX_MISSED_KEYS} counters. A flood of random codes can not exhaust the heap, and a code storm which starts
+ * after such a flood is still counted.
+ *
+ * The statistics can be logged with {@link #logReport()} or read over JMX after {@link #registerMBean(String)}.
+ */
+public class RosettaLookupStatistics implements RosettaMetrics, RosettaLookupStatisticsMBean {
+	private static final Logger logger = LoggerFactory.getLogger(RosettaLookupStatistics.class);
+
+	static final int MAX_MISSED_KEYS = 1024;
+
+	private static final int REPORTED_MISSED_KEYS = 10;
+
+	private final ConcurrentMap<String, MethodStatistics> methods = new ConcurrentHashMap<String, MethodStatistics>();
+	private final HeavyHitters missedKeys = new HeavyHitters(MAX_MISSED_KEYS);
+	private final Map<String, long[]> loads = Collections.synchronizedMap(new LinkedHashMap<String, long[]>());
+	private final Map<String, Long> retainedSizes = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+
+	@Override
+	public void recordLookup(String method, String key, boolean found, long nanos) {
+		MethodStatistics statistics = methods.get(method);
+		if (statistics == null) {
+			statistics = new MethodStatistics();
+			MethodStatistics existing = methods.putIfAbsent(method, statistics);
+			if (existing != null) {
+				statistics = existing;
+			}
+		}
+		statistics.record(found, nanos);
+
+		if (!found && key != null) {
+			missedKeys.increment(key);
+		}
+	}
+
+	@Override
+	public void recordLoad(String source, int rows, long nanos) {
+		loads.put(source, new long[] { rows, nanos });
+	}
+
+	@Override
+	public void recordRetainedSize(String component, long bytes) {
+		retainedSizes.put(component, bytes);
+	}
+
+	/**
+	 * @param method
+	 * @return number of calls of the method
+	 */
+	public long getCalls(String method) {
+		MethodStatistics statistics = methods.get(method);
+		return statistics == null ? 0 : statistics.hits.sum() + statistics.misses.sum();
+	}
+
+	/**
+	 * @param method
+	 * @return number of calls of the method which found nothing
+	 */
+	public long getMisses(String method) {
+		MethodStatistics statistics = methods.get(method);
+		return statistics == null ? 0 : statistics.misses.sum();
+	}
+
+	/**
+	 * @param method
+	 * @param percentile
+	 *            between 0 and 100
+	 * @return upper bound of the latency in nanoseconds, or 0 if the method has not been called
+	 */
+	public long getLatencyPercentile(String method, double percentile) {
+		MethodStatistics statistics = methods.get(method);
+		return statistics == null ? 0 : statistics.percentile(percentile);
+	}
+
+	/**
+	 * @param limit
+	 * @return the most frequently missed keys with their counts, most frequent first. Counts of keys first missed
+	 *         after {@value #MAX_MISSED_KEYS} other keys may be too high by the count of the key they replaced.
+	 */
+	public Map<String, Long> getMissedKeys(int limit) {
+		return missedKeys.getTop(limit);
+	}
+
+	/**
+	 * @param source
+	 * @return load time of the source in nanoseconds, or 0 if it was not loaded
+	 */
+	public long getLoadTime(String source) {
+		long[] load = loads.get(source);
+		return load == null ? 0 : load[1];
+	}
+
+	/**
+	 * @return estimated retained size per component of the last validator, in bytes
+	 */
+	public Map<String, Long> getRetainedSizes() {
+		synchronized (retainedSizes) {
+			return new LinkedHashMap<String, Long>(retainedSizes);
+		}
+	}
+
+	@Override
+	public long getLookups() {
+		long lookups = 0;
+		for (MethodStatistics statistics : methods.values()) {
+			lookups += statistics.hits.sum() + statistics.misses.sum();
+		}
+		return lookups;
+	}
+
+	@Override
+	public long getMisses() {
+		long misses = 0;
+		for (MethodStatistics statistics : methods.values()) {
+			misses += statistics.misses.sum();
+		}
+		return misses;
+	}
+
+	@Override
+	public long getRetainedBytes() {
+		long bytes = 0;
+		for (long size : getRetainedSizes().values()) {
+			bytes += size;
+		}
+		return bytes;
+	}
+
+	@Override
+	public String getReport() {
+		StringBuilder report = new StringBuilder("Rosetta lookups:");
+		for (Map.Entry<String, MethodStatistics> entry : new TreeMap<String, MethodStatistics>(methods).entrySet()) {
+			MethodStatistics statistics = entry.getValue();
+			long misses = statistics.misses.sum();
+			long calls = statistics.hits.sum() + misses;
+			report.append(String.format("%n  %s: %d calls, %.1f%% misses, p50 %d ns, p99 %d ns", entry.getKey(),
+					calls, calls == 0 ? 0.0 : 100.0 * misses / calls, statistics.percentile(50), statistics
+							.percentile(99)));
+		}
+
+		Map<String, Long> missed = getMissedKeys(REPORTED_MISSED_KEYS);
+		if (!missed.isEmpty()) {
+			report.append(String.format("%nMost missed keys: %s", missed));
+		}
+
+		synchronized (loads) {
+			for (Map.Entry<String, long[]> entry : loads.entrySet()) {
+				report.append(String.format("%nLoaded %s: %d rows in %.1f ms", entry.getKey(), entry.getValue()[0],
+						entry.getValue()[1] / 1e6));
+			}
+		}
+
+		Map<String, Long> sizes = getRetainedSizes();
+		if (!sizes.isEmpty()) {
+			report.append(String.format("%nRetained heap: %d kB %s", getRetainedBytes() / 1024, sizes));
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Clears the lookup statistics. Load times and retained sizes are kept.
+	 */
+	@Override
+	public void reset() {
+		methods.clear();
+		missedKeys.clear();
+	}
+
+	public void logReport() {
+		logger.info(getReport());
+	}
+
+	/**
+	 * Registers the statistics with the platform MBean server as
+	 * <code>net.sllmdilab.commons:type=RosettaLookupStatistics,name=&lt;name&gt;</code>.
+	 *
+	 * @param name
+	 * @throws JMException
+	 *             if the name is invalid or already registered
+	 */
+	public void registerMBean(String name) throws JMException {
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+				new ObjectName("net.sllmdilab.commons:type=RosettaLookupStatistics,name=" + ObjectName.quote(name)));
+	}
+
+	private static final class MethodStatistics {
+
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder misses = new LongAdder();
+
+		/**
+		 * Bucket i counts latencies below 2^(i+1) nanoseconds.
+		 */
+		private final LongAdder[] latencies = new LongAdder[64];
+
+		private MethodStatistics() {
+			for (int i = 0; i < latencies.length; i++) {
+				latencies[i] = new LongAdder();
+			}
+		}
+
+		private void record(boolean found, long nanos) {
+			(found ? hits : misses).increment();
+			latencies[63 - Long.numberOfLeadingZeros(Math.max(nanos, 1))].increment();
+		}
+
+		private long percentile(double percentile) {
+			long[] counts = new long[latencies.length];
+			long total = 0;
+			for (int i = 0; i < latencies.length; i++) {
+				counts[i] = latencies[i].sum();
+				total += counts[i];
+			}
+			if (total == 0) {
+				return 0;
+			}
+
+			long rank = (long) Math.ceil(total * percentile / 100);
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank && counts[i] > 0) {
+					return i >= 62 ? Long.MAX_VALUE : 1L << (i + 1);
+				}
+			}
+			return Long.MAX_VALUE;
+		}
+	}
+}
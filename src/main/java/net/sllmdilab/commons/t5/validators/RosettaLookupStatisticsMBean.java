@@ -0,0 +1,17 @@
+package net.sllmdilab.commons.t5.validators;
+
+/**
+ * JMX view of {@link RosettaLookupStatistics}.
+ */
+public interface RosettaLookupStatisticsMBean {
+
+	long getLookups();
+
+	long getMisses();
+
+	long getRetainedBytes();
+
+	String getReport();
+
+	void reset();
+}
@@ -0,0 +1,58 @@
+package net.sllmdilab.commons.t5.validators;
+
+/**
+ * Receives measurements from {@link RosettaValidator}. Implementations are called from every thread doing lookups and
+ * have to be thread safe and cheap, see {@link RosettaLookupStatistics} for the default.
+ */
+public interface RosettaMetrics {
+
+	/**
+	 * Discards all measurements. Validators created with it do not read the clock.
+	 */
+	RosettaMetrics NONE = new RosettaMetrics() {
+		@Override
+		public void recordLookup(String method, String key, boolean found, long nanos) {
+		}
+
+		@Override
+		public void recordLoad(String source, int rows, long nanos) {
+		}
+
+		@Override
+		public void recordRetainedSize(String component, long bytes) {
+		}
+	};
+
+	/**
+	 * Called after each lookup.
+	 *
+	 * @param method
+	 *            name of the {@link RosettaValidator} method
+	 * @param key
+	 *            the code or query looked up
+	 * @param found
+	 *            true if the lookup found an entry or the check succeeded
+	 * @param nanos
+	 *            duration of the lookup
+	 */
+	void recordLookup(String method, String key, boolean found, long nanos);
+
+	/**
+	 * Called once per source while the tables are loaded, e.g. for each XML file or the snapshot, and for building the
+	 * indexes.
+	 *
+	 * @param source
+	 * @param rows
+	 *            rows read, 0 for steps which do not read rows
+	 * @param nanos
+	 */
+	void recordLoad(String source, int rows, long nanos);
+
+	/**
+	 * Called once per component of a newly created validator with its estimated retained heap size.
+	 *
+	 * @param component
+	 * @param bytes
+	 */
+	void recordRetainedSize(String component, long bytes);
+}
@@ -0,0 +1,190 @@
+package net.sllmdilab.commons.t5.validators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * REFIDs of the terms and harmonized tables as one sorted array, so that the codes sharing a prefix are a contiguous
+ * range found by binary search, plus the REFIDs of every <code>Group</code>.
+ *
+ * REFIDs are hierarchical, segments separated by underscore, e.g. <code>MDC_ECG_AMPL_ST_V1</code>. Patterns may
+ * contain <code>*</code>, matching any characters, and placeholders in angle brackets such as <code>&lt;lead&gt;</code>
+ * which match exactly one segment. Compiled patterns are cached, since dashboards query the same few patterns over
+ * and over.
+ */
+final class RosettaRefidIndex {
+
+	private static final char SEGMENT_SEPARATOR = '_';
+
+	/** Patterns beyond this many are compiled per call, so arbitrary queries can not grow the cache. */
+	static final int MAX_CACHED_PATTERNS = 256;
+
+	private final String[] sortedRefids;
+	private final List<String> sortedRefidList;
+	private final Map<String, List<String>> byGroup;
+	private final Set<String> groups;
+	private final ConcurrentMap<String, Pattern> compiledPatterns = new ConcurrentHashMap<String, Pattern>();
+
+	RosettaRefidIndex(RosettaTable termsTable, RosettaTable harmonizedTable) {
+		Set<String> refids = new TreeSet<String>();
+		Map<String, Set<String>> groupRefids = new HashMap<String, Set<String>>();
+
+		addTable(termsTable, refids, groupRefids);
+		addTable(harmonizedTable, refids, groupRefids);
+
+		sortedRefids = refids.toArray(new String[refids.size()]);
+		sortedRefidList = Collections.unmodifiableList(Arrays.asList(sortedRefids));
+
+		Map<String, List<String>> frozen = new HashMap<String, List<String>>(groupRefids.size() * 2);
+		for (Map.Entry<String, Set<String>> entry : groupRefids.entrySet()) {
+			frozen.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<String>(entry.getValue())));
+		}
+		byGroup = Collections.unmodifiableMap(frozen);
+		groups = Collections.unmodifiableSet(new TreeSet<String>(groupRefids.keySet()));
+	}
+
+	private static void addTable(RosettaTable table, Set<String> refids, Map<String, Set<String>> groupRefids) {
+		int refidColumn = table.getColumnIndex("REFID");
+		int groupColumn = table.getColumnIndex("Group");
+		for (int row = 0; row < table.getRowCount(); row++) {
+			String refid = table.getValue(row, refidColumn);
+			if (refid.isEmpty()) {
+				continue;
+			}
+			refids.add(refid);
+
+			String group = table.getValue(row, groupColumn);
+			if (group.isEmpty()) {
+				continue;
+			}
+			Set<String> members = groupRefids.get(group);
+			if (members == null) {
+				members = new LinkedHashSet<String>();
+				groupRefids.put(group, members);
+			}
+			members.add(refid);
+		}
+	}
+
+	/**
+	 * REFIDs starting with the prefix, in sorted order. The list is a view of the index, nothing is copied.
+	 */
+	List<String> findByPrefix(String prefix) {
+		if (prefix.isEmpty()) {
+			return sortedRefidList;
+		}
+
+		// All strings with the prefix sort before the prefix with its last character incremented
+		int last = prefix.length() - 1;
+		String end = prefix.substring(0, last) + (char) (prefix.charAt(last) + 1);
+		return sortedRefidList.subList(lowerBound(prefix), lowerBound(end));
+	}
+
+	/**
+	 * REFIDs matching the pattern, in sorted order. Only the range sharing the literal prefix of the pattern is
+	 * examined.
+	 */
+	List<String> find(String pattern) {
+		int wildcard = firstWildcard(pattern);
+		if (wildcard == pattern.length()) {
+			return Arrays.binarySearch(sortedRefids, pattern) >= 0 ? Collections.singletonList(pattern) : Collections
+					.<String> emptyList();
+		}
+
+		List<String> candidates = findByPrefix(pattern.substring(0, wildcard));
+		Pattern compiled = getCompiled(pattern);
+		List<String> matches = new ArrayList<String>();
+		for (String refid : candidates) {
+			if (compiled.matcher(refid).matches()) {
+				matches.add(refid);
+			}
+		}
+		return Collections.unmodifiableList(matches);
+	}
+
+	/**
+	 * REFIDs of the group, in table order.
+	 */
+	List<String> getByGroup(String group) {
+		List<String> refids = byGroup.get(group);
+		return refids == null ? Collections.<String> emptyList() : refids;
+	}
+
+	Set<String> getGroups() {
+		return groups;
+	}
+
+	private Pattern getCompiled(String pattern) {
+		Pattern compiled = compiledPatterns.get(pattern);
+		if (compiled == null) {
+			compiled = compile(pattern);
+			if (compiledPatterns.size() < MAX_CACHED_PATTERNS) {
+				compiledPatterns.putIfAbsent(pattern, compiled);
+			}
+		}
+		return compiled;
+	}
+
+	private int lowerBound(String key) {
+		int low = 0;
+		int high = sortedRefids.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (sortedRefids[middle].compareTo(key) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private static int firstWildcard(String pattern) {
+		for (int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			if (c == '*' || (c == '<' && pattern.indexOf('>', i) > i)) {
+				return i;
+			}
+		}
+		return pattern.length();
+	}
+
+	static Pattern compile(String pattern) {
+		StringBuilder regex = new StringBuilder();
+		int literalStart = 0;
+		int i = 0;
+		while (i < pattern.length()) {
+			char c = pattern.charAt(i);
+			int close = c == '<' ? pattern.indexOf('>', i) : -1;
+			if (c == '*' || close > i) {
+				if (literalStart < i) {
+					regex.append(Pattern.quote(pattern.substring(literalStart, i)));
+				}
+				if (c == '*') {
+					regex.append(".*");
+					i++;
+				} else {
+					regex.append("[^").append(SEGMENT_SEPARATOR).append("]+");
+					i = close + 1;
+				}
+				literalStart = i;
+			} else {
+				i++;
+			}
+		}
+		if (literalStart < pattern.length()) {
+			regex.append(Pattern.quote(pattern.substring(literalStart)));
+		}
+		return Pattern.compile(regex.toString());
+	}
+}
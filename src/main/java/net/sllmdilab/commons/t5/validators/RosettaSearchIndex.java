@@ -0,0 +1,276 @@
+package net.sllmdilab.commons.t5.validators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Inverted n-gram index over the free text columns of the terms and harmonized tables, for ranked search as the user
+ * types.
+ *
+ * Text is lower cased and split into words. Every word contributes its trigrams, padded with a leading space so that
+ * word starts are distinct, and the two character gram of its first letter so that single letter queries work. A term
+ * scores the inverse document frequency of every query gram it contains, weighted by the column the gram occurs in.
+ * Terms containing less than two thirds of the query grams are not returned, which tolerates a typo without returning
+ * noise.
+ */
+final class RosettaSearchIndex {
+
+	/**
+	 * Searched columns and their weights, highest first.
+	 */
+	private static final String[] COLUMNS = { "Acronym", "Common_term", "Systematic_Name", "Term_description" };
+	private static final float[] COLUMN_WEIGHTS = { 3f, 2f, 1.5f, 1f };
+
+	private static final float PREFIX_BONUS = 4f;
+	private static final float EXACT_BONUS = 8f;
+
+	private final String[] refids;
+	private final String[][] texts;
+	private final Map<String, Postings> postings;
+
+	RosettaSearchIndex(RosettaTable termsTable, RosettaTable harmonizedTable) {
+		Map<String, List<Set<String>>> columnValues = new LinkedHashMap<String, List<Set<String>>>();
+		addTable(harmonizedTable, columnValues);
+		addTable(termsTable, columnValues);
+
+		refids = new String[columnValues.size()];
+		texts = new String[columnValues.size()][];
+
+		Map<String, PostingsBuilder> builders = new HashMap<String, PostingsBuilder>();
+		int document = 0;
+		for (Map.Entry<String, List<Set<String>>> entry : columnValues.entrySet()) {
+			refids[document] = entry.getKey();
+			texts[document] = new String[COLUMNS.length];
+
+			Map<String, Integer> documentGrams = new HashMap<String, Integer>();
+			for (int column = 0; column < COLUMNS.length; column++) {
+				StringBuilder text = new StringBuilder();
+				for (String value : entry.getValue().get(column)) {
+					String normalized = normalize(value);
+					if (!normalized.isEmpty()) {
+						text.append(text.length() == 0 ? "" : " ").append(normalized);
+					}
+				}
+				texts[document][column] = text.toString();
+
+				for (String gram : grams(texts[document][column], true)) {
+					Integer mask = documentGrams.get(gram);
+					documentGrams.put(gram, (mask == null ? 0 : mask) | (1 << column));
+				}
+			}
+
+			for (Map.Entry<String, Integer> gram : documentGrams.entrySet()) {
+				PostingsBuilder builder = builders.get(gram.getKey());
+				if (builder == null) {
+					builder = new PostingsBuilder();
+					builders.put(gram.getKey(), builder);
+				}
+				builder.add(document, gram.getValue());
+			}
+			document++;
+		}
+
+		postings = new HashMap<String, Postings>(builders.size() * 2);
+		for (Map.Entry<String, PostingsBuilder> entry : builders.entrySet()) {
+			postings.put(entry.getKey(), entry.getValue().build(refids.length));
+		}
+	}
+
+	private static void addTable(RosettaTable table, Map<String, List<Set<String>>> columnValues) {
+		int refidColumn = table.getColumnIndex("REFID");
+		int[] columns = new int[COLUMNS.length];
+		for (int column = 0; column < COLUMNS.length; column++) {
+			columns[column] = table.getColumnIndex(COLUMNS[column]);
+		}
+
+		for (int row = 0; row < table.getRowCount(); row++) {
+			String refid = table.getValue(row, refidColumn);
+			if (refid.isEmpty()) {
+				continue;
+			}
+
+			List<Set<String>> values = columnValues.get(refid);
+			if (values == null) {
+				values = new ArrayList<Set<String>>(COLUMNS.length);
+				for (int column = 0; column < COLUMNS.length; column++) {
+					values.add(new LinkedHashSet<String>(1));
+				}
+				columnValues.put(refid, values);
+			}
+			for (int column = 0; column < COLUMNS.length; column++) {
+				String value = table.getValue(row, columns[column]).trim();
+				if (!value.isEmpty()) {
+					values.get(column).add(value);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Lower case letters and digits, words separated by single spaces.
+	 */
+	static String normalize(String text) {
+		StringBuilder normalized = new StringBuilder(text.length());
+		boolean separator = false;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (Character.isLetterOrDigit(c)) {
+				if (separator && normalized.length() > 0) {
+					normalized.append(' ');
+				}
+				normalized.append(Character.toLowerCase(c));
+				separator = false;
+			} else {
+				separator = true;
+			}
+		}
+		return normalized.toString();
+	}
+
+	/**
+	 * Grams of normalized text. Document grams include the trailing space of the last word, query grams do not since
+	 * the last word may still be incomplete.
+	 */
+	static Set<String> grams(String normalized, boolean document) {
+		Set<String> grams = new LinkedHashSet<String>();
+		if (normalized.isEmpty()) {
+			return grams;
+		}
+
+		String padded = " " + normalized + (document ? " " : "");
+		for (int i = 0; i < padded.length() - 1; i++) {
+			if (padded.charAt(i) == ' ') {
+				grams.add(padded.substring(i, i + 2));
+			}
+			if (i + 3 <= padded.length()) {
+				String gram = padded.substring(i, i + 3);
+				if (gram.charAt(1) != ' ') {
+					grams.add(gram);
+				}
+			}
+		}
+		return grams;
+	}
+
+	/**
+	 * REFIDs best matching the query, best first.
+	 */
+	List<String> search(String query, int limit) {
+		String normalizedQuery = normalize(query);
+		Set<String> queryGrams = grams(normalizedQuery, false);
+		if (queryGrams.isEmpty() || limit <= 0) {
+			return Collections.emptyList();
+		}
+
+		float[] scores = new float[refids.length];
+		int[] hits = new int[refids.length];
+		for (String gram : queryGrams) {
+			Postings gramPostings = postings.get(gram);
+			if (gramPostings == null) {
+				continue;
+			}
+			for (int i = 0; i < gramPostings.documents.length; i++) {
+				int document = gramPostings.documents[i];
+				int bestColumn = Integer.numberOfTrailingZeros(gramPostings.masks[i]);
+				scores[document] += gramPostings.idf * COLUMN_WEIGHTS[bestColumn];
+				hits[document]++;
+			}
+		}
+
+		PriorityQueue<Integer> top = new PriorityQueue<Integer>(limit + 1, new ScoreComparator(scores, refids));
+		for (int document = 0; document < refids.length; document++) {
+			if (hits[document] == 0 || hits[document] * 3 < queryGrams.size() * 2) {
+				continue;
+			}
+			scores[document] += bonus(texts[document], normalizedQuery);
+
+			top.add(document);
+			if (top.size() > limit) {
+				top.poll();
+			}
+		}
+
+		String[] result = new String[top.size()];
+		for (int i = result.length - 1; i >= 0; i--) {
+			result[i] = refids[top.poll()];
+		}
+		return Collections.unmodifiableList(Arrays.asList(result));
+	}
+
+	private static float bonus(String[] documentTexts, String normalizedQuery) {
+		float bonus = 0;
+		for (int column = 0; column < COLUMNS.length; column++) {
+			String text = documentTexts[column];
+			if (text.equals(normalizedQuery)) {
+				bonus = Math.max(bonus, EXACT_BONUS * COLUMN_WEIGHTS[column]);
+			} else if (text.startsWith(normalizedQuery)) {
+				bonus = Math.max(bonus, PREFIX_BONUS * COLUMN_WEIGHTS[column]);
+			}
+		}
+		return bonus;
+	}
+
+	/**
+	 * Orders worst first so that the head of the queue is the one to drop. Equal scores are ordered by REFID.
+	 */
+	private static final class ScoreComparator implements Comparator<Integer> {
+
+		private final float[] scores;
+		private final String[] refids;
+
+		private ScoreComparator(float[] scores, String[] refids) {
+			this.scores = scores;
+			this.refids = refids;
+		}
+
+		@Override
+		public int compare(Integer first, Integer second) {
+			int byScore = Float.compare(scores[first], scores[second]);
+			return byScore != 0 ? byScore : refids[second].compareTo(refids[first]);
+		}
+	}
+
+	private static final class Postings {
+
+		private final int[] documents;
+		private final int[] masks;
+		private final float idf;
+
+		private Postings(int[] documents, int[] masks, float idf) {
+			this.documents = documents;
+			this.masks = masks;
+			this.idf = idf;
+		}
+	}
+
+	private static final class PostingsBuilder {
+
+		private int[] documents = new int[4];
+		private int[] masks = new int[4];
+		private int size;
+
+		private void add(int document, int mask) {
+			if (size == documents.length) {
+				documents = Arrays.copyOf(documents, size * 2);
+				masks = Arrays.copyOf(masks, size * 2);
+			}
+			documents[size] = document;
+			masks[size] = mask;
+			size++;
+		}
+
+		private Postings build(int documentCount) {
+			return new Postings(Arrays.copyOf(documents, size), Arrays.copyOf(masks, size), (float) Math.log(1.0
+					+ (double) documentCount / size));
+		}
+	}
+}
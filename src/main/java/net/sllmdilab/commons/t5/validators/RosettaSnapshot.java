@@ -0,0 +1,213 @@
+package net.sllmdilab.commons.t5.validators;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import net.sllmdilab.commons.exceptions.RosettaInitializationException;
+
+/**
+ * Compact binary form of the Rosetta tables which can be memory-mapped instead of parsing the XML files. Snapshots are
+ * produced at build time by {@link RosettaSnapshotCompiler}.
+ *
+ * Layout, all integers big endian:
+ *
+ * <pre>
+ * header:  magic, version, CRC32 of the harmonized, terms and units XML (3 longs), table count
+ * pool:    string count, string count + 1 byte offsets, UTF-8 bytes padded to 4
+ * tables:  name, column count, column names, row count, nested flag,
+ *          row count * column count cells, row count parent rows if nested
+ * </pre>
+ *
+ * Names and cells are indexes into the string pool.
+ */
+public final class RosettaSnapshot {
+
+	public static final String DEFAULT_RESOURCE = "/rosetta.snapshot";
+
+	static final int MAGIC = 0x5254534E;
+	static final int VERSION = 1;
+
+	private RosettaSnapshot() {
+	}
+
+	static void write(RosettaTables tables, OutputStream out) throws IOException {
+		Collection<RosettaTable> tableList = tables.getTables();
+
+		// Rebuild the pool so that table and column names are included, existing indexes are kept
+		RosettaStringPool.Builder poolBuilder = new RosettaStringPool.Builder();
+		if (!tableList.isEmpty()) {
+			RosettaStringPool source = tableList.iterator().next().getPool();
+			for (int i = 1; i < source.size(); i++) {
+				poolBuilder.add(source.get(i));
+			}
+		}
+		for (RosettaTable table : tableList) {
+			poolBuilder.add(table.getName());
+			for (String column : table.getColumns()) {
+				poolBuilder.add(column);
+			}
+		}
+		RosettaStringPool pool = poolBuilder.build();
+
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		for (long checksum : tables.getSourceChecksums()) {
+			data.writeLong(checksum);
+		}
+		data.writeInt(tableList.size());
+
+		writePool(pool, data);
+
+		for (RosettaTable table : tableList) {
+			String[] columns = table.getColumns();
+			data.writeInt(poolBuilder.add(table.getName()));
+			data.writeInt(columns.length);
+			for (String column : columns) {
+				data.writeInt(poolBuilder.add(column));
+			}
+
+			int rowCount = table.getRowCount();
+			data.writeInt(rowCount);
+			data.writeInt(table.hasParents() ? 1 : 0);
+			for (int row = 0; row < rowCount; row++) {
+				for (int column = 0; column < columns.length; column++) {
+					data.writeInt(table.getCell(row, column));
+				}
+			}
+			if (table.hasParents()) {
+				for (int row = 0; row < rowCount; row++) {
+					data.writeInt(table.getParentRow(row));
+				}
+			}
+		}
+		data.flush();
+	}
+
+	private static void writePool(RosettaStringPool pool, DataOutputStream data) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		int[] offsets = new int[pool.size() + 1];
+		for (int i = 0; i < pool.size(); i++) {
+			offsets[i] = bytes.size();
+			byte[] encoded = pool.get(i).getBytes(StandardCharsets.UTF_8);
+			bytes.write(encoded, 0, encoded.length);
+		}
+		offsets[pool.size()] = bytes.size();
+
+		data.writeInt(pool.size());
+		for (int offset : offsets) {
+			data.writeInt(offset);
+		}
+		bytes.writeTo(data);
+		for (int i = bytes.size(); i % 4 != 0; i++) {
+			data.writeByte(0);
+		}
+	}
+
+	/**
+	 * Reads the tables of a snapshot. Cells and strings are not copied, they are read from the buffer on demand.
+	 */
+	static RosettaTables read(ByteBuffer buffer) {
+		try {
+			return readTables(buffer.duplicate());
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+			throw new RosettaInitializationException("Truncated Rosetta snapshot.", e);
+		}
+	}
+
+	private static RosettaTables readTables(ByteBuffer data) {
+		if (data.remaining() < 8 || data.getInt() != MAGIC) {
+			throw new RosettaInitializationException("Not a Rosetta snapshot.");
+		}
+		int version = data.getInt();
+		if (version != VERSION) {
+			throw new RosettaInitializationException("Unsupported Rosetta snapshot version " + version + ".");
+		}
+
+		long[] checksums = new long[] { data.getLong(), data.getLong(), data.getLong() };
+		int tableCount = data.getInt();
+
+		int poolSize = data.getInt();
+		RosettaStringPool pool = new RosettaStringPool(data.slice(), poolSize);
+		int poolBytes = data.getInt(data.position() + poolSize * 4);
+		skip(data, (poolSize + 1) * 4 + ((poolBytes + 3) & ~3));
+
+		List<RosettaTable> tables = new ArrayList<RosettaTable>(tableCount);
+		for (int i = 0; i < tableCount; i++) {
+			String name = pool.get(data.getInt());
+			String[] columns = new String[data.getInt()];
+			for (int column = 0; column < columns.length; column++) {
+				columns[column] = pool.get(data.getInt());
+			}
+			int rowCount = data.getInt();
+			boolean nested = data.getInt() != 0;
+
+			IntBuffer cells = sliceInts(data, rowCount * columns.length);
+			IntBuffer parents = nested ? sliceInts(data, rowCount) : null;
+
+			tables.add(new RosettaTable(name, columns, cells, parents, pool));
+		}
+
+		return new RosettaTables(tables, checksums);
+	}
+
+	/**
+	 * Memory-maps a snapshot file.
+	 */
+	static RosettaTables map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Memory-maps the snapshot if it is a plain file, otherwise (e.g. inside a jar) it is read into memory.
+	 */
+	static RosettaTables load(URL url) throws IOException {
+		if ("file".equals(url.getProtocol())) {
+			try {
+				return map(Paths.get(url.toURI()));
+			} catch (URISyntaxException e) {
+				throw new IOException(e);
+			}
+		}
+
+		try (InputStream in = url.openStream()) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				bytes.write(buffer, 0, read);
+			}
+			return read(ByteBuffer.wrap(bytes.toByteArray()));
+		}
+	}
+
+	private static IntBuffer sliceInts(ByteBuffer data, int count) {
+		ByteBuffer slice = data.slice();
+		((Buffer) slice).limit(count * 4);
+		skip(data, count * 4);
+		return slice.asIntBuffer();
+	}
+
+	private static void skip(ByteBuffer data, int bytes) {
+		((Buffer) data).position(data.position() + bytes);
+	}
+}
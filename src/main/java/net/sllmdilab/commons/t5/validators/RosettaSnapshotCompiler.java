@@ -0,0 +1,32 @@
+package net.sllmdilab.commons.t5.validators;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Build step that compiles the Rosetta XML files on the classpath into a {@link RosettaSnapshot}.
+ * 
+ * Usage: <code>RosettaSnapshotCompiler &lt;output file&gt;</code>
+ */
+public class RosettaSnapshotCompiler {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("Usage: RosettaSnapshotCompiler <output file>");
+			System.exit(1);
+		}
+
+		RosettaTables tables = new RosettaXmlReader().read(RosettaSources.getDefault());
+
+		Path output = Paths.get(args[0]);
+		if (output.getParent() != null) {
+			Files.createDirectories(output.getParent());
+		}
+		try (OutputStream out = Files.newOutputStream(output)) {
+			RosettaSnapshot.write(tables, out);
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package net.sllmdilab.commons.t5.validators;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+import net.sllmdilab.commons.exceptions.RosettaInitializationException;
+
+/**
+ * Locations of the three Rosetta XML files.
+ */
+final class RosettaSources {
+
+	static final String DEFAULT_HARMONIZED = "/rosetta_harmonized.xml";
+	static final String DEFAULT_TERMS = "/rosetta_terms.xml";
+	static final String DEFAULT_UNITS = "/rosetta_units.xml";
+
+	private final URL harmonized;
+	private final URL terms;
+	private final URL units;
+
+	RosettaSources(URL harmonized, URL terms, URL units) {
+		this.harmonized = harmonized;
+		this.terms = terms;
+		this.units = units;
+	}
+
+	static RosettaSources fromClasspath(String harmonizedPath, String termsPath, String unitsPath) {
+		return new RosettaSources(getResource(harmonizedPath), getResource(termsPath), getResource(unitsPath));
+	}
+
+	static RosettaSources getDefault() {
+		return fromClasspath(DEFAULT_HARMONIZED, DEFAULT_TERMS, DEFAULT_UNITS);
+	}
+
+	/**
+	 * The three files with their default names in a directory.
+	 */
+	static RosettaSources fromDirectory(Path directory) {
+		return new RosettaSources(getFile(directory, DEFAULT_HARMONIZED), getFile(directory, DEFAULT_TERMS), getFile(
+				directory, DEFAULT_UNITS));
+	}
+
+	private static URL getFile(Path directory, String name) {
+		Path file = directory.resolve(name.substring(1));
+		if (!Files.isRegularFile(file)) {
+			throw new RosettaInitializationException("Rosetta table " + file + " not found.");
+		}
+		try {
+			return file.toUri().toURL();
+		} catch (MalformedURLException e) {
+			throw new RosettaInitializationException(e);
+		}
+	}
+
+	/**
+	 * True if the file name is the name of one of the three files.
+	 */
+	static boolean isSourceName(String fileName) {
+		return DEFAULT_HARMONIZED.substring(1).equals(fileName) || DEFAULT_TERMS.substring(1).equals(fileName)
+				|| DEFAULT_UNITS.substring(1).equals(fileName);
+	}
+
+	/**
+	 * The last path segment of a source or snapshot URL, e.g. <code>rosetta_terms.xml</code>.
+	 */
+	static String getFileName(URL url) {
+		String path = url.getPath();
+		return path.substring(path.lastIndexOf('/') + 1);
+	}
+
+	private static URL getResource(String path) {
+		URL url = RosettaSources.class.getResource(path);
+		if (url == null) {
+			throw new RosettaInitializationException("Rosetta table " + path + " not found on classpath.");
+		}
+		return url;
+	}
+
+	URL getHarmonized() {
+		return harmonized;
+	}
+
+	URL getTerms() {
+		return terms;
+	}
+
+	URL getUnits() {
+		return units;
+	}
+
+	/**
+	 * CRC32 of each source in the order harmonized, terms, units. Used to tell whether a snapshot is stale.
+	 */
+	long[] checksums() throws IOException {
+		return new long[] { checksum(harmonized), checksum(terms), checksum(units) };
+	}
+
+	private static long checksum(URL url) throws IOException {
+		URLConnection connection = url.openConnection();
+
+		// Jar entries already carry the CRC32 of their content, no need to inflate them
+		if (connection instanceof JarURLConnection) {
+			long crc = ((JarURLConnection) connection).getJarEntry().getCrc();
+			if (crc != -1) {
+				return crc;
+			}
+		}
+
+		CRC32 crc = new CRC32();
+		try (InputStream in = connection.getInputStream()) {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				crc.update(buffer, 0, read);
+			}
+		}
+		return crc.getValue();
+	}
+}
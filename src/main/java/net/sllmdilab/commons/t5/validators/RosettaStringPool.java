@@ -0,0 +1,102 @@
+package net.sllmdilab.commons.t5.validators;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pool of the distinct strings of the Rosetta tables. Table cells refer to strings by index, index 0 is always the
+ * empty string.
+ *
+ * A pool read from a snapshot decodes its strings lazily from the backing buffer, so only the strings that are actually
+ * looked up are ever materialized.
+ */
+final class RosettaStringPool {
+
+	static final int EMPTY = 0;
+
+	private final String[] strings;
+	private final ByteBuffer data;
+	private final int offsetsPosition;
+	private final int bytesPosition;
+
+	private RosettaStringPool(String[] strings) {
+		this.strings = strings;
+		this.data = null;
+		this.offsetsPosition = 0;
+		this.bytesPosition = 0;
+	}
+
+	/**
+	 * @param data
+	 *            buffer holding <code>size + 1</code> offsets followed by the UTF-8 bytes of all strings
+	 * @param size
+	 *            number of strings in the pool
+	 */
+	RosettaStringPool(ByteBuffer data, int size) {
+		this.strings = new String[size];
+		this.data = data;
+		this.offsetsPosition = data.position();
+		this.bytesPosition = offsetsPosition + (size + 1) * 4;
+	}
+
+	int size() {
+		return strings.length;
+	}
+
+	String get(int index) {
+		String result = strings[index];
+		if (result == null) {
+			// Racing threads decode equal strings, which is harmless since strings are immutable
+			result = decode(index);
+			strings[index] = result;
+		}
+		return result;
+	}
+
+	private String decode(int index) {
+		int start = data.getInt(offsetsPosition + index * 4);
+		int end = data.getInt(offsetsPosition + (index + 1) * 4);
+
+		byte[] bytes = new byte[end - start];
+		ByteBuffer source = data.duplicate();
+		((Buffer) source).position(bytesPosition + start);
+		source.get(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Collects and deduplicates strings while tables are being built.
+	 */
+	static final class Builder {
+		private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+		private final List<String> strings = new ArrayList<String>();
+
+		Builder() {
+			add("");
+		}
+
+		int add(String value) {
+			if (value == null) {
+				return EMPTY;
+			}
+
+			Integer index = indexes.get(value);
+			if (index == null) {
+				index = strings.size();
+				strings.add(value);
+				indexes.put(value, index);
+			}
+			return index;
+		}
+
+		RosettaStringPool build() {
+			return new RosettaStringPool(strings.toArray(new String[strings.size()]));
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package net.sllmdilab.commons.t5.validators;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Synonym relations of the harmonized table, built once from the <code>Synonym</code> column.
+ *
+ * A term names at most one synonym (forward), but several terms may name the same synonym (reverse). Following the
+ * relations both ways groups codes into equivalence classes.
+ */
+final class RosettaSynonymIndex {
+
+	private final Map<String, String> forward;
+	private final Map<String, List<String>> reverse;
+	private final Map<String, Set<String>> equivalenceClasses;
+
+	RosettaSynonymIndex(RosettaTable harmonizedTable) {
+		int refidColumn = harmonizedTable.getColumnIndex("REFID");
+		int synonymColumn = harmonizedTable.getColumnIndex("Synonym");
+
+		Map<String, String> forwardMap = new HashMap<String, String>();
+		Map<String, List<String>> reverseMap = new HashMap<String, List<String>>();
+		Map<String, String> parents = new HashMap<String, String>();
+
+		for (int row = 0; row < harmonizedTable.getRowCount(); row++) {
+			String refid = harmonizedTable.getValue(row, refidColumn);
+			String synonym = harmonizedTable.getValue(row, synonymColumn);
+
+			find(parents, refid);
+			if (synonym.isEmpty()) {
+				continue;
+			}
+
+			forwardMap.put(refid, synonym);
+
+			List<String> namedBy = reverseMap.get(synonym);
+			if (namedBy == null) {
+				namedBy = new ArrayList<String>(1);
+				reverseMap.put(synonym, namedBy);
+			}
+			namedBy.add(refid);
+
+			union(parents, refid, synonym);
+		}
+
+		for (Map.Entry<String, List<String>> entry : reverseMap.entrySet()) {
+			entry.setValue(Collections.unmodifiableList(entry.getValue()));
+		}
+
+		Map<String, Set<String>> classesByRoot = new HashMap<String, Set<String>>();
+		for (String code : parents.keySet()) {
+			String root = find(parents, code);
+			Set<String> members = classesByRoot.get(root);
+			if (members == null) {
+				members = new LinkedHashSet<String>();
+				classesByRoot.put(root, members);
+			}
+			members.add(code);
+		}
+
+		Map<String, Set<String>> classes = new HashMap<String, Set<String>>();
+		for (Set<String> members : classesByRoot.values()) {
+			Set<String> unmodifiableMembers = Collections.unmodifiableSet(members);
+			for (String code : members) {
+				classes.put(code, unmodifiableMembers);
+			}
+		}
+
+		this.forward = Collections.unmodifiableMap(forwardMap);
+		this.reverse = Collections.unmodifiableMap(reverseMap);
+		this.equivalenceClasses = Collections.unmodifiableMap(classes);
+	}
+
+	private static String find(Map<String, String> parents, String code) {
+		String parent = parents.get(code);
+		if (parent == null) {
+			parents.put(code, code);
+			return code;
+		}
+		if (parent.equals(code)) {
+			return code;
+		}
+
+		String root = find(parents, parent);
+		parents.put(code, root);
+		return root;
+	}
+
+	private static void union(Map<String, String> parents, String first, String second) {
+		String firstRoot = find(parents, first);
+		String secondRoot = find(parents, second);
+		if (!firstRoot.equals(secondRoot)) {
+			parents.put(secondRoot, firstRoot);
+		}
+	}
+
+	/**
+	 * The synonym named by the term, or the empty string.
+	 */
+	String getForward(String refid) {
+		String synonym = forward.get(refid);
+		return synonym == null ? "" : synonym;
+	}
+
+	/**
+	 * Terms naming the code as their synonym, in table order.
+	 */
+	List<String> getReverse(String code) {
+		List<String> namedBy = reverse.get(code);
+		return namedBy == null ? Collections.<String> emptyList() : namedBy;
+	}
+
+	/**
+	 * Synonym of the term in either direction: its own synonym if it has one, otherwise the first term naming it.
+	 */
+	String getSynonym(String refid) {
+		String synonym = getForward(refid);
+		if (synonym.isEmpty()) {
+			List<String> namedBy = getReverse(refid);
+			if (!namedBy.isEmpty()) {
+				synonym = namedBy.get(0);
+			}
+		}
+		return synonym;
+	}
+
+	/**
+	 * All codes transitively linked to the code by synonym relations, including the code itself. Empty if the code is
+	 * not in the harmonized table.
+	 */
+	Set<String> getEquivalenceClass(String code) {
+		Set<String> members = equivalenceClasses.get(code);
+		return members == null ? Collections.<String> emptySet() : members;
+	}
+}
@@ -0,0 +1,152 @@
+package net.sllmdilab.commons.t5.validators;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable copy of one Rosetta table. Every <code>term</code> element is a row and every leaf child of it a column.
+ * Repeated groups inside a term, such as <code>UnitA</code>, are kept in a separate table whose rows point back to the
+ * owning row.
+ *
+ * Cells are fixed-width indexes into a shared {@link RosettaStringPool}, which lets the table be backed directly by a
+ * memory-mapped snapshot.
+ */
+final class RosettaTable {
+
+	private final String name;
+	private final String[] columns;
+	private final IntBuffer cells;
+	private final IntBuffer parents;
+	private final RosettaStringPool pool;
+
+	RosettaTable(String name, String[] columns, IntBuffer cells, IntBuffer parents, RosettaStringPool pool) {
+		this.name = name;
+		this.columns = columns;
+		this.cells = cells;
+		this.parents = parents;
+		this.pool = pool;
+	}
+
+	String getName() {
+		return name;
+	}
+
+	String[] getColumns() {
+		return columns.clone();
+	}
+
+	int getRowCount() {
+		return columns.length == 0 ? 0 : cells.limit() / columns.length;
+	}
+
+	boolean hasParents() {
+		return parents != null;
+	}
+
+	/**
+	 * Index of the column, or -1 if no row of the table has it.
+	 */
+	int getColumnIndex(String column) {
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i].equals(column)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Cell value, or the empty string if the element was empty or missing.
+	 */
+	String getValue(int row, int column) {
+		if (column < 0) {
+			return "";
+		}
+		return pool.get(getCell(row, column));
+	}
+
+	String getValue(int row, String column) {
+		return getValue(row, getColumnIndex(column));
+	}
+
+	int getCell(int row, int column) {
+		return cells.get(row * columns.length + column);
+	}
+
+	/**
+	 * Row in the parent table that owns the row, or -1 for top level tables.
+	 */
+	int getParentRow(int row) {
+		return parents == null ? -1 : parents.get(row);
+	}
+
+	RosettaStringPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Collects rows while an XML table is read. Columns are added in the order they are first seen.
+	 */
+	static final class Builder {
+		private final String name;
+		private final RosettaStringPool.Builder pool;
+		private final Map<String, Integer> columns = new LinkedHashMap<String, Integer>();
+		private final List<int[]> rows = new ArrayList<int[]>();
+		private final List<Integer> parents = new ArrayList<Integer>();
+		private final boolean nested;
+
+		Builder(String name, RosettaStringPool.Builder pool, boolean nested) {
+			this.name = name;
+			this.pool = pool;
+			this.nested = nested;
+		}
+
+		/**
+		 * @param values
+		 *            column values of the row, repeated elements already joined
+		 * @param parentRow
+		 *            owning row for nested tables, ignored otherwise
+		 * @return index of the new row
+		 */
+		int addRow(Map<String, String> values, int parentRow) {
+			for (String column : values.keySet()) {
+				if (!columns.containsKey(column)) {
+					columns.put(column, columns.size());
+				}
+			}
+
+			int[] row = new int[columns.size()];
+			for (Map.Entry<String, String> value : values.entrySet()) {
+				row[columns.get(value.getKey())] = pool.add(value.getValue());
+			}
+
+			rows.add(row);
+			parents.add(parentRow);
+			return rows.size() - 1;
+		}
+
+		RosettaTable build(RosettaStringPool builtPool) {
+			int columnCount = columns.size();
+			int[] cells = new int[rows.size() * columnCount];
+			for (int i = 0; i < rows.size(); i++) {
+				int[] row = rows.get(i);
+				System.arraycopy(row, 0, cells, i * columnCount, row.length);
+			}
+
+			IntBuffer parentBuffer = null;
+			if (nested) {
+				int[] parentRows = new int[parents.size()];
+				for (int i = 0; i < parentRows.length; i++) {
+					parentRows[i] = parents.get(i);
+				}
+				parentBuffer = IntBuffer.wrap(parentRows);
+			}
+
+			return new RosettaTable(name, columns.keySet().toArray(new String[columnCount]), IntBuffer.wrap(cells),
+					parentBuffer, builtPool);
+		}
+	}
+}
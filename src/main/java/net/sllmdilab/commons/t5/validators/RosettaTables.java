@@ -0,0 +1,55 @@
+package net.sllmdilab.commons.t5.validators;
+
+import java.nio.IntBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The extracted content of the three Rosetta XML files (terms, harmonized and units), independent of whether it was
+ * parsed from XML or read from a binary snapshot.
+ */
+final class RosettaTables {
+
+	static final String TERMS = "terms";
+	static final String TERM_UNITS = "terms/UnitA";
+	static final String TERM_ENUMS = "terms/EnumA";
+	static final String HARMONIZED = "harmonized";
+	static final String UNITS = "units";
+
+	private final Map<String, RosettaTable> tables;
+	private final long[] sourceChecksums;
+
+	RosettaTables(Collection<RosettaTable> tables, long[] sourceChecksums) {
+		Map<String, RosettaTable> tableMap = new LinkedHashMap<String, RosettaTable>();
+		for (RosettaTable table : tables) {
+			tableMap.put(table.getName(), table);
+		}
+		this.tables = Collections.unmodifiableMap(tableMap);
+		this.sourceChecksums = sourceChecksums.clone();
+	}
+
+	/**
+	 * Table with the given name, or an empty table if the sources did not contain it.
+	 */
+	RosettaTable getTable(String name) {
+		RosettaTable table = tables.get(name);
+		if (table == null) {
+			table = new RosettaTable(name, new String[0], IntBuffer.allocate(0), null,
+					new RosettaStringPool.Builder().build());
+		}
+		return table;
+	}
+
+	Collection<RosettaTable> getTables() {
+		return tables.values();
+	}
+
+	/**
+	 * Checksums of the XML files the tables were extracted from, see {@link RosettaSources#checksums()}.
+	 */
+	long[] getSourceChecksums() {
+		return sourceChecksums.clone();
+	}
+}
@@ -0,0 +1,50 @@
+package net.sllmdilab.commons.t5.validators;
+
+/**
+ * Immutable entry of the Rosetta terms table. The table has one row per vendor and term, the entry represents the
+ * term.
+ */
+public final class RosettaTerm {
+	private final String refid;
+	private final String group;
+	private final int partition;
+	private final int code;
+	private final int contextFreeCode;
+
+	RosettaTerm(String refid, String group, int partition, int code, int contextFreeCode) {
+		this.refid = refid;
+		this.group = group;
+		this.partition = partition;
+		this.code = code;
+		this.contextFreeCode = contextFreeCode;
+	}
+
+	public String getRefid() {
+		return refid;
+	}
+
+	public String getGroup() {
+		return group;
+	}
+
+	/**
+	 * The <code>PART</code> of the term, -1 if unknown.
+	 */
+	public int getPartition() {
+		return partition;
+	}
+
+	/**
+	 * The <code>CODE10</code> of the term within its partition, -1 if unknown.
+	 */
+	public int getCode() {
+		return code;
+	}
+
+	/**
+	 * The <code>CF_CODE10</code> of the term, -1 if unknown.
+	 */
+	public int getContextFreeCode() {
+		return contextFreeCode;
+	}
+}
@@ -0,0 +1,91 @@
+package net.sllmdilab.commons.t5.validators;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import net.sllmdilab.commons.exceptions.RosettaInitializationException;
+
+/**
+ * Ranked free text search over the <code>Acronym</code>, <code>Common_term</code>, <code>Systematic_Name</code> and
+ * <code>Term_description</code> of the terms and Harmonized tables.
+ *
+ * The search index takes about 100 ms to build and half a megabyte of heap, so it is kept apart from
+ * {@link RosettaValidator} and only built by the applications that search. Instances are immutable and can be shared
+ * by any number of threads.
+ */
+public class RosettaTermSearch {
+
+	private final RosettaSearchIndex searchIndex;
+	private final RosettaMetrics metrics;
+
+	/**
+	 * Indexes the tables on the classpath, see {@link RosettaValidator#RosettaValidator()}.
+	 */
+	public RosettaTermSearch() throws RosettaInitializationException {
+		this(RosettaMetrics.NONE);
+	}
+
+	/**
+	 * Indexes the tables on the classpath and reports to the metrics.
+	 *
+	 * @param metrics
+	 * @throws RosettaInitializationException
+	 */
+	public RosettaTermSearch(RosettaMetrics metrics) throws RosettaInitializationException {
+		this(RosettaLoader.loadDefault(metrics), metrics);
+	}
+
+	/**
+	 * Indexes the tables in a directory, see {@link RosettaValidator#RosettaValidator(Path)}.
+	 *
+	 * @param directory
+	 * @throws RosettaInitializationException
+	 *             if a file is missing or can not be parsed
+	 */
+	public RosettaTermSearch(Path directory) throws RosettaInitializationException {
+		this(directory, RosettaMetrics.NONE);
+	}
+
+	/**
+	 * Indexes the tables in a directory and reports to the metrics.
+	 *
+	 * @param directory
+	 * @param metrics
+	 * @throws RosettaInitializationException
+	 */
+	public RosettaTermSearch(Path directory, RosettaMetrics metrics) throws RosettaInitializationException {
+		this(RosettaLoader.load(RosettaSources.fromDirectory(directory), null, metrics), metrics);
+	}
+
+	RosettaTermSearch(RosettaTables tables, RosettaMetrics metrics) {
+		long start = System.nanoTime();
+		this.metrics = metrics;
+
+		RosettaTable termsTable = tables.getTable(RosettaTables.TERMS);
+		RosettaTable harmonizedTable = tables.getTable(RosettaTables.HARMONIZED);
+		searchIndex = new RosettaSearchIndex(termsTable, harmonizedTable);
+
+		if (metrics != RosettaMetrics.NONE) {
+			metrics.recordLoad("searchIndex", termsTable.getRowCount() + harmonizedTable.getRowCount(), System
+					.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Partial and slightly misspelled words match, so the method can be called on every keystroke.
+	 *
+	 * @param query
+	 *            free text, e.g. <code>end tidal co2</code>
+	 * @param limit
+	 *            maximum number of results
+	 * @return REFIDs of the best matches, best first
+	 */
+	public List<String> search(String query, int limit) {
+		long start = metrics == RosettaMetrics.NONE ? 0 : System.nanoTime();
+		List<String> result = searchIndex.search(query, limit);
+		if (metrics != RosettaMetrics.NONE) {
+			metrics.recordLookup("search", query, !result.isEmpty(), System.nanoTime() - start);
+		}
+		return result;
+	}
+}
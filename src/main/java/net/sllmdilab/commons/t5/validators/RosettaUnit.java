@@ -0,0 +1,76 @@
+package net.sllmdilab.commons.t5.validators;
+
+/**
+ * Immutable entry of the Rosetta units table.
+ */
+public final class RosettaUnit {
+	private final String mdcUnit;
+	private final String ucumUnit;
+	private final int code;
+	private final int contextFreeCode;
+	private final String dimension;
+	private final String dim;
+	private final String dimc;
+
+	RosettaUnit(String mdcUnit, String ucumUnit, int code, int contextFreeCode, String dimension, String dim,
+			String dimc) {
+		this.mdcUnit = mdcUnit;
+		this.ucumUnit = ucumUnit;
+		this.code = code;
+		this.contextFreeCode = contextFreeCode;
+		this.dimension = dimension;
+		this.dim = dim;
+		this.dimc = dimc;
+	}
+
+	/**
+	 * The <code>UOM_MDC</code> code of the unit.
+	 */
+	public String getMdcUnit() {
+		return mdcUnit;
+	}
+
+	/**
+	 * The <code>UOM_UCUM</code> of the unit, empty string if the table has none. Alternative UCUM spellings are
+	 * separated by space.
+	 */
+	public String getUcumUnit() {
+		return ucumUnit;
+	}
+
+	/**
+	 * The <code>UCODE10</code> of the unit, -1 if unknown.
+	 */
+	public int getCode() {
+		return code;
+	}
+
+	/**
+	 * The <code>CF_UCODE10</code> of the unit, -1 if unknown.
+	 */
+	public int getContextFreeCode() {
+		return contextFreeCode;
+	}
+
+	/**
+	 * Free text description of the <code>Dimension</code>, empty string if the table has none.
+	 */
+	public String getDimension() {
+		return dimension;
+	}
+
+	/**
+	 * Dimension formula as the unit is composed, e.g. <code>LMT-2L-2</code> for pressure. Units with equal
+	 * <code>DIM</code> measure the same kind of quantity. Empty string if the table has none.
+	 */
+	public String getDim() {
+		return dim;
+	}
+
+	/**
+	 * Canonical, simplified dimension formula (<code>DIMC</code>), empty string if the table has none.
+	 */
+	public String getDimc() {
+		return dimc;
+	}
+}
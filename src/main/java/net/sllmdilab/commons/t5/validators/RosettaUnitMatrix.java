@@ -0,0 +1,195 @@
+package net.sllmdilab.commons.t5.validators;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Which units are allowed for which term, as one bit row per term over a dense index of all MDC units and one over all
+ * UCUM units.
+ *
+ * The allowed units of a term are the <code>UnitA</code> entries of the terms table and the <code>UOM_MDC</code> and
+ * <code>UOM_UCUM</code> columns of the harmonized table. Unit groups such as <code>_UOM_DOSE_RATE</code> are expanded
+ * to their members using the <code>_UOM_GROUPS</code> column of the units table, and every allowed MDC unit also
+ * allows its UCUM equivalents.
+ */
+final class RosettaUnitMatrix {
+
+	private final Map<String, Integer> termIndex;
+	private final Map<String, Integer> mdcUnitIndex;
+	private final Map<String, Integer> ucumUnitIndex;
+	private final String[] mdcUnits;
+	private final int mdcWords;
+	private final int ucumWords;
+	private final long[] mdcMatrix;
+	private final long[] ucumMatrix;
+
+	RosettaUnitMatrix(RosettaTables tables) {
+		RosettaTable unitsTable = tables.getTable(RosettaTables.UNITS);
+		Map<String, List<String>> ucumByMdc = new HashMap<String, List<String>>();
+		Map<String, List<String>> groupMembers = new HashMap<String, List<String>>();
+
+		int mdcColumn = unitsTable.getColumnIndex("UOM_MDC");
+		int ucumColumn = unitsTable.getColumnIndex("UOM_UCUM");
+		int groupsColumn = unitsTable.getColumnIndex("_UOM_GROUPS");
+		for (int row = 0; row < unitsTable.getRowCount(); row++) {
+			String mdcUnit = unitsTable.getValue(row, mdcColumn);
+			ucumByMdc.put(mdcUnit, split(unitsTable.getValue(row, ucumColumn)));
+			for (String group : split(unitsTable.getValue(row, groupsColumn))) {
+				List<String> members = groupMembers.get(group);
+				if (members == null) {
+					members = new ArrayList<String>();
+					groupMembers.put(group, members);
+				}
+				members.add(mdcUnit);
+			}
+		}
+
+		Map<String, Set<String>> allowedMdc = new LinkedHashMap<String, Set<String>>();
+		Map<String, Set<String>> allowedUcum = new LinkedHashMap<String, Set<String>>();
+
+		RosettaTable termsTable = tables.getTable(RosettaTables.TERMS);
+		RosettaTable termUnitsTable = tables.getTable(RosettaTables.TERM_UNITS);
+		int termRefidColumn = termsTable.getColumnIndex("REFID");
+		int termMdcColumn = termUnitsTable.getColumnIndex("UOM_MDC");
+		int termUcumColumn = termUnitsTable.getColumnIndex("UOM_UCUM");
+		for (int row = 0; row < termUnitsTable.getRowCount(); row++) {
+			String refid = termsTable.getValue(termUnitsTable.getParentRow(row), termRefidColumn);
+			allow(refid, split(termUnitsTable.getValue(row, termMdcColumn)), split(termUnitsTable.getValue(row,
+					termUcumColumn)), allowedMdc, allowedUcum, ucumByMdc, groupMembers);
+		}
+
+		RosettaTable harmonizedTable = tables.getTable(RosettaTables.HARMONIZED);
+		int harmonizedRefidColumn = harmonizedTable.getColumnIndex("REFID");
+		int harmonizedMdcColumn = harmonizedTable.getColumnIndex("UOM_MDC");
+		int harmonizedUcumColumn = harmonizedTable.getColumnIndex("UOM_UCUM");
+		for (int row = 0; row < harmonizedTable.getRowCount(); row++) {
+			allow(harmonizedTable.getValue(row, harmonizedRefidColumn), split(harmonizedTable.getValue(row,
+					harmonizedMdcColumn)), split(harmonizedTable.getValue(row, harmonizedUcumColumn)), allowedMdc,
+					allowedUcum, ucumByMdc, groupMembers);
+		}
+
+		Map<String, Integer> mdcIndex = new HashMap<String, Integer>();
+		List<String> mdcList = new ArrayList<String>();
+		for (int row = 0; row < unitsTable.getRowCount(); row++) {
+			addToIndex(unitsTable.getValue(row, mdcColumn), mdcIndex, mdcList);
+		}
+		Map<String, Integer> ucumIndex = new HashMap<String, Integer>();
+		List<String> ucumList = new ArrayList<String>();
+		for (String refid : allowedMdc.keySet()) {
+			for (String mdcUnit : allowedMdc.get(refid)) {
+				addToIndex(mdcUnit, mdcIndex, mdcList);
+			}
+			for (String ucumUnit : allowedUcum.get(refid)) {
+				addToIndex(ucumUnit, ucumIndex, ucumList);
+			}
+		}
+
+		termIndex = new HashMap<String, Integer>();
+		mdcWords = (mdcList.size() + 63) >>> 6;
+		ucumWords = (ucumList.size() + 63) >>> 6;
+		mdcMatrix = new long[allowedMdc.size() * mdcWords];
+		ucumMatrix = new long[allowedMdc.size() * ucumWords];
+
+		for (String refid : allowedMdc.keySet()) {
+			int term = termIndex.size();
+			termIndex.put(refid, term);
+
+			for (String mdcUnit : allowedMdc.get(refid)) {
+				setBit(mdcMatrix, term * mdcWords, mdcIndex.get(mdcUnit));
+			}
+			for (String ucumUnit : allowedUcum.get(refid)) {
+				setBit(ucumMatrix, term * ucumWords, ucumIndex.get(ucumUnit));
+			}
+		}
+
+		mdcUnitIndex = mdcIndex;
+		ucumUnitIndex = ucumIndex;
+		mdcUnits = mdcList.toArray(new String[mdcList.size()]);
+	}
+
+	private static void allow(String refid, List<String> mdcUnits, List<String> ucumUnits,
+			Map<String, Set<String>> allowedMdc, Map<String, Set<String>> allowedUcum,
+			Map<String, List<String>> ucumByMdc, Map<String, List<String>> groupMembers) {
+		Set<String> mdcSet = allowedMdc.get(refid);
+		if (mdcSet == null) {
+			mdcSet = new LinkedHashSet<String>();
+			allowedMdc.put(refid, mdcSet);
+			allowedUcum.put(refid, new LinkedHashSet<String>());
+		}
+		Set<String> ucumSet = allowedUcum.get(refid);
+
+		for (String mdcUnit : mdcUnits) {
+			List<String> members = groupMembers.get(mdcUnit);
+			for (String member : members != null ? members : Collections.singletonList(mdcUnit)) {
+				mdcSet.add(member);
+				List<String> ucumEquivalents = ucumByMdc.get(member);
+				if (ucumEquivalents != null) {
+					ucumSet.addAll(ucumEquivalents);
+				}
+			}
+		}
+		ucumSet.addAll(ucumUnits);
+	}
+
+	private static void addToIndex(String unit, Map<String, Integer> index, List<String> units) {
+		if (!index.containsKey(unit)) {
+			index.put(unit, units.size());
+			units.add(unit);
+		}
+	}
+
+	private static List<String> split(String value) {
+		List<String> tokens = new ArrayList<String>();
+		for (String token : value.split(" ")) {
+			if (!token.isEmpty()) {
+				tokens.add(token);
+			}
+		}
+		return tokens;
+	}
+
+	private static void setBit(long[] matrix, int rowOffset, int bit) {
+		matrix[rowOffset + (bit >>> 6)] |= 1L << bit;
+	}
+
+	private static boolean isSet(long[] matrix, int rowOffset, int bit) {
+		return (matrix[rowOffset + (bit >>> 6)] & (1L << bit)) != 0;
+	}
+
+	boolean isAllowedMdcUnit(String refid, String mdcUnit) {
+		Integer term = termIndex.get(refid);
+		Integer unit = mdcUnitIndex.get(mdcUnit);
+		return term != null && unit != null && isSet(mdcMatrix, term * mdcWords, unit);
+	}
+
+	boolean isAllowedUcumUnit(String refid, String ucumUnit) {
+		Integer term = termIndex.get(refid);
+		Integer unit = ucumUnitIndex.get(ucumUnit);
+		return term != null && unit != null && isSet(ucumMatrix, term * ucumWords, unit);
+	}
+
+	/**
+	 * Allowed MDC units of the term, in dense index order.
+	 */
+	List<String> getAllowedMdcUnits(String refid) {
+		Integer term = termIndex.get(refid);
+		if (term == null) {
+			return Collections.emptyList();
+		}
+
+		List<String> units = new ArrayList<String>();
+		int rowOffset = term * mdcWords;
+		for (int unit = 0; unit < mdcUnits.length; unit++) {
+			if (isSet(mdcMatrix, rowOffset, unit)) {
+				units.add(mdcUnits[unit]);
+			}
+		}
+		return units;
+	}
+}
@@ -0,0 +1,143 @@
+package net.sllmdilab.commons.t5.validators;
+
+import java.util.BitSet;
+
+/**
+ * Result of validating all observations of a message at once with
+ * {@link RosettaValidator#validateObservations(String[], String[])}. Observation i is the i-th pair of term and unit,
+ * or the i-th <code>Observation</code> element of a T5 document.
+ *
+ * Each check is kept as one {@link BitSet} over the observations, so a message is accepted by testing
+ * {@link #isAllValid()} and rejected rows are found with {@link #getInvalid()}.
+ */
+public final class RosettaValidationResult {
+
+	private final String[] refids;
+	private final String[] mdcUnits;
+	private final String[] ucumUnits;
+	private final String[] harmonizedUcumUnits;
+	private final BitSet inTermsTable;
+	private final BitSet inHarmonizedTable;
+	private final BitSet knownUnit;
+	private final BitSet validUnit;
+
+	RosettaValidationResult(String[] refids, String[] mdcUnits, String[] ucumUnits, String[] harmonizedUcumUnits,
+			BitSet inTermsTable, BitSet inHarmonizedTable, BitSet knownUnit, BitSet validUnit) {
+		this.refids = refids;
+		this.mdcUnits = mdcUnits;
+		this.ucumUnits = ucumUnits;
+		this.harmonizedUcumUnits = harmonizedUcumUnits;
+		this.inTermsTable = inTermsTable;
+		this.inHarmonizedTable = inHarmonizedTable;
+		this.knownUnit = knownUnit;
+		this.validUnit = validUnit;
+	}
+
+	/**
+	 * Number of observations.
+	 */
+	public int size() {
+		return refids.length;
+	}
+
+	public String getRefid(int observation) {
+		return refids[observation];
+	}
+
+	public String getMdcUnit(int observation) {
+		return mdcUnits[observation];
+	}
+
+	/**
+	 * UCUM unit of the MDC unit, from the Units table.
+	 *
+	 * @return the unit, or null if the MDC unit is not in the Units table
+	 */
+	public String getUcumUnit(int observation) {
+		return ucumUnits[observation];
+	}
+
+	/**
+	 * Space separated UCUM units the Harmonized table lists for the term.
+	 *
+	 * @return the units, or an empty string if the term is not in the Harmonized table
+	 */
+	public String getHarmonizedUcumUnits(int observation) {
+		return harmonizedUcumUnits[observation];
+	}
+
+	public boolean isInTermsTable(int observation) {
+		return inTermsTable.get(observation);
+	}
+
+	public boolean isInHarmonizedTable(int observation) {
+		return inHarmonizedTable.get(observation);
+	}
+
+	/**
+	 * True if the MDC unit is in the Units table.
+	 */
+	public boolean isKnownUnit(int observation) {
+		return knownUnit.get(observation);
+	}
+
+	/**
+	 * True if the MDC unit is allowed for the term.
+	 */
+	public boolean isValidUnit(int observation) {
+		return validUnit.get(observation);
+	}
+
+	/**
+	 * True if the term is in the terms or Harmonized table and the unit is allowed for it.
+	 */
+	public boolean isValid(int observation) {
+		return (inTermsTable.get(observation) || inHarmonizedTable.get(observation)) && validUnit.get(observation);
+	}
+
+	/**
+	 * True if every observation is valid.
+	 */
+	public boolean isAllValid() {
+		return getInvalid().isEmpty();
+	}
+
+	/**
+	 * @return bit i is set if observation i is not valid
+	 */
+	public BitSet getInvalid() {
+		BitSet invalid = (BitSet) inTermsTable.clone();
+		invalid.or(inHarmonizedTable);
+		invalid.and(validUnit);
+		invalid.flip(0, refids.length);
+		return invalid;
+	}
+
+	/**
+	 * @return bit i is set if term i is in the terms table
+	 */
+	public BitSet getInTermsTable() {
+		return (BitSet) inTermsTable.clone();
+	}
+
+	/**
+	 * @return bit i is set if term i is in the Harmonized table
+	 */
+	public BitSet getInHarmonizedTable() {
+		return (BitSet) inHarmonizedTable.clone();
+	}
+
+	/**
+	 * @return bit i is set if unit i is in the Units table
+	 */
+	public BitSet getKnownUnits() {
+		return (BitSet) knownUnit.clone();
+	}
+
+	/**
+	 * @return bit i is set if unit i is allowed for term i
+	 */
+	public BitSet getValidUnits() {
+		return (BitSet) validUnit.clone();
+	}
+}
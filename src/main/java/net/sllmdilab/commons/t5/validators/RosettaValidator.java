@@ -1,20 +1,14 @@
 package net.sllmdilab.commons.t5.validators;
 
-import java.io.IOException;
-import java.util.HashMap;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
+import java.util.Set;
 
 import net.sllmdilab.commons.exceptions.RosettaInitializationException;
 import net.sllmdilab.commons.exceptions.RosettaLookupException;
@@ -23,273 +17,778 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
 /**
- * This class checks if a term code passed in OBX-3.2 exists in Rosetta table Usage: initialize per class by calling
- * loadRosetta()
+ * This class checks if a term code passed in OBX-3.2 exists in Rosetta table. The tables are read from the
+ * precompiled {@link RosettaSnapshot} when available, see {@link RosettaLoader}.
+ *
+ * Descriptions, UCUM units and synonyms are resolved once when the validator is created. The unit matrix, the vendor
+ * index and the REFID index are only built when first used. Instances are otherwise immutable, so one instance can be
+ * shared by any number of threads and every lookup is a single map read.
+ *
+ * A validator created with {@link RosettaMetrics} reports load times, its estimated retained heap size and the
+ * outcome and latency of the single code lookups to them.
  */
 
 public class RosettaValidator {
 
-	private DocumentBuilder docBuilder;
-	private Transformer transformer;
-	private XPath xPath;
+	private static final String ELEMENT_OBSERVATION = "Observation";
+	private static final String ELEMENT_OBS_IDENTIFIER = "ObsIdentifier";
+	private static final String ELEMENT_UNIT = "Unit";
+
+	private final Map<String, RosettaTerm> rosettaTerms;
+	private final Map<String, HarmonizedTerm> harmonizedTerms;
+	private final Map<String, RosettaUnit> rosettaUnits;
+	private final RosettaSynonymIndex synonymIndex;
+	private final RosettaEnumIndex enumIndex;
+	private final Set<String> knownCodes;
 
-	private Document docRosettaHarmonized;
-	private Document docRosettaTable;
-	private Document docRosettaUnits;
+	/** Kept so that the indexes most validators never use are built on first use. */
+	private final RosettaTables tables;
+	private volatile RosettaUnitMatrix unitMatrix;
+	private volatile RosettaVendorIndex vendorIndex;
+	private volatile RosettaRefidIndex refidIndex;
 
-	private Map<String, Element> mapRosettaTerms;
-	private Map<String, Element> mapHarmonizedRosetta;
-	private Map<String, Element> mapRosettaUnits;
-	private Map<String, String> mapHarmonizedRosettaDescription;
-	private Map<String, String> mapHarmonizedRosettaUcumUnits;
-	private Map<String, String> mapMdcUcumUnit;
-	private Map<String, String> mapSynonyms;
+	private final IntObjectMap<RosettaTerm> termsByCode;
+	private final IntObjectMap<HarmonizedTerm> harmonizedTermsByCode;
+	private final IntObjectMap<RosettaUnit> unitsByCode;
 
+	private final RosettaMetrics metrics;
+
+	/**
+	 * Loads the precompiled Rosetta snapshot, or parses the XML tables if the snapshot is missing or stale.
+	 */
 	public RosettaValidator() throws RosettaInitializationException {
-		loadRosetta("/rosetta_harmonized.xml", "/rosetta_terms.xml", "/rosetta_units.xml", true);
+		this(RosettaMetrics.NONE);
 	}
 
-	private void loadRosetta(String xmlFilePathHarmonized, String xmlFilePathTable, String xmlRosettaUnits,
-			boolean forceReInit) {
+	/**
+	 * Loads the tables like {@link #RosettaValidator()} and reports to the metrics.
+	 *
+	 * @param metrics
+	 * @throws RosettaInitializationException
+	 */
+	public RosettaValidator(RosettaMetrics metrics) throws RosettaInitializationException {
+		this(RosettaLoader.loadDefault(metrics), metrics);
+	}
 
-		DocumentBuilderFactory DocFactory = DocumentBuilderFactory.newInstance();
-		try {
-			docBuilder = DocFactory.newDocumentBuilder();
+	/**
+	 * Parses <code>rosetta_harmonized.xml</code>, <code>rosetta_terms.xml</code> and <code>rosetta_units.xml</code> in
+	 * a directory instead of the tables on the classpath.
+	 *
+	 * @param directory
+	 * @throws RosettaInitializationException
+	 *             if a file is missing or can not be parsed
+	 */
+	public RosettaValidator(Path directory) throws RosettaInitializationException {
+		this(directory, RosettaMetrics.NONE);
+	}
 
-			TransformerFactory factory = TransformerFactory.newInstance();
-			transformer = factory.newTransformer();
-			transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+	/**
+	 * Parses the tables in a directory like {@link #RosettaValidator(Path)} and reports to the metrics.
+	 *
+	 * @param directory
+	 * @param metrics
+	 * @throws RosettaInitializationException
+	 */
+	public RosettaValidator(Path directory, RosettaMetrics metrics) throws RosettaInitializationException {
+		this(RosettaLoader.load(RosettaSources.fromDirectory(directory), null, metrics), metrics);
+	}
 
-			XPathFactory xpathfactory = XPathFactory.newInstance();
-			xPath = xpathfactory.newXPath();
+	RosettaValidator(RosettaTables tables) {
+		this(tables, RosettaMetrics.NONE);
+	}
 
-			mapRosettaTerms = new HashMap<String, Element>();
-			mapHarmonizedRosetta = new HashMap<String, Element>();
-			mapRosettaUnits = new HashMap<String, Element>();
-			mapHarmonizedRosettaDescription = new HashMap<String, String>();
-			mapHarmonizedRosettaUcumUnits = new HashMap<String, String>();
-			mapMdcUcumUnit = new HashMap<String, String>();
-			mapSynonyms = new HashMap<String, String>();
+	RosettaValidator(RosettaTables tables, RosettaMetrics metrics) {
+		long start = System.nanoTime();
+		this.metrics = metrics;
+
+		rosettaTerms = Collections.unmodifiableMap(loadTerms(tables.getTable(RosettaTables.TERMS)));
+		synonymIndex = new RosettaSynonymIndex(tables.getTable(RosettaTables.HARMONIZED));
+		harmonizedTerms = Collections.unmodifiableMap(loadHarmonizedTerms(tables.getTable(RosettaTables.HARMONIZED),
+				synonymIndex));
+		rosettaUnits = Collections.unmodifiableMap(loadUnits(tables.getTable(RosettaTables.UNITS)));
+		enumIndex = new RosettaEnumIndex(tables.getTable(RosettaTables.HARMONIZED));
+		this.tables = tables;
+
+		knownCodes = new HashSet<String>(rosettaTerms.keySet());
+		knownCodes.addAll(harmonizedTerms.keySet());
+		knownCodes.addAll(rosettaUnits.keySet());
+		for (RosettaUnit unit : rosettaUnits.values()) {
+			Collections.addAll(knownCodes, unit.getUcumUnit().split(" "));
+		}
+		// Empty cells, e.g. units without a UCUM spelling, do not make the empty string a code
+		knownCodes.remove("");
+
+		// Synonymous terms may share a code, the first one in table order wins
+		termsByCode = new IntObjectMap<RosettaTerm>();
+		for (RosettaTerm term : rosettaTerms.values()) {
+			if (term.getContextFreeCode() != RosettaCodes.NO_CODE) {
+				termsByCode.putIfAbsent(term.getContextFreeCode(), term);
+			}
+		}
+		harmonizedTermsByCode = new IntObjectMap<HarmonizedTerm>();
+		for (HarmonizedTerm term : harmonizedTerms.values()) {
+			if (term.getContextFreeCode() != RosettaCodes.NO_CODE) {
+				harmonizedTermsByCode.putIfAbsent(term.getContextFreeCode(), term);
+			}
+		}
+		unitsByCode = new IntObjectMap<RosettaUnit>();
+		for (RosettaUnit unit : rosettaUnits.values()) {
+			if (unit.getContextFreeCode() != RosettaCodes.NO_CODE) {
+				unitsByCode.putIfAbsent(unit.getContextFreeCode(), unit);
+			}
+		}
 
-			docRosettaTable = docBuilder.parse(RosettaValidator.class.getResourceAsStream(xmlFilePathTable));
+		if (metrics != RosettaMetrics.NONE) {
+			metrics.recordLoad("indexes", 0, System.nanoTime() - start);
+			for (Map.Entry<String, Long> size : estimateRetainedSize().entrySet()) {
+				metrics.recordRetainedSize(size.getKey(), size.getValue());
+			}
+		}
+	}
 
-			// Cache in the map
-			String xpathExpr = "/Rosetta/term/REFID";
-			NodeList refidNodes = null;
-			refidNodes = (NodeList) xPath.evaluate(xpathExpr, docRosettaTable, XPathConstants.NODESET);
+	/**
+	 * Estimate the heap retained by the tables and indexes of this validator, assuming a 64 bit VM with compressed
+	 * references. Walks all objects of the validator, so it should not be called per lookup.
+	 *
+	 * @return estimated bytes per table or index
+	 */
+	public Map<String, Long> estimateRetainedSize() {
+		return new RosettaHeapEstimator().estimateFields(this, metrics);
+	}
 
-			if (refidNodes != null) {
-				for (int i = 0; i < refidNodes.getLength(); i++) {
-					Element elem = (Element) refidNodes.item(i);
-					String REFID = elem.getTextContent();
-					mapRosettaTerms.put(REFID, elem);
-				}
+	/**
+	 * The terms table has one row per vendor, the first row that has codes represents the term.
+	 */
+	private static Map<String, RosettaTerm> loadTerms(RosettaTable table) {
+		int refidColumn = table.getColumnIndex("REFID");
+		int groupColumn = table.getColumnIndex("Group");
+		int partitionColumn = table.getColumnIndex("PART");
+		int codeColumn = table.getColumnIndex("CODE10");
+		int contextFreeCodeColumn = table.getColumnIndex("CF_CODE10");
+
+		Map<String, RosettaTerm> terms = new LinkedHashMap<String, RosettaTerm>();
+		for (int row = 0; row < table.getRowCount(); row++) {
+			String refid = table.getValue(row, refidColumn);
+
+			RosettaTerm existing = terms.get(refid);
+			if (existing != null && existing.getContextFreeCode() != RosettaCodes.NO_CODE) {
+				continue;
 			}
 
-			docRosettaHarmonized = docBuilder.parse(RosettaValidator.class.getResourceAsStream(xmlFilePathHarmonized));
-
-			// Cache in the map
-			xpathExpr = "/HRTM/HRosetta/term/REFID";
-			refidNodes = null;
-			refidNodes = (NodeList) xPath.evaluate(xpathExpr, docRosettaHarmonized, XPathConstants.NODESET);
-			if (refidNodes != null) {
-				for (int i = 0; i < refidNodes.getLength(); i++) {
-					Element elem = (Element) refidNodes.item(i);
-					String REFID = elem.getTextContent();
-					mapHarmonizedRosetta.put(REFID, elem);
-				}
-			}
+			int partition = RosettaCodes.parse(table.getValue(row, partitionColumn));
+			int code = RosettaCodes.parse(table.getValue(row, codeColumn));
+			int contextFreeCode = RosettaCodes.contextFreeCode(table.getValue(row, contextFreeCodeColumn), partition,
+					code);
 
-			docRosettaUnits = docBuilder.parse(RosettaValidator.class.getResourceAsStream(xmlRosettaUnits));
-
-			// Cache Units table in the map
-			xpathExpr = "/RTM/Units/term/UOM_MDC";
-			NodeList unitNodes = (NodeList) xPath.evaluate(xpathExpr, docRosettaUnits, XPathConstants.NODESET);
-			if (unitNodes != null) {
-				for (int i = 0; i < unitNodes.getLength(); i++) {
-					Element elem = (Element) unitNodes.item(i);
-					String uomMdc = elem.getTextContent();
-					Element term = (Element) elem.getParentNode();
-					if (term != null)
-						mapRosettaUnits.put(uomMdc, term);
-				}
+			if (existing == null || contextFreeCode != RosettaCodes.NO_CODE) {
+				terms.put(refid, new RosettaTerm(refid, table.getValue(row, groupColumn), partition, code,
+						contextFreeCode));
 			}
+		}
+		return terms;
+	}
 
-		} catch (SAXException | IOException | XPathExpressionException | TransformerConfigurationException
-				| ParserConfigurationException e) {
-			throw new RosettaInitializationException(e);
+	private static Map<String, HarmonizedTerm> loadHarmonizedTerms(RosettaTable table,
+			RosettaSynonymIndex synonymIndex) {
+		int refidColumn = table.getColumnIndex("REFID");
+		int descriptionColumn = table.getColumnIndex("Vendor_Description");
+		int ucumColumn = table.getColumnIndex("UOM_UCUM");
+		int contextFreeCodeColumn = table.getColumnIndex("CF_CODE10");
+
+		Map<String, HarmonizedTerm> terms = new LinkedHashMap<String, HarmonizedTerm>();
+		for (int row = 0; row < table.getRowCount(); row++) {
+			String refid = table.getValue(row, refidColumn);
+
+			terms.put(refid, new HarmonizedTerm(refid, table.getValue(row, descriptionColumn), table.getValue(row,
+					ucumColumn), synonymIndex.getSynonym(refid), RosettaCodes.parse(table.getValue(row,
+					contextFreeCodeColumn))));
 		}
+		return terms;
+	}
+
+	private static Map<String, RosettaUnit> loadUnits(RosettaTable table) {
+		int mdcColumn = table.getColumnIndex("UOM_MDC");
+		int ucumColumn = table.getColumnIndex("UOM_UCUM");
+		int codeColumn = table.getColumnIndex("UCODE10");
+		int contextFreeCodeColumn = table.getColumnIndex("CF_UCODE10");
+		int dimensionColumn = table.getColumnIndex("Dimension");
+		int dimColumn = table.getColumnIndex("DIM");
+		int dimcColumn = table.getColumnIndex("DIMC");
+
+		Map<String, RosettaUnit> units = new LinkedHashMap<String, RosettaUnit>();
+		for (int row = 0; row < table.getRowCount(); row++) {
+			String mdcUnit = table.getValue(row, mdcColumn);
+			int code = RosettaCodes.parse(table.getValue(row, codeColumn));
+			int contextFreeCode = RosettaCodes.contextFreeCode(table.getValue(row, contextFreeCodeColumn),
+					RosettaCodes.PARTITION_DIMENSIONS, code);
+
+			units.put(mdcUnit, new RosettaUnit(mdcUnit, table.getValue(row, ucumColumn), code, contextFreeCode, table
+					.getValue(row, dimensionColumn), table.getValue(row, dimColumn), table.getValue(row, dimcColumn)));
+		}
+		return units;
+	}
+
+	/**
+	 * Check if the code is a REFID, MDC unit or UCUM unit of any Rosetta table. The codes of all four tables are kept
+	 * in one set, so the check is a single lookup instead of one per table and callers can drop unknown codes, e.g.
+	 * from misconfigured devices, before doing any further work or caching.
+	 *
+	 * @param code
+	 * @return false for null
+	 */
+	public boolean isKnownCode(String code) {
+		long start = startLookup();
+		return endCheck("isKnownCode", code, code != null && knownCodes.contains(code), start);
 	}
 
 	/**
 	 * Check if REFID is in Rosetta Harmonized table.
-	 * 
+	 *
 	 * @param refid
 	 * @return
 	 */
 	public boolean isInHarmonizedTable(String refid) {
-		return mapHarmonizedRosetta.containsKey(refid);
+		long start = startLookup();
+		return endCheck("isInHarmonizedTable", refid, harmonizedTerms.containsKey(refid), start);
 	}
 
 	/**
 	 * Check if REFID is in Rosetta raw table.
-	 * 
+	 *
 	 * @param refid
 	 * @return
 	 */
 	public boolean isInTermsTable(String refid) {
-		return mapRosettaTerms.containsKey(refid);
+		long start = startLookup();
+		return endCheck("isInTermsTable", refid, rosettaTerms.containsKey(refid), start);
+	}
+
+	/**
+	 * Get the entry of the terms table.
+	 *
+	 * @param refid
+	 * @return the entry, or null if REFID is not in the terms table
+	 */
+	public RosettaTerm getTerm(String refid) {
+		long start = startLookup();
+		return endLookup("getTerm", refid, rosettaTerms.get(refid), start);
+	}
+
+	/**
+	 * Get the REFIDs of the terms and Harmonized tables starting with the prefix, e.g. <code>MDC_ECG_AMPL_ST</code>.
+	 *
+	 * @param prefix
+	 * @return the REFIDs in sorted order, or an empty list if there are none
+	 */
+	public List<String> findRefidsByPrefix(String prefix) {
+		return getRefidIndex().findByPrefix(prefix);
+	}
+
+	/**
+	 * Get the REFIDs of the terms and Harmonized tables matching the pattern. <code>*</code> matches any characters and
+	 * a placeholder in angle brackets matches one underscore separated segment, so
+	 * <code>MDC_ECG_AMPL_ST_&lt;lead&gt;</code> is the ST amplitude of every lead.
+	 *
+	 * @param pattern
+	 * @return the REFIDs in sorted order, or an empty list if there are none
+	 */
+	public List<String> findRefids(String pattern) {
+		return getRefidIndex().find(pattern);
+	}
+
+	/**
+	 * Get the REFIDs of a <code>Group</code> of the terms and Harmonized tables, e.g. <code>CVS_ECG_ST</code>.
+	 *
+	 * @param group
+	 * @return the REFIDs in table order, or an empty list if the group is unknown
+	 */
+	public List<String> getRefidsByGroup(String group) {
+		return getRefidIndex().getByGroup(group);
+	}
+
+	/**
+	 * Get all groups of the terms and Harmonized tables.
+	 *
+	 * @return the groups in sorted order
+	 */
+	public Set<String> getGroups() {
+		return getRefidIndex().getGroups();
+	}
+
+	/**
+	 * Get the entry of the terms table by its context-free code (<code>CF_CODE10</code>).
+	 *
+	 * @param contextFreeCode
+	 * @return the entry, or null if no term has the code
+	 */
+	public RosettaTerm getTermByCode(int contextFreeCode) {
+		return termsByCode.get(contextFreeCode);
+	}
+
+	/**
+	 * Get the entry of the terms table by partition (<code>PART</code>) and code within the partition
+	 * (<code>CODE10</code>).
+	 *
+	 * @param partition
+	 * @param code
+	 * @return the entry, or null if no term has the code
+	 */
+	public RosettaTerm getTermByCode(int partition, int code) {
+		int contextFreeCode = RosettaCodes.contextFreeCode(partition, code);
+		return contextFreeCode == RosettaCodes.NO_CODE ? null : termsByCode.get(contextFreeCode);
+	}
+
+	/**
+	 * Get the entry of the Harmonized table by its context-free code (<code>CF_CODE10</code>).
+	 *
+	 * @param contextFreeCode
+	 * @return the entry, or null if no term has the code
+	 */
+	public HarmonizedTerm getHarmonizedTermByCode(int contextFreeCode) {
+		return harmonizedTermsByCode.get(contextFreeCode);
+	}
+
+	/**
+	 * Get the resolved entry of the Harmonized table.
+	 *
+	 * @param refid
+	 * @return the entry, or null if REFID is not in the Harmonized table
+	 */
+	public HarmonizedTerm getHarmonizedTerm(String refid) {
+		long start = startLookup();
+		return endLookup("getHarmonizedTerm", refid, harmonizedTerms.get(refid), start);
 	}
 
 	/**
 	 * Get description in Harmonized table. If not found return empty string.
-	 * 
+	 *
 	 * @param refid
 	 * @return
 	 * @throws RosettaLookupException
 	 */
 	public String getHarmonizedDescription(String refid) throws RosettaLookupException {
-		String result = "";
+		long start = startLookup();
+		HarmonizedTerm term = endLookup("getHarmonizedDescription", refid, harmonizedTerms.get(refid), start);
+		return term == null ? "" : term.getDescription();
+	}
 
-		if (mapHarmonizedRosetta.containsKey(refid)) {
+	/**
+	 * Get synonyms of the term look both ways - synonym of this term and if this term is synonym of the other term.
+	 * UNION of those. If not found return empty string.
+	 *
+	 * @param refid
+	 * @return the synonym, or null if REFID is not in the Harmonized table
+	 * @throws RosettaLookupException
+	 */
+	public String getHarmonizedSynonym(String refid) throws RosettaLookupException {
+		long start = startLookup();
+		HarmonizedTerm term = endLookup("getHarmonizedSynonym", refid, harmonizedTerms.get(refid), start);
+		return term == null ? null : term.getSynonym();
+	}
 
-			if (mapHarmonizedRosettaDescription.containsKey(refid)) {
-				result = mapHarmonizedRosettaDescription.get(refid);
-			} else {
+	/**
+	 * Get all codes that are synonyms of the code, directly or through other synonyms, including the code itself.
+	 *
+	 * @param code
+	 * @return the equivalence class, or an empty set if the code does not occur in the Harmonized table
+	 */
+	public Set<String> getHarmonizedSynonyms(String code) {
+		return synonymIndex.getEquivalenceClass(code);
+	}
 
-				// Cache in the map
-				String xpathExpr = "/HRTM/HRosetta/term[REFID = \"" + refid + "\"]";
-				Node node = null;
-				try {
-					node = (Node) xPath.evaluate(xpathExpr, docRosettaHarmonized, XPathConstants.NODE);
-				} catch (XPathExpressionException e) {
-					throw new RosettaLookupException(e);
-				}
-				if (node != null) {
-					Element elem = (Element) ((Element) node).getElementsByTagName("Vendor_Description").item(0);
-					result = elem.getTextContent();
-				}
+	/**
+	 * Get the terms of the Harmonized table that name the code as their synonym.
+	 *
+	 * @param code
+	 * @return the terms in table order, or an empty list if there are none
+	 */
+	public List<String> getTermsWithSynonym(String code) {
+		return synonymIndex.getReverse(code);
+	}
+
+	/**
+	 * Get the terms a vendor labels with the VMD, from <code>Vendor_VMD</code> of the terms and Harmonized tables.
+	 *
+	 * @param vendorId
+	 *            e.g. <code>Philips</code> or <code>GE</code>
+	 * @param vendorVmd
+	 *            e.g. <code>PHYSIO_SRC_ID_ST</code>
+	 * @return candidate REFIDs in table order, or an empty list if there are none
+	 */
+	public List<String> getRefidsByVendorVmd(String vendorId, String vendorVmd) {
+		return getVendorIndex().getByVendorVmd(vendorId, vendorVmd);
+	}
+
+	/**
+	 * Get the terms a vendor describes with the description, from <code>Description</code> of the terms table and
+	 * <code>Vendor_Description</code> of the Harmonized table. Case and repeated whitespace are ignored.
+	 *
+	 * @param vendorId
+	 * @param description
+	 * @return candidate REFIDs in table order, or an empty list if there are none
+	 */
+	public List<String> getRefidsByVendorDescription(String vendorId, String description) {
+		return getVendorIndex().getByVendorDescription(vendorId, description);
+	}
+
+	/**
+	 * Get the terms any vendor describes with the description. Case and repeated whitespace are ignored.
+	 *
+	 * @param description
+	 * @return candidate REFIDs in table order, or an empty list if there are none
+	 */
+	public List<String> getRefidsByVendorDescription(String description) {
+		return getVendorIndex().getByDescription(description);
+	}
+
+	/**
+	 * Get description in Harmonized table.
+	 *
+	 * @param refid
+	 * @return
+	 * @throws RosettaLookupException
+	 */
+	public String getHarmonizedUCUMUnits(String refid) throws RosettaLookupException {
+		long start = startLookup();
+		HarmonizedTerm term = endLookup("getHarmonizedUCUMUnits", refid, harmonizedTerms.get(refid), start);
+		return term == null ? "" : term.getUcumUnits();
+	}
 
-				mapHarmonizedRosettaDescription.put(refid, result);
+	/**
+	 * Get the entry of the Units table.
+	 *
+	 * @param mdcUnit
+	 * @return the entry, or null if the unit is not in the Units table
+	 */
+	public RosettaUnit getUnit(String mdcUnit) {
+		long start = startLookup();
+		return endLookup("getUnit", mdcUnit, rosettaUnits.get(mdcUnit), start);
+	}
+
+	/**
+	 * Get all entries of the Units table, in table order.
+	 *
+	 * @return
+	 */
+	public Collection<RosettaUnit> getUnits() {
+		return rosettaUnits.values();
+	}
+
+	/**
+	 * Get the entry of the Units table by its context-free code (<code>CF_UCODE10</code>).
+	 *
+	 * @param contextFreeCode
+	 * @return the entry, or null if no unit has the code
+	 */
+	public RosettaUnit getUnitByCode(int contextFreeCode) {
+		return unitsByCode.get(contextFreeCode);
+	}
+
+	/**
+	 * Get the entry of the Units table by partition and code within the partition (<code>UCODE10</code>).
+	 *
+	 * @param partition
+	 * @param code
+	 * @return the entry, or null if no unit has the code
+	 */
+	public RosettaUnit getUnitByCode(int partition, int code) {
+		int contextFreeCode = RosettaCodes.contextFreeCode(partition, code);
+		return contextFreeCode == RosettaCodes.NO_CODE ? null : unitsByCode.get(contextFreeCode);
+	}
+
+	/**
+	 * Check if the MDC unit is allowed for the term.
+	 *
+	 * @param refid
+	 * @param mdcUnit
+	 * @return
+	 */
+	public boolean isValidUnit(String refid, String mdcUnit) {
+		long start = startLookup();
+		return endCheck("isValidUnit", refid, getUnitMatrix().isAllowedMdcUnit(refid, mdcUnit), start);
+	}
+
+	/**
+	 * Check if the UCUM unit is allowed for the term.
+	 *
+	 * @param refid
+	 * @param ucumUnit
+	 * @return
+	 */
+	public boolean isValidUcumUnit(String refid, String ucumUnit) {
+		long start = startLookup();
+		return endCheck("isValidUcumUnit", refid, getUnitMatrix().isAllowedUcumUnit(refid, ucumUnit), start);
+	}
+
+	/**
+	 * Check pairs of term and MDC unit.
+	 *
+	 * @param refids
+	 * @param mdcUnits
+	 *            unit of each term, same length as refids
+	 * @return bit i is set if unit i is allowed for term i
+	 */
+	public BitSet validateUnits(String[] refids, String[] mdcUnits) {
+		requireSameLength(refids, mdcUnits, "units");
+
+		BitSet result = new BitSet(refids.length);
+		for (int i = 0; i < refids.length; i++) {
+			long start = startLookup();
+			if (endCheck("validateUnits", refids[i], getUnitMatrix().isAllowedMdcUnit(refids[i], mdcUnits[i]),
+					start)) {
+				result.set(i);
 			}
 		}
 		return result;
 	}
 
 	/**
-	 * Get synonyms of the term look both ways - synonym of this term and if this term is synonym of the other term.
-	 * UNION of those. If not found return empty string.
-	 * 
+	 * Check pairs of term and UCUM unit.
+	 *
+	 * @param refids
+	 * @param ucumUnits
+	 *            unit of each term, same length as refids
+	 * @return bit i is set if unit i is allowed for term i
+	 */
+	public BitSet validateUcumUnits(String[] refids, String[] ucumUnits) {
+		requireSameLength(refids, ucumUnits, "units");
+
+		BitSet result = new BitSet(refids.length);
+		for (int i = 0; i < refids.length; i++) {
+			long start = startLookup();
+			if (endCheck("validateUcumUnits", refids[i], getUnitMatrix().isAllowedUcumUnit(refids[i], ucumUnits[i]),
+					start)) {
+				result.set(i);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the MDC units allowed for the term, with unit groups expanded.
+	 *
 	 * @param refid
-	 * @return
-	 * @throws RosettaLookupException
+	 * @return the units, or an empty list if the term is unknown or lists no units
 	 */
-	public String getHarmonizedSynonym(String refid) throws RosettaLookupException {
-		String result = "";
-
-		if (mapSynonyms.containsKey(refid))
-			result = mapSynonyms.get(refid);
-		else {
-			NodeList list;
-			try {
-			Element elemTerm = mapHarmonizedRosetta.get(refid);
-			list = ((Element) elemTerm.getParentNode()).getElementsByTagName("Synonym");
-			} catch(NullPointerException e) {
-				return null;
+	public List<String> getAllowedUnits(String refid) {
+		return getUnitMatrix().getAllowedMdcUnits(refid);
+	}
+
+	public String getUCUMUnit(String mdcUnit) throws RosettaLookupException {
+		long start = startLookup();
+		RosettaUnit unit = endLookup("getUCUMUnit", mdcUnit, rosettaUnits.get(mdcUnit), start);
+		return unit == null ? "n/a" : unit.getUcumUnit();
+	}
+
+	/**
+	 * Get the enumerated values of the term, from <code>Enum_Values</code> of the Harmonized table.
+	 *
+	 * @param refid
+	 * @return the values in table order, or an empty set if the term is not enumerated
+	 */
+	public Set<String> getEnumValues(String refid) {
+		return enumIndex.getValues(refid);
+	}
+
+	/**
+	 * Check if the value is one of the enumerated values of the term, e.g. <code>pump-mode-continuous</code> for
+	 * <code>MDC_PUMP_MODE</code>. Values are case sensitive.
+	 *
+	 * @param refid
+	 * @param value
+	 * @return false if the value is not listed or the term is not enumerated
+	 */
+	public boolean isValidEnumValue(String refid, String value) {
+		long start = startLookup();
+		return endCheck("isValidEnumValue", refid, enumIndex.isValidValue(refid, value), start);
+	}
+
+	/**
+	 * Check pairs of term and enumerated value.
+	 *
+	 * @param refids
+	 * @param values
+	 *            value of each term, same length as refids
+	 * @return bit i is set if value i is valid for term i
+	 */
+	public BitSet validateEnumValues(String[] refids, String[] values) {
+		requireSameLength(refids, values, "values");
+
+		BitSet result = new BitSet(refids.length);
+		for (int i = 0; i < refids.length; i++) {
+			long start = startLookup();
+			if (endCheck("validateEnumValues", refids[i], enumIndex.isValidValue(refids[i], values[i]), start)) {
+				result.set(i);
 			}
+		}
+		return result;
+	}
 
-			if (list.getLength() > 0) {
-				Element elemSyn = (Element) list.item(0);
-				String refidSyn = elemSyn.getTextContent();
-				if (refidSyn != null && !refidSyn.equals("")) {
-					result = refidSyn;
-				}
+	/**
+	 * Validate all observations of a message in one pass, instead of calling {@link #isInTermsTable(String)},
+	 * {@link #isInHarmonizedTable(String)}, {@link #isValidUnit(String, String)} and {@link #getUCUMUnit(String)} per
+	 * observation.
+	 *
+	 * @param refids
+	 *            term of each observation
+	 * @param mdcUnits
+	 *            MDC unit of each observation, same length as refids
+	 * @return the checks and resolved UCUM units of every observation
+	 */
+	public RosettaValidationResult validateObservations(String[] refids, String[] mdcUnits) {
+		requireSameLength(refids, mdcUnits, "units");
+
+		long start = startLookup();
+		int size = refids.length;
+		String[] ucumUnits = new String[size];
+		String[] harmonizedUcumUnits = new String[size];
+		BitSet inTermsTable = new BitSet(size);
+		BitSet inHarmonizedTable = new BitSet(size);
+		BitSet knownUnit = new BitSet(size);
+		BitSet validUnit = new BitSet(size);
+
+		for (int i = 0; i < size; i++) {
+			if (rosettaTerms.containsKey(refids[i])) {
+				inTermsTable.set(i);
 			}
 
-			// Try to find synonyms other way
-			if (result.equals("")) {
-				// Cache in the map
-				String xpathExpr = "/HRTM/HRosetta/term[Synonym = \"" + refid + "\"]/REFID";
-				Node node = null;
-				try {
-					node = (Node) xPath.evaluate(xpathExpr, docRosettaHarmonized, XPathConstants.NODE);
-				} catch (XPathExpressionException e) {
-					throw new RosettaLookupException(e);
-				}
-				if (node != null) {
-					result = node.getTextContent();
-				}
+			HarmonizedTerm term = harmonizedTerms.get(refids[i]);
+			if (term != null) {
+				inHarmonizedTable.set(i);
+				harmonizedUcumUnits[i] = term.getUcumUnits();
+			} else {
+				harmonizedUcumUnits[i] = "";
+			}
+
+			RosettaUnit unit = rosettaUnits.get(mdcUnits[i]);
+			if (unit != null) {
+				knownUnit.set(i);
+				ucumUnits[i] = unit.getUcumUnit();
+			}
+
+			if (getUnitMatrix().isAllowedMdcUnit(refids[i], mdcUnits[i])) {
+				validUnit.set(i);
 			}
-			// if synonym was not found, then "" is put in hash map, and next time even negative cases are cached, no
-			// new XPath needed
-			mapSynonyms.put(refid, result);
 		}
 
+		RosettaValidationResult result = new RosettaValidationResult(refids.clone(), mdcUnits.clone(), ucumUnits,
+				harmonizedUcumUnits, inTermsTable, inHarmonizedTable, knownUnit, validUnit);
+		endCheck("validateObservations", null, result.isAllValid(), start);
 		return result;
 	}
 
 	/**
-	 * Get description in Harmonized table.
-	 * 
-	 * @param refid
-	 * @return
-	 * @throws RosettaLookupException
+	 * Validate all <code>Observation</code> elements of a T5 document, using the text of their
+	 * <code>ObsIdentifier</code> as REFID and of their <code>Unit</code> as MDC unit.
+	 *
+	 * @param t5Document
+	 * @return the result, observations in document order
 	 */
-	public String getHarmonizedUCUMUnits(String refid) throws RosettaLookupException {
-		String result = "";
+	public RosettaValidationResult validateObservations(Document t5Document) {
+		NodeList observations = t5Document.getElementsByTagName(ELEMENT_OBSERVATION);
+
+		String[] refids = new String[observations.getLength()];
+		String[] mdcUnits = new String[observations.getLength()];
+		for (int i = 0; i < refids.length; i++) {
+			Element observation = (Element) observations.item(i);
+			refids[i] = getChildText(observation, ELEMENT_OBS_IDENTIFIER);
+			mdcUnits[i] = getChildText(observation, ELEMENT_UNIT);
+		}
+		return validateObservations(refids, mdcUnits);
+	}
 
-		if (mapHarmonizedRosetta.containsKey(refid)) {
+	/**
+	 * Trimmed text of the first child element with the name, empty string if there is none.
+	 */
+	private static String getChildText(Element element, String name) {
+		for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeType() == Node.ELEMENT_NODE && name.equals(child.getNodeName())) {
+				return child.getTextContent().trim();
+			}
+		}
+		return "";
+	}
 
-			if (mapHarmonizedRosettaUcumUnits.containsKey(refid)) {
-				result = mapHarmonizedRosettaUcumUnits.get(refid);
-			} else {
-				// Cache in the map
-				String xpathExpr = "/HRTM/HRosetta/term[REFID = \"" + refid + "\"]";
-				Node node = null;
-				try {
-					node = (Node) xPath.evaluate(xpathExpr, docRosettaHarmonized, XPathConstants.NODE);
-				} catch (XPathExpressionException e) {
-					throw new RosettaLookupException(e);
+	private RosettaUnitMatrix getUnitMatrix() {
+		RosettaUnitMatrix matrix = unitMatrix;
+		if (matrix == null) {
+			synchronized (this) {
+				matrix = unitMatrix;
+				if (matrix == null) {
+					long start = System.nanoTime();
+					matrix = new RosettaUnitMatrix(tables);
+					unitMatrix = matrix;
+					recordBuild("unitMatrix", start);
 				}
+			}
+		}
+		return matrix;
+	}
 
-				if (node != null) {
-					Element elem = (Element) ((Element) node).getElementsByTagName("UOM_UCUM").item(0);
-					result = elem.getTextContent();
+	private RosettaVendorIndex getVendorIndex() {
+		RosettaVendorIndex index = vendorIndex;
+		if (index == null) {
+			synchronized (this) {
+				index = vendorIndex;
+				if (index == null) {
+					long start = System.nanoTime();
+					index = new RosettaVendorIndex(tables.getTable(RosettaTables.TERMS), tables
+							.getTable(RosettaTables.HARMONIZED));
+					vendorIndex = index;
+					recordBuild("vendorIndex", start);
 				}
-
-				mapHarmonizedRosettaUcumUnits.put(refid, result);
 			}
 		}
-		return result;
+		return index;
 	}
 
-	public String getUCUMUnit(String mdcUnit) throws RosettaLookupException {
-		String result = "";
-
-		if (mapMdcUcumUnit.containsKey(mdcUnit)) {
-			result = mapMdcUcumUnit.get(mdcUnit);
-		} else {
-			if (mapRosettaUnits.containsKey(mdcUnit)) {
-				Element elemTrem = mapRosettaUnits.get(mdcUnit);
-				NodeList nl = elemTrem.getElementsByTagName("UOM_UCUM");
-
-				if (nl == null || nl.getLength() == 0) {
-					result = "n/a";
-				} else {
-					Element elemUcum = (Element) nl.item(0);
-					result = elemUcum.getTextContent();
+	private RosettaRefidIndex getRefidIndex() {
+		RosettaRefidIndex index = refidIndex;
+		if (index == null) {
+			synchronized (this) {
+				index = refidIndex;
+				if (index == null) {
+					long start = System.nanoTime();
+					index = new RosettaRefidIndex(tables.getTable(RosettaTables.TERMS), tables
+							.getTable(RosettaTables.HARMONIZED));
+					refidIndex = index;
+					recordBuild("refidIndex", start);
 				}
-			} else {
-				result = "n/a";
 			}
+		}
+		return index;
+	}
+
+	private void recordBuild(String index, long start) {
+		if (metrics != RosettaMetrics.NONE) {
+			metrics.recordLoad(index, 0, System.nanoTime() - start);
+		}
+	}
+
+	private long startLookup() {
+		return metrics == RosettaMetrics.NONE ? 0 : System.nanoTime();
+	}
 
-			// Cache in the map
-			mapMdcUcumUnit.put(mdcUnit, result);
+	private boolean endCheck(String method, String key, boolean result, long start) {
+		if (metrics != RosettaMetrics.NONE) {
+			metrics.recordLookup(method, key, result, System.nanoTime() - start);
 		}
+		return result;
+	}
 
+	private <T> T endLookup(String method, String key, T result, long start) {
+		if (metrics != RosettaMetrics.NONE) {
+			metrics.recordLookup(method, key, result != null, System.nanoTime() - start);
+		}
 		return result;
 	}
+
+	private static void requireSameLength(String[] refids, String[] values, String name) {
+		if (refids.length != values.length) {
+			throw new IllegalArgumentException("Got " + refids.length + " terms but " + values.length + " " + name
+					+ ".");
+		}
+	}
 }
@@ -0,0 +1,183 @@
+package net.sllmdilab.commons.t5.validators;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reverse index from vendor labels to REFIDs, built once from the vendor columns.
+ *
+ * The terms table has one row per vendor with plain <code>Vendor_ID</code>, <code>Vendor_VMD</code> and
+ * <code>Description</code> columns. The harmonized table lists the labels of all vendors in one column, each label
+ * followed by its vendor in curly braces, e.g. <code>Patient Weight {BBraun_PL} weight {Draeger}</code>.
+ *
+ * Descriptions are matched ignoring case and repeated whitespace, VMD labels are matched exactly. A VMD label which
+ * joins codes with <code>/</code>, e.g. <code>MDC_DEV_METER_PRESS_BLD_VMD/MDC_DEV_METER_PRESS_BLD_CHAN</code>, is also
+ * found by each of its codes.
+ */
+final class RosettaVendorIndex {
+
+	private static final char KEY_SEPARATOR = '\u0000';
+
+	private final Map<String, List<String>> byVendorVmd;
+	private final Map<String, List<String>> byVendorDescription;
+	private final Map<String, List<String>> byDescription;
+
+	RosettaVendorIndex(RosettaTable termsTable, RosettaTable harmonizedTable) {
+		Map<String, Set<String>> vmdRefids = new HashMap<String, Set<String>>();
+		Map<String, Set<String>> vendorDescriptionRefids = new HashMap<String, Set<String>>();
+		Map<String, Set<String>> descriptionRefids = new HashMap<String, Set<String>>();
+
+		int termRefidColumn = termsTable.getColumnIndex("REFID");
+		int vendorColumn = termsTable.getColumnIndex("Vendor_ID");
+		int vmdColumn = termsTable.getColumnIndex("Vendor_VMD");
+		int descriptionColumn = termsTable.getColumnIndex("Description");
+		for (int row = 0; row < termsTable.getRowCount(); row++) {
+			String refid = termsTable.getValue(row, termRefidColumn);
+			String vendor = termsTable.getValue(row, vendorColumn).trim();
+
+			addVmd(vmdRefids, vendor, termsTable.getValue(row, vmdColumn).trim(), refid);
+			addDescription(vendorDescriptionRefids, descriptionRefids, vendor, termsTable.getValue(row,
+					descriptionColumn), refid);
+		}
+
+		int harmonizedRefidColumn = harmonizedTable.getColumnIndex("REFID");
+		int harmonizedVmdColumn = harmonizedTable.getColumnIndex("Vendor_VMD");
+		int harmonizedDescriptionColumn = harmonizedTable.getColumnIndex("Vendor_Description");
+		for (int row = 0; row < harmonizedTable.getRowCount(); row++) {
+			String refid = harmonizedTable.getValue(row, harmonizedRefidColumn);
+
+			for (String[] label : splitVendorLabels(harmonizedTable.getValue(row, harmonizedVmdColumn))) {
+				addVmd(vmdRefids, label[0], label[1], refid);
+			}
+			for (String[] label : splitVendorLabels(harmonizedTable.getValue(row, harmonizedDescriptionColumn))) {
+				addDescription(vendorDescriptionRefids, descriptionRefids, label[0], label[1], refid);
+			}
+		}
+
+		byVendorVmd = freeze(vmdRefids);
+		byVendorDescription = freeze(vendorDescriptionRefids);
+		byDescription = freeze(descriptionRefids);
+	}
+
+	/**
+	 * Splits <code>label {Vendor} label {Vendor}</code> into vendor and label pairs. Vendors without a label are
+	 * skipped.
+	 */
+	static List<String[]> splitVendorLabels(String value) {
+		List<String[]> labels = new ArrayList<String[]>();
+		int labelStart = 0;
+		int open;
+		while ((open = value.indexOf('{', labelStart)) >= 0) {
+			int close = value.indexOf('}', open);
+			if (close < 0) {
+				break;
+			}
+
+			String label = value.substring(labelStart, open).trim();
+			String vendor = value.substring(open + 1, close).trim();
+			if (!label.isEmpty() && !vendor.isEmpty()) {
+				labels.add(new String[] { vendor, label });
+			}
+			labelStart = close + 1;
+		}
+		return labels;
+	}
+
+	private static void addVmd(Map<String, Set<String>> vmdRefids, String vendor, String vmd, String refid) {
+		add(vmdRefids, key(vendor, vmd), refid);
+		if (vmd.indexOf('/') >= 0) {
+			for (String part : vmd.split("/")) {
+				add(vmdRefids, key(vendor, part.trim()), refid);
+			}
+		}
+	}
+
+	private static void addDescription(Map<String, Set<String>> vendorDescriptionRefids,
+			Map<String, Set<String>> descriptionRefids, String vendor, String description, String refid) {
+		String normalized = normalizeDescription(description);
+		if (normalized.isEmpty()) {
+			return;
+		}
+		add(vendorDescriptionRefids, key(vendor, normalized), refid);
+		add(descriptionRefids, normalized, refid);
+	}
+
+	private static void add(Map<String, Set<String>> index, String key, String refid) {
+		if (key.isEmpty() || key.charAt(key.length() - 1) == KEY_SEPARATOR) {
+			return;
+		}
+
+		Set<String> refids = index.get(key);
+		if (refids == null) {
+			refids = new LinkedHashSet<String>(2);
+			index.put(key, refids);
+		}
+		refids.add(refid);
+	}
+
+	private static Map<String, List<String>> freeze(Map<String, Set<String>> index) {
+		Map<String, List<String>> frozen = new HashMap<String, List<String>>(index.size() * 2);
+		for (Map.Entry<String, Set<String>> entry : index.entrySet()) {
+			frozen.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<String>(entry.getValue())));
+		}
+		return Collections.unmodifiableMap(frozen);
+	}
+
+	private static String key(String vendor, String label) {
+		return vendor + KEY_SEPARATOR + label;
+	}
+
+	/**
+	 * Collapses runs of whitespace to one space, trims and lower cases. Called for every lookup, so it does not use a
+	 * regex.
+	 */
+	static String normalizeDescription(String description) {
+		StringBuilder normalized = new StringBuilder(description.length());
+		boolean pendingSpace = false;
+		for (int i = 0; i < description.length(); i++) {
+			char c = description.charAt(i);
+			if (Character.isWhitespace(c)) {
+				pendingSpace = normalized.length() > 0;
+			} else {
+				if (pendingSpace) {
+					normalized.append(' ');
+					pendingSpace = false;
+				}
+				normalized.append(c);
+			}
+		}
+		return normalized.toString().toLowerCase(Locale.ROOT);
+	}
+
+	private static List<String> get(Map<String, List<String>> index, String key) {
+		List<String> refids = index.get(key);
+		return refids == null ? Collections.<String> emptyList() : refids;
+	}
+
+	/**
+	 * REFIDs the vendor labels with the VMD, in table order.
+	 */
+	List<String> getByVendorVmd(String vendor, String vmd) {
+		return get(byVendorVmd, key(vendor.trim(), vmd.trim()));
+	}
+
+	/**
+	 * REFIDs the vendor describes with the description, in table order.
+	 */
+	List<String> getByVendorDescription(String vendor, String description) {
+		return get(byVendorDescription, key(vendor.trim(), normalizeDescription(description)));
+	}
+
+	/**
+	 * REFIDs any vendor describes with the description, in table order.
+	 */
+	List<String> getByDescription(String description) {
+		return get(byDescription, normalizeDescription(description));
+	}
+}
@@ -0,0 +1,155 @@
+package net.sllmdilab.commons.t5.validators;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import net.sllmdilab.commons.exceptions.RosettaInitializationException;
+
+/**
+ * Extracts {@link RosettaTables} from the Rosetta XML files.
+ *
+ * The files are streamed, every <code>term</code> element becomes a row as soon as it has been read, so no document
+ * tree is built. Leaf children of a term are the columns of its row, children with elements of their own, such as
+ * <code>UnitA</code>, become rows of a nested table.
+ */
+final class RosettaXmlReader {
+
+	private static final String ELEMENT_TERM = "term";
+
+	private final XMLInputFactory inputFactory;
+
+	RosettaXmlReader() {
+		inputFactory = XMLInputFactory.newInstance();
+		inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+
+	RosettaTables read(RosettaSources sources) {
+		return read(sources, RosettaMetrics.NONE);
+	}
+
+	/**
+	 * Reports the rows and parse time of each file to the metrics.
+	 */
+	RosettaTables read(RosettaSources sources, RosettaMetrics metrics) {
+		try {
+			RosettaStringPool.Builder pool = new RosettaStringPool.Builder();
+			Map<String, RosettaTable.Builder> builders = new LinkedHashMap<String, RosettaTable.Builder>();
+
+			readTable(sources.getHarmonized(), RosettaTables.HARMONIZED, pool, builders, metrics);
+			readTable(sources.getTerms(), RosettaTables.TERMS, pool, builders, metrics);
+			readTable(sources.getUnits(), RosettaTables.UNITS, pool, builders, metrics);
+
+			RosettaStringPool builtPool = pool.build();
+			List<RosettaTable> tables = new ArrayList<RosettaTable>();
+			for (RosettaTable.Builder builder : builders.values()) {
+				tables.add(builder.build(builtPool));
+			}
+
+			return new RosettaTables(tables, sources.checksums());
+		} catch (XMLStreamException | IOException e) {
+			throw new RosettaInitializationException(e);
+		}
+	}
+
+	private void readTable(URL source, String tableName, RosettaStringPool.Builder pool,
+			Map<String, RosettaTable.Builder> builders, RosettaMetrics metrics) throws XMLStreamException, IOException {
+		long start = System.nanoTime();
+		int rows = 0;
+		RosettaTable.Builder table = getBuilder(tableName, false, pool, builders);
+
+		try (InputStream in = source.openStream()) {
+			XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+			try {
+				while (reader.hasNext()) {
+					if (reader.next() == XMLStreamConstants.START_ELEMENT
+							&& ELEMENT_TERM.equals(reader.getLocalName())) {
+						readTerm(reader, tableName, table, pool, builders);
+						rows++;
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+
+		metrics.recordLoad(RosettaSources.getFileName(source), rows, System.nanoTime() - start);
+	}
+
+	/**
+	 * Reads one <code>term</code>, the reader is positioned on its start tag and is left on its end tag.
+	 */
+	private void readTerm(XMLStreamReader reader, String tableName, RosettaTable.Builder table,
+			RosettaStringPool.Builder pool, Map<String, RosettaTable.Builder> builders) throws XMLStreamException {
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		List<String> groupNames = new ArrayList<String>();
+		List<Map<String, String>> groups = new ArrayList<Map<String, String>>();
+
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			String name = reader.getLocalName();
+			StringBuilder text = new StringBuilder();
+			Map<String, String> groupValues = null;
+
+			int event;
+			while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) {
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					if (groupValues == null) {
+						groupValues = new LinkedHashMap<String, String>();
+					}
+					putValue(groupValues, reader.getLocalName(), reader.getElementText());
+				} else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+						|| event == XMLStreamConstants.SPACE) {
+					text.append(reader.getText());
+				}
+			}
+
+			if (groupValues != null) {
+				groupNames.add(name);
+				groups.add(groupValues);
+			} else {
+				putValue(values, name, text.toString());
+			}
+		}
+
+		int row = table.addRow(values, -1);
+
+		for (int i = 0; i < groups.size(); i++) {
+			getBuilder(tableName + "/" + groupNames.get(i), true, pool, builders).addRow(groups.get(i), row);
+		}
+	}
+
+	private RosettaTable.Builder getBuilder(String tableName, boolean nested, RosettaStringPool.Builder pool,
+			Map<String, RosettaTable.Builder> builders) {
+		RosettaTable.Builder builder = builders.get(tableName);
+		if (builder == null) {
+			builder = new RosettaTable.Builder(tableName, pool, nested);
+			builders.put(tableName, builder);
+		}
+		return builder;
+	}
+
+	/**
+	 * Repeated elements, such as several <code>UOM_UCUM</code> in one <code>UnitA</code>, are joined with a space which
+	 * is how the harmonized table lists alternatives.
+	 */
+	private void putValue(Map<String, String> values, String name, String text) {
+		String previous = values.get(name);
+
+		if (previous == null || previous.isEmpty()) {
+			values.put(name, text);
+		} else if (!text.isEmpty()) {
+			values.put(name, previous + " " + text);
+		}
+	}
+}
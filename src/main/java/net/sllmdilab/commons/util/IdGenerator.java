@@ -0,0 +1,30 @@
+package net.sllmdilab.commons.util;
+
+import java.util.UUID;
+
+/**
+ * Generates identifiers for messages, observations and document URIs. Implementations are called concurrently and have
+ * to be thread safe.
+ */
+public interface IdGenerator {
+
+	/**
+	 * Random UUIDs, version 4. All threads share the {@link java.security.SecureRandom} of {@link UUID#randomUUID()}.
+	 */
+	IdGenerator RANDOM = new IdGenerator() {
+		@Override
+		public String generateId() {
+			return UUID.randomUUID().toString();
+		}
+	};
+
+	/**
+	 * Time ordered UUIDs, see {@link TimeOrderedIdGenerator}.
+	 */
+	IdGenerator TIME_ORDERED = new TimeOrderedIdGenerator();
+
+	/**
+	 * @return a new unique identifier
+	 */
+	String generateId();
+}
@@ -1,30 +1,20 @@
 package net.sllmdilab.commons.util;
 
 import java.io.IOException;
-import java.io.StringReader;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 
 import net.sllmdilab.commons.exceptions.XmlParsingException;
 
 import org.apache.commons.lang3.StringUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 public class ParserUtils {
 
 	public static Document parseXmlString(String response) {
 		try {
-			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-			factory.setNamespaceAware(true);
-			
-			DocumentBuilder documentBuilder = factory.newDocumentBuilder();
-			return documentBuilder.parse(new InputSource(new StringReader(response)));
-		} catch (SAXException | IOException | ParserConfigurationException e) {
+			return XmlUtils.parse(response, true);
+		} catch (SAXException | IOException e) {
 			throw new XmlParsingException(e);
 		}
 	}
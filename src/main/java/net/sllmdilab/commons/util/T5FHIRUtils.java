@@ -2,19 +2,11 @@ package net.sllmdilab.commons.util;
 
 import java.io.ByteArrayOutputStream;
 import java.io.UnsupportedEncodingException;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Calendar;
 import java.util.Date;
-import java.util.TimeZone;
-import java.util.UUID;
 
-import javax.xml.bind.DatatypeConverter;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
@@ -31,7 +23,7 @@ public class T5FHIRUtils {
 	public static final String SP_API_KEY = "api_key";
 	public static final String DEFAULT_CODE_SYSTEM = "MDC";
 
-	private static final TimeZone utcTimeZone = TimeZone.getTimeZone("UTC");
+	private static volatile IdGenerator idGenerator = IdGenerator.RANDOM;
 
 	public static Date getStartTimeFromNullableRange(DateRangeParam dateRange) {
 		Date startTime;
@@ -72,12 +64,7 @@ public class T5FHIRUtils {
 	}
 
 	public static String convertDateToXMLType(Date date) {
-		DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern(Constants.ISO_DATE_FORMAT).withZone(
-				ZoneId.of("UTC"));
-
-		ZonedDateTime zonedDateTime = ZonedDateTime.ofInstant(date.toInstant(), ZoneId.of("UTC"));
-
-		return zonedDateTime.format(dateTimeFormatter);
+		return TimestampCodec.formatIso(date.getTime());
 	}
 
 	public static void verifyApiKey(String actualApiKey, String inputApiKey) {
@@ -89,14 +76,11 @@ public class T5FHIRUtils {
 	}
 
 	public static Date xmlDateTimeToDate(String strTime) {
-		Calendar calendar = DatatypeConverter.parseDateTime(strTime);
-		calendar.setTimeZone(utcTimeZone);
-		return calendar.getTime();
+		return new Date(TimestampCodec.parseIso(strTime));
 	}
 
 	public static String xmlToString(Document xmlDocument) throws TransformerException, UnsupportedEncodingException {
-		TransformerFactory factory = TransformerFactory.newInstance();
-		Transformer transformer = factory.newTransformer();
+		Transformer transformer = XmlUtils.getTransformer();
 		transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
 
 		DOMSource source = new DOMSource(xmlDocument);
@@ -109,8 +93,16 @@ public class T5FHIRUtils {
 		return new String(bytes, "UTF-8");
 	}
 
+	/**
+	 * Selects how {@link #generateUniqueId()} and {@link #generateObservationId()} generate ids, random UUIDs by
+	 * default. Use {@link IdGenerator#TIME_ORDERED} for ids of documents inserted at a high rate.
+	 */
+	public static void setIdGenerator(IdGenerator generator) {
+		idGenerator = generator;
+	}
+
 	public static String generateUniqueId() {
-		return UUID.randomUUID().toString();
+		return idGenerator.generateId();
 	}
 	
 	public static boolean hasId(IResource resource) {
@@ -118,31 +110,15 @@ public class T5FHIRUtils {
 	}
 	
 	public static String convertDateToHL7Type(Date date) {
-		DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss.SSSZ").withZone(
-				ZoneId.of("UTC"));
-
-		ZonedDateTime zonedDateTime = ZonedDateTime.ofInstant(date.toInstant(), ZoneId.of("UTC"));
-
-		return zonedDateTime.format(dateTimeFormatter);
-	}
-	
-	public static Date convertHL7DateTypeToDate(String hl7DateStr) {
-		DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss.SSS[X]");
-		// If no time zone, set UTC
-		if(!includesTimeZone(hl7DateStr)){
-			dateTimeFormatter = dateTimeFormatter.withZone(ZoneId.of("UTC"));
-		}
-		ZonedDateTime zdt = ZonedDateTime.parse(hl7DateStr, dateTimeFormatter);
-		return Date.from(zdt.toInstant());		
+		return TimestampCodec.formatHl7(date.getTime());
 	}
 	
 	/**
-	 * Assumes the HL7 Date Format yyyyMMddHHmmss.SSS[X]
-	 * @param hl7DateString
-	 * @return
+	 * Parses an HL7 DTM of any precision, see {@link TimestampCodec#parseHl7(CharSequence)}. Without offset the time is
+	 * UTC.
 	 */
-	private static boolean includesTimeZone(String hl7DateString){
-		return hl7DateString.contains("+") || hl7DateString.contains("-") || hl7DateString.contains("Z");
+	public static Date convertHL7DateTypeToDate(String hl7DateStr) {
+		return new Date(TimestampCodec.parseHl7(hl7DateStr));
 	}
 
 }
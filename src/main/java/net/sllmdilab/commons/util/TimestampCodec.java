@@ -0,0 +1,306 @@
+package net.sllmdilab.commons.util;
+
+import java.time.format.DateTimeParseException;
+import java.util.TimeZone;
+
+/**
+ * Formats and parses the two time stamp types of T5 messages from and to epoch milliseconds:
+ * <ul>
+ * <li>ISO, {@link Constants#ISO_DATE_FORMAT}, e.g. <code>2015-03-26T16:32:43.120</code>. Parsing also accepts any
+ * number of fraction digits and an offset, <code>Z</code> or <code>+01:00</code>.</li>
+ * <li>HL7 v2 DTM, <code>YYYY[MM[DD[HH[MM[SS[.S[S[S[S]]]]]]]]][+/-ZZZZ]</code>, formatted with full precision as
+ * <code>20150326163243.120+0000</code>.</li>
+ * </ul>
+ * Time stamps without offset are UTC.
+ *
+ * The routines work on the digits directly instead of going through {@link java.time.format.DateTimeFormatter}, since
+ * every observation is formatted at least once per message. Formatting allocates only the result string, parsing
+ * allocates nothing unless the input is invalid.
+ */
+public final class TimestampCodec {
+
+	private static final long MILLIS_PER_SECOND = 1000;
+	private static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+	private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+	private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+	private static final int ISO_LENGTH = 23;
+	private static final int HL7_LENGTH = 23;
+
+	private TimestampCodec() {
+	}
+
+	/**
+	 * @return the UTC time in {@link Constants#ISO_DATE_FORMAT}
+	 */
+	public static String formatIso(long epochMillis) {
+		char[] buffer = new char[ISO_LENGTH];
+		long days = Math.floorDiv(epochMillis, MILLIS_PER_DAY);
+		int dayMillis = (int) Math.floorMod(epochMillis, MILLIS_PER_DAY);
+
+		writeDate(buffer, days, true);
+		buffer[10] = 'T';
+		writeTime(buffer, 11, dayMillis, true);
+		return new String(buffer);
+	}
+
+	/**
+	 * @return the local time of the zone in {@link Constants#ISO_DATE_FORMAT}, without offset
+	 */
+	public static String formatIso(long epochMillis, TimeZone zone) {
+		return formatIso(epochMillis + zone.getOffset(epochMillis));
+	}
+
+	/**
+	 * @return the time as HL7 DTM with millisecond precision and offset <code>+0000</code>
+	 */
+	public static String formatHl7(long epochMillis) {
+		char[] buffer = new char[HL7_LENGTH];
+		long days = Math.floorDiv(epochMillis, MILLIS_PER_DAY);
+		int dayMillis = (int) Math.floorMod(epochMillis, MILLIS_PER_DAY);
+
+		writeDate(buffer, days, false);
+		writeTime(buffer, 8, dayMillis, false);
+		buffer[18] = '+';
+		buffer[19] = '0';
+		buffer[20] = '0';
+		buffer[21] = '0';
+		buffer[22] = '0';
+		return new String(buffer);
+	}
+
+	/**
+	 * Parses an ISO date and time, <code>yyyy-MM-dd'T'HH:mm:ss[.S*][Z|+HH:mm|-HH:mm]</code>. Fraction digits beyond
+	 * milliseconds are truncated.
+	 *
+	 * @throws DateTimeParseException
+	 *             if the text is not a valid date and time
+	 */
+	public static long parseIso(CharSequence text) {
+		int length = text.length();
+		if (length < 19 || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != 'T'
+				|| text.charAt(13) != ':' || text.charAt(16) != ':') {
+			throw invalid("Invalid ISO date and time", text, 0);
+		}
+
+		int year = digits(text, 0, 4);
+		int month = digits(text, 5, 2);
+		int day = digits(text, 8, 2);
+		int hour = digits(text, 11, 2);
+		int minute = digits(text, 14, 2);
+		int second = digits(text, 17, 2);
+
+		int position = 19;
+		int millis = 0;
+		if (position < length && text.charAt(position) == '.') {
+			position++;
+			int start = position;
+			while (position < length && isDigit(text.charAt(position))) {
+				if (position - start < 3) {
+					millis = millis * 10 + (text.charAt(position) - '0');
+				}
+				position++;
+			}
+			if (position == start) {
+				throw invalid("Missing fraction digits", text, position);
+			}
+			for (int scale = position - start; scale < 3; scale++) {
+				millis *= 10;
+			}
+		}
+
+		int offsetMillis = 0;
+		if (position < length) {
+			offsetMillis = parseOffset(text, position, true);
+		}
+
+		return toEpochMillis(text, year, month, day, hour, minute, second, millis) - offsetMillis;
+	}
+
+	/**
+	 * Parses an HL7 DTM of any precision from year to ten-thousandths of a second, with an optional offset
+	 * <code>+HHMM</code>, <code>+HH</code> or <code>Z</code>. Omitted fields are the start of the period.
+	 *
+	 * @throws DateTimeParseException
+	 *             if the text is not a valid DTM
+	 */
+	public static long parseHl7(CharSequence text) {
+		int length = text.length();
+		int end = length;
+		for (int i = 4; i < length; i++) {
+			char c = text.charAt(i);
+			if (c == '+' || c == '-' || c == 'Z') {
+				end = i;
+				break;
+			}
+		}
+
+		if (end < 4 || (end > 4 && end < 14 && end % 2 != 0) || (end > 14 && text.charAt(14) != '.') || end == 15
+				|| end > 19) {
+			throw invalid("Invalid HL7 date and time", text, 0);
+		}
+
+		int year = digits(text, 0, 4);
+		int month = end >= 6 ? digits(text, 4, 2) : 1;
+		int day = end >= 8 ? digits(text, 6, 2) : 1;
+		int hour = end >= 10 ? digits(text, 8, 2) : 0;
+		int minute = end >= 12 ? digits(text, 10, 2) : 0;
+		int second = end >= 14 ? digits(text, 12, 2) : 0;
+
+		int millis = 0;
+		for (int i = 15; i < 18; i++) {
+			millis = millis * 10 + (i < end ? digits(text, i, 1) : 0);
+		}
+		if (end == 19) {
+			digits(text, 18, 1);
+		}
+
+		int offsetMillis = end < length ? parseOffset(text, end, false) : 0;
+
+		return toEpochMillis(text, year, month, day, hour, minute, second, millis) - offsetMillis;
+	}
+
+	/**
+	 * Parses <code>Z</code>, <code>+HH</code>, <code>+HHMM</code> or, in ISO, <code>+HH:MM</code> up to the end of the
+	 * text.
+	 */
+	private static int parseOffset(CharSequence text, int position, boolean iso) {
+		int length = text.length();
+		char sign = text.charAt(position);
+		if (sign == 'Z' && position + 1 == length) {
+			return 0;
+		}
+		if (sign != '+' && sign != '-') {
+			throw invalid("Invalid offset", text, position);
+		}
+
+		int hours;
+		int minutes = 0;
+		int remaining = length - position - 1;
+		if (remaining == 2) {
+			hours = digits(text, position + 1, 2);
+		} else if (remaining == 4) {
+			hours = digits(text, position + 1, 2);
+			minutes = digits(text, position + 3, 2);
+		} else if (iso && remaining == 5 && text.charAt(position + 3) == ':') {
+			hours = digits(text, position + 1, 2);
+			minutes = digits(text, position + 4, 2);
+		} else {
+			throw invalid("Invalid offset", text, position);
+		}
+		if (hours > 18 || minutes > 59) {
+			throw invalid("Invalid offset", text, position);
+		}
+
+		int offset = (int) (hours * MILLIS_PER_HOUR + minutes * MILLIS_PER_MINUTE);
+		return sign == '-' ? -offset : offset;
+	}
+
+	private static long toEpochMillis(CharSequence text, int year, int month, int day, int hour, int minute,
+			int second, int millis) {
+		if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month) || hour > 23 || minute > 59
+				|| second > 59) {
+			throw invalid("Date or time field out of range", text, 0);
+		}
+		return daysFromCivil(year, month, day) * MILLIS_PER_DAY + hour * MILLIS_PER_HOUR + minute * MILLIS_PER_MINUTE
+				+ second * MILLIS_PER_SECOND + millis;
+	}
+
+	/**
+	 * Days since 1970-01-01 of a proleptic Gregorian date, after Howard Hinnant's <code>days_from_civil</code>.
+	 */
+	private static long daysFromCivil(int year, int month, int day) {
+		int y = month <= 2 ? year - 1 : year;
+		int era = Math.floorDiv(y, 400);
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097L + dayOfEra - 719468;
+	}
+
+	/**
+	 * Writes <code>yyyy-MM-dd</code>, or <code>yyyyMMdd</code> without separators, from days since 1970-01-01, after
+	 * Howard Hinnant's <code>civil_from_days</code>.
+	 */
+	private static void writeDate(char[] buffer, long epochDays, boolean separators) {
+		long z = epochDays + 719468;
+		long era = Math.floorDiv(z, 146097);
+		int dayOfEra = (int) (z - era * 146097);
+		int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		int monthIndex = (5 * dayOfYear + 2) / 153;
+		int day = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+		int month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+		long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+		if (year < 0 || year > 9999) {
+			throw new IllegalArgumentException("Year " + year + " can not be formatted with four digits");
+		}
+
+		int position = 0;
+		position = writeDigits(buffer, position, (int) year, 4);
+		if (separators) {
+			buffer[position++] = '-';
+		}
+		position = writeDigits(buffer, position, month, 2);
+		if (separators) {
+			buffer[position++] = '-';
+		}
+		writeDigits(buffer, position, day, 2);
+	}
+
+	/**
+	 * Writes <code>HH:mm:ss.SSS</code>, or <code>HHmmss.SSS</code> without separators.
+	 */
+	private static void writeTime(char[] buffer, int position, int dayMillis, boolean separators) {
+		position = writeDigits(buffer, position, (int) (dayMillis / MILLIS_PER_HOUR), 2);
+		if (separators) {
+			buffer[position++] = ':';
+		}
+		position = writeDigits(buffer, position, (int) (dayMillis / MILLIS_PER_MINUTE % 60), 2);
+		if (separators) {
+			buffer[position++] = ':';
+		}
+		position = writeDigits(buffer, position, (int) (dayMillis / MILLIS_PER_SECOND % 60), 2);
+		buffer[position++] = '.';
+		writeDigits(buffer, position, (int) (dayMillis % MILLIS_PER_SECOND), 3);
+	}
+
+	private static int writeDigits(char[] buffer, int position, int value, int count) {
+		for (int i = position + count - 1; i >= position; i--) {
+			buffer[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+		return position + count;
+	}
+
+	private static int digits(CharSequence text, int position, int count) {
+		if (position + count > text.length()) {
+			throw invalid("Too few digits", text, position);
+		}
+		int value = 0;
+		for (int i = position; i < position + count; i++) {
+			char c = text.charAt(i);
+			if (!isDigit(c)) {
+				throw invalid("Expected a digit", text, i);
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static int lengthOfMonth(int year, int month) {
+		if (month == 2) {
+			boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+			return leap ? 29 : 28;
+		}
+		return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+	}
+
+	private static DateTimeParseException invalid(String message, CharSequence text, int index) {
+		return new DateTimeParseException(message + ": " + text, text, index);
+	}
+}
@@ -0,0 +1,146 @@
+package net.sllmdilab.commons.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+
+import net.sllmdilab.commons.exceptions.T5Exception;
+
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Shared XML parsers and transformers.
+ *
+ * Creating a JAXP factory looks up the implementation with the service loader, and creating a builder or transformer
+ * configures it from scratch, which costs more than parsing or serializing a small T5 message. The factories are
+ * therefore created once, and every thread reuses its own builders and transformer, which are reset before each use.
+ * Compiled {@link Templates} are thread-safe and can be shared freely.
+ *
+ * Everything is configured with secure processing and without access to external DTDs, schemas and stylesheets, so
+ * documents from the database or from clients can not make the parser read local files or fetch URLs.
+ */
+public final class XmlUtils {
+
+	private static final DocumentBuilderFactory documentBuilderFactory = createDocumentBuilderFactory(false);
+	private static final DocumentBuilderFactory namespaceAwareDocumentBuilderFactory =
+			createDocumentBuilderFactory(true);
+	private static final TransformerFactory transformerFactory = createTransformerFactory();
+
+	private static final ThreadLocal<DocumentBuilder> documentBuilder = new ThreadLocal<DocumentBuilder>() {
+		@Override
+		protected DocumentBuilder initialValue() {
+			return createDocumentBuilder(documentBuilderFactory);
+		}
+	};
+
+	private static final ThreadLocal<DocumentBuilder> namespaceAwareDocumentBuilder =
+			new ThreadLocal<DocumentBuilder>() {
+				@Override
+				protected DocumentBuilder initialValue() {
+					return createDocumentBuilder(namespaceAwareDocumentBuilderFactory);
+				}
+			};
+
+	private static final ThreadLocal<Transformer> transformer = new ThreadLocal<Transformer>() {
+		@Override
+		protected Transformer initialValue() {
+			try {
+				synchronized (transformerFactory) {
+					return transformerFactory.newTransformer();
+				}
+			} catch (TransformerConfigurationException e) {
+				throw new T5Exception(e);
+			}
+		}
+	};
+
+	private XmlUtils() {
+	}
+
+	/**
+	 * The calling thread's document builder, reset to its initial configuration. It must not be passed to other
+	 * threads or kept after parsing.
+	 */
+	public static DocumentBuilder getDocumentBuilder(boolean namespaceAware) {
+		DocumentBuilder builder = namespaceAware ? namespaceAwareDocumentBuilder.get() : documentBuilder.get();
+		builder.reset();
+		return builder;
+	}
+
+	public static Document parse(String xml, boolean namespaceAware) throws SAXException, IOException {
+		return getDocumentBuilder(namespaceAware).parse(new InputSource(new StringReader(xml)));
+	}
+
+	public static Document newDocument() {
+		return getDocumentBuilder(false).newDocument();
+	}
+
+	/**
+	 * The calling thread's identity transformer, reset to its default output properties. It must not be passed to
+	 * other threads or kept after transforming.
+	 */
+	public static Transformer getTransformer() {
+		Transformer identity = transformer.get();
+		identity.reset();
+		return identity;
+	}
+
+	/**
+	 * Compiles a stylesheet once, with the same secure configuration as the shared transformer. Keep the result and
+	 * call {@link Templates#newTransformer()} per transformation.
+	 */
+	public static Templates compileTemplates(Source stylesheet) throws TransformerConfigurationException {
+		// TransformerFactory is not thread-safe, the compiled templates are
+		synchronized (transformerFactory) {
+			return transformerFactory.newTemplates(stylesheet);
+		}
+	}
+
+	private static DocumentBuilderFactory createDocumentBuilderFactory(boolean namespaceAware) {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(namespaceAware);
+		factory.setXIncludeAware(false);
+		try {
+			factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+		} catch (ParserConfigurationException e) {
+			throw new T5Exception(e);
+		}
+		factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+		factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+		return factory;
+	}
+
+	private static DocumentBuilder createDocumentBuilder(DocumentBuilderFactory factory) {
+		try {
+			// DocumentBuilderFactory is not thread-safe either
+			synchronized (factory) {
+				return factory.newDocumentBuilder();
+			}
+		} catch (ParserConfigurationException e) {
+			throw new T5Exception(e);
+		}
+	}
+
+	private static TransformerFactory createTransformerFactory() {
+		TransformerFactory factory = TransformerFactory.newInstance();
+		try {
+			factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+		} catch (TransformerConfigurationException e) {
+			throw new T5Exception(e);
+		}
+		factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+		factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
+		return factory;
+	}
+}
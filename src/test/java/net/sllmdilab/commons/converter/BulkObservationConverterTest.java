@@ -0,0 +1,135 @@
+package net.sllmdilab.commons.converter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import net.sllmdilab.commons.exceptions.T5Exception;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uhn.fhir.model.dstu2.composite.CodeableConceptDt;
+import ca.uhn.fhir.model.dstu2.composite.QuantityDt;
+import ca.uhn.fhir.model.dstu2.resource.Bundle;
+import ca.uhn.fhir.model.dstu2.resource.Observation;
+import ca.uhn.fhir.model.primitive.DateTimeDt;
+import ca.uhn.fhir.model.primitive.DecimalDt;
+
+public class BulkObservationConverterTest {
+
+	private static final int OBSERVATION_COUNT = 1000;
+
+	private ObservationToT5XmlConverter converter;
+	private ForkJoinPool pool;
+	private BulkObservationConverter bulkConverter;
+	private List<Observation> observations;
+	private List<String> expected;
+
+	@Before
+	public void init() {
+		converter = new ObservationToT5XmlConverter(() -> "message-id");
+		pool = new ForkJoinPool(4);
+		bulkConverter = new BulkObservationConverter(converter, pool, 16);
+
+		observations = new ArrayList<Observation>();
+		expected = new ArrayList<String>();
+		for (int i = 0; i < OBSERVATION_COUNT; i++) {
+			Observation observation = createObservation(i);
+			observations.add(observation);
+			expected.add(withoutTimeStamp(converter.convertObservationToT5XmlString(observation)));
+		}
+	}
+
+	@After
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+	@Test
+	public void listIsConvertedInOrder() {
+		assertEquals(expected, withoutTimeStamps(bulkConverter.convert(observations)));
+	}
+
+	@Test
+	public void iteratorIsConvertedInOrder() {
+		List<String> messages = new ArrayList<String>();
+		bulkConverter.convert(observations.iterator(), true, messages::add);
+
+		assertEquals(expected, withoutTimeStamps(messages));
+	}
+
+	@Test
+	public void unorderedConversionEmitsEveryMessage() {
+		List<String> messages = new ArrayList<String>();
+		bulkConverter.convert(observations.stream().iterator(), false, messages::add);
+
+		messages = withoutTimeStamps(messages);
+		Collections.sort(messages);
+		List<String> sorted = new ArrayList<String>(expected);
+		Collections.sort(sorted);
+		assertEquals(sorted, messages);
+	}
+
+	@Test
+	public void bundlesAreConvertedInOrder() {
+		List<Bundle> bundles = new ArrayList<Bundle>();
+		for (int i = 0; i < OBSERVATION_COUNT; i += 300) {
+			Bundle bundle = new Bundle();
+			for (Observation observation : observations.subList(i, Math.min(i + 300, OBSERVATION_COUNT))) {
+				bundle.addEntry().setResource(observation);
+			}
+			bundles.add(bundle);
+		}
+		bundles.add(1, new Bundle());
+
+		List<String> messages = new ArrayList<String>();
+		bulkConverter.convertBundles(bundles.iterator(), true, messages::add);
+
+		assertEquals(expected, withoutTimeStamps(messages));
+	}
+
+	@Test(expected = T5Exception.class)
+	public void conversionErrorIsRethrown() {
+		observations.get(500).setValue(new CodeableConceptDt("MDC", "MDC_MOCK_CODE"));
+
+		bulkConverter.convert(observations.iterator(), true, message -> {
+		});
+	}
+
+	private Observation createObservation(int index) {
+		Observation observation = new Observation();
+		observation.setId("obs-" + index);
+		observation.setCode(new CodeableConceptDt("MDC", "MDC_PULS_OXIM_SAT_O2"));
+		observation.setEffective(new DateTimeDt("2015-03-26T16:32:43.000Z"));
+
+		QuantityDt quantity = new QuantityDt();
+		quantity.setValue(new DecimalDt(90 + index % 10));
+		quantity.setCode("MDC_DIM_PERCENT");
+		observation.setValue(quantity);
+
+		observation.getSubject().setReference("patient-" + index % 7);
+		observation.getDevice().setReference("device-1");
+		return observation;
+	}
+
+	private static List<String> withoutTimeStamps(List<String> messages) {
+		List<String> result = new ArrayList<String>();
+		for (String message : messages) {
+			result.add(withoutTimeStamp(message));
+		}
+		return result;
+	}
+
+	/**
+	 * The message time stamp is the time of conversion.
+	 */
+	private static String withoutTimeStamp(String message) {
+		return message.replaceFirst("<PCD_01_Message id=\"([^\"]*)\" timeStamp=\"[^\"]*\">",
+				"<PCD_01_Message id=\"$1\">");
+	}
+}
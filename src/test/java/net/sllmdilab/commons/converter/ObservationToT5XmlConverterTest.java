@@ -2,6 +2,15 @@ package net.sllmdilab.commons.converter;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
@@ -9,6 +18,11 @@ import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
 import net.sllmdilab.commons.converter.ObservationToT5XmlConverter;
+import net.sllmdilab.commons.exceptions.T5Exception;
+import net.sllmdilab.commons.t5.validators.RosettaValidator;
+import net.sllmdilab.commons.util.IdGenerator;
+import net.sllmdilab.commons.util.ParserUtils;
+import net.sllmdilab.commons.util.T5FHIRUtils;
 
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Before;
@@ -18,9 +32,13 @@ import org.w3c.dom.Element;
 
 import ca.uhn.fhir.model.dstu2.composite.CodeableConceptDt;
 import ca.uhn.fhir.model.dstu2.composite.QuantityDt;
+import ca.uhn.fhir.model.dstu2.composite.SampledDataDt;
+import ca.uhn.fhir.model.dstu2.composite.SimpleQuantityDt;
+import ca.uhn.fhir.model.dstu2.resource.Bundle;
 import ca.uhn.fhir.model.dstu2.resource.Observation;
 import ca.uhn.fhir.model.primitive.DateTimeDt;
 import ca.uhn.fhir.model.primitive.DecimalDt;
+import ca.uhn.fhir.model.primitive.StringDt;
 
 public class ObservationToT5XmlConverterTest {
 
@@ -113,6 +131,231 @@ public class ObservationToT5XmlConverterTest {
 				"/PCD_01_Message/Patient_Result/Order_Observations/MDS/VMD/CHAN/Metric/Observation/Unit", root);
 	}
 
+	@Test
+	public void streamedXmlIsIdenticalToDom() throws Exception {
+		Observation observation = createObservation(MOCK_SYSTEM, MOCK_CODE, MOCK_UNIT_CODE, MOCK_PATIENT_ID);
+
+		String dom = T5FHIRUtils.xmlToString(converter.convertObservationToT5Xml(observation));
+		ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+		converter.writeObservationAsT5Xml(observation, streamed);
+
+		assertEquals(withoutMessageId(dom), withoutMessageId(new String(streamed.toByteArray(),
+				StandardCharsets.UTF_8)));
+		assertEquals(withoutMessageId(dom), withoutMessageId(converter.convertObservationToT5XmlString(observation)));
+	}
+
+	@Test
+	public void waveformIsWrittenAsNumericArray() throws Exception {
+		Observation observation = createObservation(MOCK_SYSTEM, "MDC_ECG_ELEC_POTL_II", MOCK_UNIT_CODE,
+				MOCK_PATIENT_ID);
+		SampledDataDt sampledData = new SampledDataDt();
+		SimpleQuantityDt origin = new SimpleQuantityDt();
+		origin.setValue(new BigDecimal("-0.5"));
+		origin.setCode("MDC_DIM_MILLI_VOLT");
+		sampledData.setOrigin(origin);
+		sampledData.setPeriod(new BigDecimal("2"));
+		sampledData.setFactor(new BigDecimal("0.005"));
+		sampledData.setLowerLimit(new BigDecimal("-3.3"));
+		sampledData.setUpperLimit(new BigDecimal("3.3"));
+		sampledData.setDimensions(1);
+		sampledData.setData("100 200 E 0");
+		observation.setValue(sampledData);
+
+		Document doc = converter.convertObservationToT5Xml(observation);
+		Element root = doc.getDocumentElement();
+		String value = "/PCD_01_Message/Patient_Result/Order_Observations/MDS/VMD/CHAN/Metric/Observation/Value";
+		assertXpEquals("0^0.5^^-0.5", value, root);
+		assertXpEquals("NA", value + "/@typeHL7V2", root);
+		assertXpEquals("500", value + "/@sampleRate", root);
+		assertXpEquals("-3.3^3.3", value + "/@dataRange", root);
+		assertXpEquals("MDC_DIM_MILLI_VOLT",
+				"/PCD_01_Message/Patient_Result/Order_Observations/MDS/VMD/CHAN/Metric/Observation/Unit", root);
+
+		assertEquals(withoutMessageId(T5FHIRUtils.xmlToString(doc)),
+				withoutMessageId(converter.convertObservationToT5XmlString(observation)));
+		assertEquals(withoutMessageId(T5FHIRUtils.xmlToString(doc)), withoutMessageId(new String(
+				converter.convertObservationToT5XmlBytes(observation), StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void stringValueIsWrittenAsText() throws Exception {
+		Observation observation = createObservation(MOCK_SYSTEM, MOCK_CODE, MOCK_UNIT_CODE, MOCK_PATIENT_ID);
+		observation.setValue(new StringDt("sinus rhythm"));
+
+		Document doc = converter.convertObservationToT5Xml(observation);
+		Element root = doc.getDocumentElement();
+		String value = "/PCD_01_Message/Patient_Result/Order_Observations/MDS/VMD/CHAN/Metric/Observation/Value";
+		assertXpEquals("sinus rhythm", value, root);
+		assertXpEquals("ST", value + "/@typeHL7V2", root);
+
+		assertEquals(withoutMessageId(T5FHIRUtils.xmlToString(doc)),
+				withoutMessageId(converter.convertObservationToT5XmlString(observation)));
+		assertEquals(withoutMessageId(T5FHIRUtils.xmlToString(doc)), withoutMessageId(new String(
+				converter.convertObservationToT5XmlBytes(observation), StandardCharsets.UTF_8)));
+	}
+
+	@Test(expected = T5Exception.class)
+	public void unsupportedValueIsRejected() throws Exception {
+		Observation observation = createObservation(MOCK_SYSTEM, MOCK_CODE, MOCK_UNIT_CODE, MOCK_PATIENT_ID);
+		observation.setValue(new CodeableConceptDt(MOCK_SYSTEM, MOCK_CODE));
+
+		converter.convertObservationToT5XmlBytes(observation);
+	}
+
+	@Test
+	public void streamedXmlEscapesLikeDom() throws Exception {
+		String special = "a<b>&\"c'\t\n\r\u0001\u007f\u0085\u00e5\u20ac\ud83d\ude00";
+		Observation observation = createObservation(special, special, special, special);
+
+		String dom = T5FHIRUtils.xmlToString(converter.convertObservationToT5Xml(observation));
+
+		assertEquals(withoutMessageId(dom), withoutMessageId(converter.convertObservationToT5XmlString(observation)));
+		assertEquals(withoutMessageId(dom), withoutMessageId(new String(converter.convertObservationToT5XmlBytes(
+				observation), StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void streamedXmlWritesEmptyElementsLikeDom() throws Exception {
+		Observation observation = createObservation(null, "", null, null);
+
+		String dom = T5FHIRUtils.xmlToString(converter.convertObservationToT5Xml(observation));
+
+		assertEquals(withoutMessageId(dom), withoutMessageId(converter.convertObservationToT5XmlString(observation)));
+		assertEquals(withoutMessageId(dom), withoutMessageId(new String(converter.convertObservationToT5XmlBytes(
+				observation), StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void templateKeepsNoStateBetweenMessages() throws Exception {
+		Observation large = createObservation(MOCK_SYSTEM, StringUtils.repeat("x", 100000), MOCK_UNIT_CODE,
+				MOCK_PATIENT_ID);
+		Observation small = createObservation(MOCK_SYSTEM, MOCK_CODE, MOCK_UNIT_CODE, MOCK_PATIENT_ID);
+
+		converter.convertObservationToT5XmlBytes(large);
+		converter.convertObservationToT5XmlBytes(small);
+		ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+		converter.writeObservationAsT5Xml(small, streamed);
+
+		assertEquals(withoutMessageId(converter.convertObservationToT5XmlString(small)), withoutMessageId(new String(
+				streamed.toByteArray(), StandardCharsets.UTF_8)));
+		assertEquals(withoutMessageId(converter.convertObservationToT5XmlString(large)), withoutMessageId(new String(
+				converter.convertObservationToT5XmlBytes(large), StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void codesAreEnrichedFromRosetta() throws Exception {
+		RosettaValidator rosettaValidator = new RosettaValidator();
+		converter = new ObservationToT5XmlConverter(IdGenerator.RANDOM, new RosettaEnricher(rosettaValidator));
+		Observation observation = createObservation(MOCK_SYSTEM, "MDC_CONC_CO2", "MDC_DIM_MMHG", MOCK_PATIENT_ID);
+
+		Element root = converter.convertObservationToT5Xml(observation).getDocumentElement();
+		String path = "/PCD_01_Message/Patient_Result/Order_Observations/MDS/VMD/CHAN/Metric/Observation";
+		assertXpEquals(rosettaValidator.getHarmonizedDescription("MDC_CONC_CO2"), path + "/ObsIdentifier/@description",
+				root);
+		assertXpEquals("MDC_AWAY_CO2", path + "/ObsIdentifier/@synonym", root);
+		assertXpEquals("mm[Hg]", path + "/Unit/@ucumUnit", root);
+		assertXpEquals("MDC_DIM_MMHG", path + "/Unit", root);
+
+		String dom = T5FHIRUtils.xmlToString(root.getOwnerDocument());
+		assertEquals(withoutMessageId(dom), withoutMessageId(converter.convertObservationToT5XmlString(observation)));
+		assertEquals(withoutMessageId(dom), withoutMessageId(new String(converter.convertObservationToT5XmlBytes(
+				observation), StandardCharsets.UTF_8)));
+
+		Observation unknown = createObservation(MOCK_SYSTEM, MOCK_CODE, MOCK_UNIT_CODE, MOCK_PATIENT_ID);
+		dom = T5FHIRUtils.xmlToString(converter.convertObservationToT5Xml(unknown));
+		assertTrue(dom.contains("description=\"\""));
+		assertEquals(withoutMessageId(dom), withoutMessageId(new String(converter.convertObservationToT5XmlBytes(
+				unknown), StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void observationsAreGroupedPerPatientDeviceAndCode() throws Exception {
+		List<Observation> observations = Arrays.asList(
+				createDeviceObservation("patient-a", "device-1", "MDC_PULS_OXIM_SAT_O2", "2015-03-26T16:32:44.000Z"),
+				createDeviceObservation("patient-a", "device-1", "MDC_PULS_OXIM_SAT_O2", "2015-03-26T16:32:42.000Z"),
+				createDeviceObservation("patient-b", "device-3", "MDC_PULS_OXIM_SAT_O2", "2015-03-26T16:32:43.000Z"),
+				createDeviceObservation("patient-a", "device-2", "MDC_PULS_OXIM_SAT_O2", "2015-03-26T16:32:45.000Z"),
+				createDeviceObservation("patient-a", "device-1", "MDC_PULS_OXIM_PULS_RATE",
+						"2015-03-26T16:32:46.000Z"));
+
+		Map<String, String> messages = converter.convertObservationsToT5XmlStrings(observations);
+
+		assertEquals(Arrays.asList("patient-a", "patient-b"), new ArrayList<String>(messages.keySet()));
+
+		Element root = ParserUtils.parseXmlString(messages.get("patient-a")).getDocumentElement();
+		String orderObservations = "/PCD_01_Message/Patient_Result/Order_Observations";
+		assertXpEquals("patient-a", "/PCD_01_Message/Patient_Result/Patient/Identifier", root);
+		assertXpEquals("2015-03-26T16:32:42.000", orderObservations + "/Order/@timeStamp", root);
+		assertXpEquals("2", "count(" + orderObservations + "/MDS)", root);
+		assertXpEquals("4", "count(//Observation)", root);
+		assertXpEquals("3", "count(//Metric)", root);
+
+		String firstDevice = orderObservations + "/MDS[@index='1']/VMD[@index='1']/CHAN[@index='1']";
+		assertXpEquals("2", "count(" + firstDevice + "/Metric[@index='1']/Observation)", root);
+		assertXpEquals("1.1.1.1", firstDevice + "/Metric[@index='1']/Observation[@index='2']/@hierarchy", root);
+		assertXpEquals("2015-03-26T16:32:42.000", firstDevice + "/Metric[@index='1']/Observation[@index='2']/Timestamp",
+				root);
+		assertXpEquals("MDC_PULS_OXIM_PULS_RATE", firstDevice + "/Metric[@index='2']/Observation/ObsIdentifier", root);
+		assertXpEquals("1.1.1.2", firstDevice + "/Metric[@index='2']/Observation/@hierarchy", root);
+		assertXpEquals("2.1.1.1", orderObservations + "/MDS[@index='2']/VMD/CHAN/Metric/Observation/@hierarchy",
+				root);
+	}
+
+	@Test
+	public void batchOfOneIsSingleMessage() throws Exception {
+		Observation observation = createObservation(MOCK_SYSTEM, MOCK_CODE, MOCK_UNIT_CODE, MOCK_PATIENT_ID);
+
+		String batch = converter.convertObservationsToT5XmlStrings(Arrays.asList(observation)).get(MOCK_PATIENT_ID);
+
+		assertEquals(withoutMessageId(converter.convertObservationToT5XmlString(observation)), withoutMessageId(batch));
+	}
+
+	@Test
+	public void observationsOfBundleAreConverted() throws Exception {
+		Bundle bundle = new Bundle();
+		bundle.addEntry().setResource(createObservation(MOCK_SYSTEM, MOCK_CODE, MOCK_UNIT_CODE, MOCK_PATIENT_ID));
+		bundle.addEntry().setResource(new Bundle());
+		bundle.addEntry().setResource(createObservation(MOCK_SYSTEM, MOCK_CODE, MOCK_UNIT_CODE, MOCK_PATIENT_ID));
+
+		Map<String, String> messages = converter.convertBundleToT5XmlStrings(bundle);
+
+		assertEquals(1, messages.size());
+		assertXpEquals("2", "count(//Observation)", ParserUtils.parseXmlString(messages.get(MOCK_PATIENT_ID))
+				.getDocumentElement());
+	}
+
+	private Observation createDeviceObservation(String patientId, String deviceId, String code, String time) {
+		Observation observation = createObservation(MOCK_SYSTEM, code, MOCK_UNIT_CODE, patientId);
+		observation.setEffective(new DateTimeDt(time));
+		observation.getDevice().setReference(deviceId);
+		return observation;
+	}
+
+	private Observation createObservation(String system, String code, String unitCode, String patientId) {
+		Observation observation = new Observation();
+
+		DateTimeDt applies = new DateTimeDt(MOCK_TIMESTAMP_ZONED);
+		observation.setEffective(applies);
+
+		observation.setId(MOCK_ID);
+		observation.setCode(new CodeableConceptDt(system, code));
+
+		QuantityDt quantity = new QuantityDt();
+		quantity.setValue(new DecimalDt(MOCK_VALUE));
+		quantity.setCode(unitCode);
+		observation.setValue(quantity);
+
+		observation.getSubject().setReference(patientId);
+		return observation;
+	}
+
+	/**
+	 * The message id and time stamp are generated on every conversion.
+	 */
+	private static String withoutMessageId(String xml) {
+		return xml.replaceFirst("<PCD_01_Message id=\"[^\"]*\" timeStamp=\"[^\"]*\">", "<PCD_01_Message>");
+	}
+
 	private void assertXpEquals(String expected, String xPath, Element element) throws XPathExpressionException {
 		assertEquals(expected, xp(xPath, element));
 	}
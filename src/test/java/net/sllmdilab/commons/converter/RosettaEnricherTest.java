@@ -0,0 +1,61 @@
+package net.sllmdilab.commons.converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import net.sllmdilab.commons.t5.validators.RosettaValidator;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class RosettaEnricherTest {
+
+	private static RosettaValidator rosettaValidator;
+
+	private RosettaEnricher enricher;
+
+	@BeforeClass
+	public static void initValidator() {
+		rosettaValidator = new RosettaValidator();
+	}
+
+	@Before
+	public void init() {
+		enricher = new RosettaEnricher(rosettaValidator);
+	}
+
+	@Test
+	public void harmonizedTermIsResolved() {
+		RosettaCodeMetadata metadata = enricher.getMetadata("MDC_CONC_CO2");
+
+		assertEquals("MDC_CONC_CO2", metadata.getCode());
+		assertEquals(rosettaValidator.getHarmonizedDescription("MDC_CONC_CO2"), metadata.getDescription());
+		assertEquals("MDC_AWAY_CO2", metadata.getSynonym());
+		assertEquals("%", metadata.getUcumUnit());
+	}
+
+	@Test
+	public void unitsAreResolvedToUcum() {
+		assertEquals("%", enricher.getMetadata("MDC_DIM_PERCENT").getUcumUnit());
+		assertEquals("", enricher.getMetadata("MDC_DIM_PERCENT").getSynonym());
+		assertEquals("", enricher.getMetadata("MDC_DIM_PERCENT").getDescription());
+		assertEquals("mm[Hg]", enricher.getMetadata("mm[Hg]").getUcumUnit());
+	}
+
+	@Test
+	public void metadataIsCachedPerCode() {
+		RosettaCodeMetadata metadata = enricher.getMetadata("MDC_CONC_CO2");
+
+		assertSame(metadata, enricher.getMetadata("MDC_CONC_CO2"));
+		assertEquals(1, enricher.size());
+	}
+
+	@Test
+	public void unknownCodesAreNotCached() {
+		assertNull(enricher.getMetadata("MDC_NOT_A_CODE"));
+		assertNull(enricher.getMetadata(""));
+		assertNull(enricher.getMetadata(null));
+		assertEquals(0, enricher.size());
+	}
+}
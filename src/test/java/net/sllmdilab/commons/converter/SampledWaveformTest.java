@@ -0,0 +1,90 @@
+package net.sllmdilab.commons.converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+
+import net.sllmdilab.commons.exceptions.T5Exception;
+
+import org.junit.Test;
+
+import ca.uhn.fhir.model.dstu2.composite.SampledDataDt;
+
+public class SampledWaveformTest {
+
+	@Test
+	public void rawSamplesAreKeptExactly() {
+		SampledWaveform waveform = SampledWaveform.fromSampledData(createSampledData(" 12  -7\n1.25 0.001 ", "4"));
+
+		assertEquals(4, waveform.size());
+		assertEquals("12^-7^1.25^0.001", waveform.formatValues());
+		assertEquals(1.25, waveform.getValue(2), 0);
+		assertEquals("250", waveform.formatSampleRate());
+		assertNull(waveform.formatDataRange());
+	}
+
+	@Test
+	public void originAndFactorAreAppliedWithoutRounding() {
+		SampledDataDt sampledData = createSampledData("1 2 3 L", "3");
+		sampledData.getOrigin().setValue(new BigDecimal("0.2"));
+		sampledData.setFactor(new BigDecimal("0.1"));
+
+		SampledWaveform waveform = SampledWaveform.fromSampledData(sampledData);
+
+		assertEquals("0.3^0.4^0.5^", waveform.formatValues());
+		assertFalse(waveform.hasValue(3));
+		assertEquals("333.3333333333333", waveform.formatSampleRate());
+	}
+
+	@Test
+	public void t5ValuesConvertBackToSampledData() {
+		SampledWaveform waveform = SampledWaveform.fromT5("-1^0.50^^3", "500", "^10", "MDC_DIM_MILLI_VOLT");
+
+		SampledDataDt sampledData = waveform.toSampledData();
+		assertEquals("-1 0.5 E 3", sampledData.getData());
+		assertEquals(new BigDecimal("2"), sampledData.getPeriod());
+		assertNull(sampledData.getLowerLimit());
+		assertEquals(new BigDecimal("10"), sampledData.getUpperLimit());
+		assertEquals("^10", waveform.formatDataRange());
+	}
+
+	@Test
+	public void largeWaveformRoundTrips() {
+		StringBuilder data = new StringBuilder();
+		StringBuilder values = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			int sample = (i * 37) % 2048 - 1024;
+			data.append(i == 0 ? "" : " ").append(sample);
+			values.append(i == 0 ? "" : "^").append(sample);
+		}
+
+		SampledWaveform waveform = SampledWaveform.fromSampledData(createSampledData(data.toString(), "2"));
+
+		assertEquals(values.toString(), waveform.formatValues());
+		assertEquals(data.toString(), SampledWaveform.fromT5(waveform.formatValues(), "500", null, null)
+				.toSampledData().getData());
+	}
+
+	@Test(expected = T5Exception.class)
+	public void invalidSampleThrows() {
+		SampledWaveform.fromSampledData(createSampledData("1 x 3", "2"));
+	}
+
+	@Test(expected = T5Exception.class)
+	public void severalDimensionsThrow() {
+		SampledDataDt sampledData = createSampledData("1 2 3 4", "2");
+		sampledData.setDimensions(2);
+		SampledWaveform.fromSampledData(sampledData);
+	}
+
+	private SampledDataDt createSampledData(String data, String period) {
+		SampledDataDt sampledData = new SampledDataDt();
+		sampledData.getOrigin().setValue(BigDecimal.ZERO);
+		sampledData.setPeriod(new BigDecimal(period));
+		sampledData.setDimensions(1);
+		sampledData.setData(data);
+		return sampledData;
+	}
+}
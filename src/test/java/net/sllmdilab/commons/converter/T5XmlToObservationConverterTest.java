@@ -0,0 +1,151 @@
+package net.sllmdilab.commons.converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import net.sllmdilab.commons.exceptions.XmlParsingException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uhn.fhir.model.dstu2.composite.CodeableConceptDt;
+import ca.uhn.fhir.model.dstu2.composite.QuantityDt;
+import ca.uhn.fhir.model.dstu2.composite.SampledDataDt;
+import ca.uhn.fhir.model.dstu2.resource.Observation;
+import ca.uhn.fhir.model.primitive.DateTimeDt;
+import ca.uhn.fhir.model.primitive.DecimalDt;
+import ca.uhn.fhir.model.primitive.StringDt;
+
+public class T5XmlToObservationConverterTest {
+
+	private static final String MOCK_SYSTEM = "MDC";
+	private static final String MOCK_CODE = "MDC_PULS_OXIM_SAT_O2";
+	private static final String MOCK_UNIT_CODE = "MDC_DIM_PERCENT";
+	private static final String MOCK_PATIENT_ID = "121212-1212";
+	private static final String MOCK_ID = "obs-1";
+
+	private ObservationToT5XmlConverter writer;
+	private T5XmlToObservationConverter converter;
+
+	@Before
+	public void init() {
+		writer = new ObservationToT5XmlConverter();
+		converter = new T5XmlToObservationConverter();
+	}
+
+	@Test
+	public void observationIsConvertedBack() {
+		Observation original = createObservation(MOCK_PATIENT_ID, MOCK_CODE, "97.5", "2015-03-26T16:32:43.120Z");
+
+		List<Observation> observations = converter.convertT5XmlToObservations(
+				writer.convertObservationToT5XmlString(original));
+
+		assertEquals(1, observations.size());
+		Observation observation = observations.get(0);
+		assertEquals(MOCK_ID, observation.getId().getValueAsString());
+		assertEquals(MOCK_SYSTEM, observation.getCode().getCodingFirstRep().getSystem());
+		assertEquals(MOCK_CODE, observation.getCode().getCodingFirstRep().getCode());
+		assertEquals(MOCK_PATIENT_ID, observation.getSubject().getReference().getValueAsString());
+
+		QuantityDt quantity = (QuantityDt) observation.getValue();
+		assertEquals(new BigDecimal("97.5"), quantity.getValue());
+		assertEquals(MOCK_UNIT_CODE, quantity.getCode());
+
+		assertEquals(((DateTimeDt) original.getEffective()).getValue(),
+				((DateTimeDt) observation.getEffective()).getValue());
+	}
+
+	@Test
+	public void observationsOfSeveralPatientsAreStreamedInDocumentOrder() {
+		Map<String, String> messages = writer.convertObservationsToT5XmlStrings(Arrays.asList(
+				createObservation("patient-a", MOCK_CODE, "97", "2015-03-26T16:32:43.000Z"),
+				createObservation("patient-b", MOCK_CODE, "98", "2015-03-26T16:32:44.000Z"),
+				createObservation("patient-a", "MDC_PULS_OXIM_PULS_RATE", "60", "2015-03-26T16:32:45.000Z")));
+
+		List<Observation> observations = new ArrayList<Observation>();
+		for (String message : messages.values()) {
+			converter.convertT5XmlToObservations(new ByteArrayInputStream(message.getBytes(StandardCharsets.UTF_8)),
+					observations::add);
+		}
+
+		assertEquals(3, observations.size());
+		assertEquals("patient-a", observations.get(0).getSubject().getReference().getValueAsString());
+		assertEquals(MOCK_CODE, observations.get(0).getCode().getCodingFirstRep().getCode());
+		assertEquals("patient-a", observations.get(1).getSubject().getReference().getValueAsString());
+		assertEquals("MDC_PULS_OXIM_PULS_RATE", observations.get(1).getCode().getCodingFirstRep().getCode());
+		assertEquals("patient-b", observations.get(2).getSubject().getReference().getValueAsString());
+		assertEquals(new BigDecimal("98"), ((QuantityDt) observations.get(2).getValue()).getValue());
+	}
+
+	@Test
+	public void nonNumericValueIsKeptAsString() {
+		String xml = "<Result><PCD_01_Message><Patient_Result><Patient><Identifier>" + MOCK_PATIENT_ID
+				+ "</Identifier></Patient><Order_Observations><Observation uid=\"" + MOCK_ID + "\">"
+				+ "<ObsIdentifier codingSystemName=\"MDC\">MDC_VENT_MODE</ObsIdentifier>"
+				+ "<Value typeHL7V2=\"ST\">volume &amp; pressure</Value>"
+				+ "<Timestamp>2015-03-26T16:32:43.000</Timestamp></Observation></Order_Observations>"
+				+ "</Patient_Result></PCD_01_Message></Result>";
+
+		List<Observation> observations = converter.convertT5XmlToObservations(xml);
+
+		assertEquals(1, observations.size());
+		assertEquals("volume & pressure", ((StringDt) observations.get(0).getValue()).getValue());
+		assertEquals(MOCK_PATIENT_ID, observations.get(0).getSubject().getReference().getValueAsString());
+	}
+
+	@Test
+	public void numericArrayBecomesSampledData() {
+		String xml = "<Observation uid=\"" + MOCK_ID + "\">"
+				+ "<ObsIdentifier codingSystemName=\"MDC\">MDC_ECG_ELEC_POTL_II</ObsIdentifier>"
+				+ "<Value dataRange=\"-3.3^3.3\" sampleRate=\"250\" typeHL7V2=\"NA\">0.1^-0.25^^2</Value>"
+				+ "<Unit codingSystemName=\"MDC\">MDC_DIM_MILLI_VOLT</Unit></Observation>";
+
+		SampledDataDt sampledData = (SampledDataDt) converter.convertT5XmlToObservations(xml).get(0).getValue();
+
+		assertEquals("0.1 -0.25 E 2", sampledData.getData());
+		assertEquals(new BigDecimal("4"), sampledData.getPeriod());
+		assertEquals(new BigDecimal("-3.3"), sampledData.getLowerLimit());
+		assertEquals(new BigDecimal("3.3"), sampledData.getUpperLimit());
+		assertEquals("MDC_DIM_MILLI_VOLT", sampledData.getOrigin().getCode());
+	}
+
+	@Test
+	public void documentWithoutObservationsGivesNone() {
+		assertTrue(converter.convertT5XmlToObservations("<Result/>").isEmpty());
+	}
+
+	@Test(expected = XmlParsingException.class)
+	public void malformedXmlThrows() {
+		converter.convertT5XmlToObservations("<PCD_01_Message><Observation>");
+	}
+
+	@Test(expected = XmlParsingException.class)
+	public void invalidNumericValueThrows() {
+		converter.convertT5XmlToObservations(
+				"<Observation uid=\"1\"><Value typeHL7V2=\"NM\">high</Value></Observation>");
+	}
+
+	private Observation createObservation(String patientId, String code, String value, String time) {
+		Observation observation = new Observation();
+		observation.setId(MOCK_ID);
+		observation.setCode(new CodeableConceptDt(MOCK_SYSTEM, code));
+		observation.setEffective(new DateTimeDt(time));
+
+		QuantityDt quantity = new QuantityDt();
+		quantity.setValue(new DecimalDt(value));
+		quantity.setCode(MOCK_UNIT_CODE);
+		observation.setValue(quantity);
+
+		observation.getSubject().setReference(patientId);
+		observation.getDevice().setReference("device-1");
+		return observation;
+	}
+}
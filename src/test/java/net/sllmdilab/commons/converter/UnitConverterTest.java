@@ -0,0 +1,100 @@
+package net.sllmdilab.commons.converter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import net.sllmdilab.commons.exceptions.UnitConversionException;
+import net.sllmdilab.commons.t5.validators.RosettaValidator;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class UnitConverterTest {
+
+	private static final double DELTA = 1e-9;
+
+	private static UnitConverter unitConverter;
+
+	@BeforeClass
+	public static void init() {
+		unitConverter = new UnitConverter(new RosettaValidator());
+	}
+
+	@Test
+	public void voltagesAreConverted() {
+		assertEquals(1500.0, unitConverter.convert(1.5, "mV", "uV"), DELTA);
+		assertEquals(1500.0, unitConverter.convert(1.5, "MDC_DIM_MILLI_VOLT", "MDC_DIM_MICRO_VOLT"), DELTA);
+		assertEquals(0.0015, unitConverter.convert(1.5, "MDC_DIM_MILLI_VOLT", "V"), DELTA);
+	}
+
+	@Test
+	public void pressuresAreConverted() {
+		assertEquals(0.133322387415, unitConverter.convert(1, "MDC_DIM_MMHG", "MDC_DIM_KILO_PASCAL"), DELTA);
+		assertEquals(120.0, unitConverter.convert(15.99868648980, "kPa", "mm[Hg]"), 1e-6);
+		assertEquals(1.0, unitConverter.convert(0.980665, "hPa", "cm[H2O]"), DELTA);
+	}
+
+	@Test
+	public void temperaturesAreConvertedWithOffset() {
+		assertEquals(98.6, unitConverter.convert(37, "Cel", "[degF]"), DELTA);
+		assertEquals(0.0, unitConverter.convert(32, "MDC_DIM_FAHR", "MDC_DIM_DEGC"), DELTA);
+		assertEquals(273.15, unitConverter.convert(0, "Cel", "K"), DELTA);
+	}
+
+	@Test
+	public void compoundUnitsAreConverted() {
+		assertEquals(60.0, unitConverter.convert(1, "mL/min", "mL/h"), DELTA);
+		assertEquals(1000.0, unitConverter.convert(1, "mg/kg/min", "ug/kg/min"), DELTA);
+		assertEquals(1.0, unitConverter.convert(1, "MDC_DIM_X_ROTATIONS_PER_MIN", "MDC_DIM_X_ROTATIONS_PER_MIN"),
+				DELTA);
+		assertEquals(2 * Math.PI / 60, unitConverter.convert(1, "MDC_DIM_X_ROTATIONS_PER_MIN", "rad/s"), DELTA);
+	}
+
+	@Test
+	public void seriesIsConvertedInPlace() {
+		double[] values = { 1, -2, 0.5 };
+		unitConverter.convert(values, "mV", "uV");
+		assertArrayEquals(new double[] { 1000, -2000, 500 }, values, DELTA);
+
+		double[] partial = { 1, 2, 3, 4 };
+		unitConverter.getConversion("L", "mL").convert(partial, 1, 2);
+		assertArrayEquals(new double[] { 1, 2000, 3000, 4 }, partial, DELTA);
+	}
+
+	@Test
+	public void identityConversion() {
+		assertTrue(unitConverter.getConversion("MDC_DIM_MILLI_VOLT", "mV").isIdentity());
+	}
+
+	@Test
+	public void unitsOfDifferentDimensionsAreNotConvertible() {
+		assertTrue(unitConverter.isConvertible("mV", "uV"));
+		assertFalse(unitConverter.isConvertible("mV", "mm[Hg]"));
+		assertFalse(unitConverter.isConvertible("MDC_DIM_X_M", "MDC_DIM_X_SEC"));
+		assertFalse(unitConverter.isConvertible("mV", "MDC_UNKNOWN_UNIT"));
+	}
+
+	@Test
+	public void logarithmicUnitsAreNotConvertible() {
+		assertFalse(unitConverter.isConvertible("MDC_DIM_DECIBEL", "MDC_DIM_X_BEL"));
+		assertFalse(unitConverter.isConvertible("[pH]", "[pH]"));
+	}
+
+	@Test(expected = UnitConversionException.class)
+	public void nonCommensurableConversionThrows() {
+		unitConverter.getConversion("mV", "kPa");
+	}
+
+	@Test(expected = UnitConversionException.class)
+	public void unknownUnitThrows() {
+		unitConverter.convert(1, "MDC_UNKNOWN_UNIT", "mV");
+	}
+
+	@Test
+	public void inconsistentTableRowsAreSkipped() {
+		// MDC_DIM_X_AMPS has UCUM "a" (year) but dimension I (current)
+		assertFalse(unitConverter.isConvertible("MDC_DIM_X_AMPS", "MDC_DIM_X_COULOMB"));
+		assertEquals(1.0, unitConverter.convert(365.25, "d", "a"), DELTA);
+	}
+}
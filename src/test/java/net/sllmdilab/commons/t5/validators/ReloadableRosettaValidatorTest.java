@@ -0,0 +1,109 @@
+package net.sllmdilab.commons.t5.validators;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import net.sllmdilab.commons.exceptions.RosettaInitializationException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReloadableRosettaValidatorTest {
+
+	private static final String NEW_REFID = "MDC_MOCK_RELOADED_TERM";
+
+	private Path directory;
+	private ReloadableRosettaValidator reloadable;
+
+	@Before
+	public void init() throws Exception {
+		directory = Files.createTempDirectory("rosetta");
+		for (String name : new String[] { RosettaSources.DEFAULT_HARMONIZED, RosettaSources.DEFAULT_TERMS,
+				RosettaSources.DEFAULT_UNITS }) {
+			try (InputStream in = getClass().getResourceAsStream(name)) {
+				Files.copy(in, directory.resolve(name.substring(1)));
+			}
+		}
+		reloadable = new ReloadableRosettaValidator(directory);
+	}
+
+	@After
+	public void cleanUp() throws Exception {
+		reloadable.close();
+		for (String name : new String[] { RosettaSources.DEFAULT_HARMONIZED, RosettaSources.DEFAULT_TERMS,
+				RosettaSources.DEFAULT_UNITS, "rosetta_harmonized.xml.tmp" }) {
+			Files.deleteIfExists(directory.resolve(name.startsWith("/") ? name.substring(1) : name));
+		}
+		Files.delete(directory);
+	}
+
+	@Test
+	public void tablesAreLoadedFromDirectory() {
+		assertTrue(reloadable.get().isInHarmonizedTable("MDC_CONC_CO2"));
+		assertFalse(reloadable.get().isInHarmonizedTable(NEW_REFID));
+	}
+
+	@Test
+	public void reloadSwapsInNewTables() throws Exception {
+		RosettaValidator before = reloadable.get();
+		addHarmonizedTerm();
+
+		assertTrue(reloadable.reload());
+
+		assertNotSame(before, reloadable.get());
+		assertTrue(reloadable.get().isInHarmonizedTable(NEW_REFID));
+		assertFalse(before.isInHarmonizedTable(NEW_REFID));
+	}
+
+	@Test
+	public void brokenTablesKeepCurrentValidator() throws Exception {
+		RosettaValidator before = reloadable.get();
+		Files.write(directory.resolve("rosetta_harmonized.xml"), "<broken".getBytes(StandardCharsets.UTF_8));
+
+		assertFalse(reloadable.reload());
+
+		assertSame(before, reloadable.get());
+		assertTrue(reloadable.get().isInHarmonizedTable("MDC_CONC_CO2"));
+	}
+
+	@Test
+	public void changedTablesAreReloadedWhenWatching() throws Exception {
+		reloadable.startWatching();
+		addHarmonizedTerm();
+
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!reloadable.get().isInHarmonizedTable(NEW_REFID) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertTrue(reloadable.get().isInHarmonizedTable(NEW_REFID));
+	}
+
+	@Test(expected = RosettaInitializationException.class)
+	public void missingDirectoryIsRejected() {
+		new ReloadableRosettaValidator(directory.resolve("missing"));
+	}
+
+	/**
+	 * Writes next to the table and moves it in place, like a deployment would.
+	 */
+	private void addHarmonizedTerm() throws IOException {
+		Path harmonized = directory.resolve("rosetta_harmonized.xml");
+		String xml = new String(Files.readAllBytes(harmonized), StandardCharsets.UTF_8);
+		int end = xml.lastIndexOf("</term>") + "</term>".length();
+		xml = xml.substring(0, end) + "<term><REFID>" + NEW_REFID + "</REFID></term>" + xml.substring(end);
+
+		Path temporary = directory.resolve("rosetta_harmonized.xml.tmp");
+		Files.write(temporary, xml.getBytes(StandardCharsets.UTF_8));
+		Files.move(temporary, harmonized, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
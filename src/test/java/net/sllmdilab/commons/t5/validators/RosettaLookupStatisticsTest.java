@@ -0,0 +1,145 @@
+package net.sllmdilab.commons.t5.validators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RosettaLookupStatisticsTest {
+
+	private RosettaLookupStatistics statistics;
+
+	@Before
+	public void init() {
+		statistics = new RosettaLookupStatistics();
+	}
+
+	@Test
+	public void lookupsAreCountedPerMethod() {
+		RosettaValidator validator = new RosettaValidator(statistics);
+
+		validator.isInHarmonizedTable("MDC_CONC_CO2");
+		validator.isInHarmonizedTable("MDC_MOCK_CODE");
+		validator.isInHarmonizedTable("MDC_MOCK_CODE");
+		validator.getUnit("MDC_DIM_MMHG");
+
+		assertEquals(3, statistics.getCalls("isInHarmonizedTable"));
+		assertEquals(2, statistics.getMisses("isInHarmonizedTable"));
+		assertEquals(1, statistics.getCalls("getUnit"));
+		assertEquals(0, statistics.getMisses("getUnit"));
+		assertEquals(4, statistics.getLookups());
+		assertEquals(Collections.singletonMap("MDC_MOCK_CODE", 2L), statistics.getMissedKeys(10));
+		assertTrue(statistics.getLatencyPercentile("isInHarmonizedTable", 50) > 0);
+	}
+
+	@Test
+	public void batchUnitChecksAreCountedPerPair() {
+		RosettaValidator validator = new RosettaValidator(statistics);
+
+		validator.validateUnits(new String[] { "MDC_CONC_CO2", "MDC_MOCK_CODE" }, new String[] { "MDC_DIM_MMHG",
+				"MDC_DIM_MMHG" });
+		validator.validateUcumUnits(new String[] { "MDC_CONC_CO2" }, new String[] { "mm[Hg]" });
+
+		assertEquals(2, statistics.getCalls("validateUnits"));
+		assertEquals(1, statistics.getMisses("validateUnits"));
+		assertEquals(1, statistics.getCalls("validateUcumUnits"));
+		assertEquals(Collections.singletonMap("MDC_MOCK_CODE", 1L), statistics.getMissedKeys(10));
+	}
+
+	@Test
+	public void batchEnumChecksAreCountedPerPair() {
+		RosettaValidator validator = new RosettaValidator(statistics);
+
+		validator.validateEnumValues(new String[] { "MDC_PUMP_MODE", "MDC_PUMP_MODE" }, new String[] {
+				"pump-mode-continuous", "pump-mode-mock" });
+
+		assertEquals(2, statistics.getCalls("validateEnumValues"));
+		assertEquals(1, statistics.getMisses("validateEnumValues"));
+	}
+
+	@Test
+	public void loadTimesAndRetainedSizeAreReported() {
+		new RosettaValidator(statistics);
+
+		assertTrue(statistics.getLoadTime("indexes") > 0);
+
+		Map<String, Long> sizes = statistics.getRetainedSizes();
+		assertTrue(sizes.get("rosettaTerms") > 0);
+		assertTrue(statistics.getRetainedBytes() > 500 * 1024);
+		assertTrue(statistics.getRetainedBytes() < 20 * 1024 * 1024);
+	}
+
+	@Test
+	public void indexesAreBuiltOnFirstUse() {
+		RosettaValidator validator = new RosettaValidator(statistics);
+
+		for (String index : Arrays.asList("unitMatrix", "vendorIndex", "refidIndex")) {
+			assertFalse(statistics.getRetainedSizes().containsKey(index));
+			assertEquals(0, statistics.getLoadTime(index));
+		}
+
+		validator.isValidUnit("MDC_ECG_AMPL_ST_I", "MDC_DIM_MILLI_VOLT");
+		validator.getRefidsByVendorDescription("End-Tidal CO2 Concentration");
+		validator.findRefidsByPrefix("MDC_ECG_AMPL_ST");
+
+		assertTrue(statistics.getLoadTime("unitMatrix") > 0);
+		assertTrue(statistics.getLoadTime("vendorIndex") > 0);
+		assertTrue(statistics.getLoadTime("refidIndex") > 0);
+	}
+
+	@Test
+	public void percentilesAreBucketUpperBounds() {
+		for (int i = 0; i < 99; i++) {
+			statistics.recordLookup("getTerm", "MDC_CONC_CO2", true, 100);
+		}
+		statistics.recordLookup("getTerm", "MDC_CONC_CO2", true, 1000000);
+
+		assertEquals(128, statistics.getLatencyPercentile("getTerm", 50));
+		assertEquals(128, statistics.getLatencyPercentile("getTerm", 99));
+		assertEquals(1 << 20, statistics.getLatencyPercentile("getTerm", 100));
+		assertEquals(0, statistics.getLatencyPercentile("getUnit", 50));
+	}
+
+	@Test
+	public void missedKeysAreBounded() {
+		for (int i = 0; i < RosettaLookupStatistics.MAX_MISSED_KEYS + 100; i++) {
+			statistics.recordLookup("isKnownCode", "MDC_MOCK_" + i, false, 10);
+		}
+
+		assertEquals(RosettaLookupStatistics.MAX_MISSED_KEYS, statistics.getMissedKeys(Integer.MAX_VALUE).size());
+		assertEquals(RosettaLookupStatistics.MAX_MISSED_KEYS + 100, statistics.getMisses());
+	}
+
+	@Test
+	public void stormAfterNoiseFloodIsReported() {
+		Random random = new Random(42);
+		for (int i = 0; i < 20 * RosettaLookupStatistics.MAX_MISSED_KEYS; i++) {
+			statistics.recordLookup("isKnownCode", "MDC_NOISE_" + random.nextInt(), false, 10);
+		}
+		for (int i = 0; i < 1000; i++) {
+			statistics.recordLookup("isKnownCode", "MDC_STORM", false, 10);
+			statistics.recordLookup("isKnownCode", "MDC_NOISE_" + random.nextInt(), false, 10);
+		}
+
+		Map<String, Long> missed = statistics.getMissedKeys(1);
+		assertEquals("MDC_STORM", missed.keySet().iterator().next());
+		assertTrue(missed.get("MDC_STORM") >= 1000);
+		assertTrue(statistics.getReport().contains("MDC_STORM"));
+	}
+
+	@Test
+	public void resetClearsLookups() {
+		statistics.recordLookup("getTerm", "MDC_MOCK_CODE", false, 10);
+		statistics.reset();
+
+		assertEquals(0, statistics.getLookups());
+		assertTrue(statistics.getMissedKeys(10).isEmpty());
+	}
+}
@@ -0,0 +1,103 @@
+package net.sllmdilab.commons.t5.validators;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import net.sllmdilab.commons.exceptions.RosettaInitializationException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RosettaSnapshotTest {
+
+	private RosettaTables xmlTables;
+	private RosettaTables snapshotTables;
+
+	@Before
+	public void init() throws Exception {
+		xmlTables = new RosettaXmlReader().read(RosettaSources.getDefault());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RosettaSnapshot.write(xmlTables, out);
+		snapshotTables = RosettaSnapshot.read(ByteBuffer.wrap(out.toByteArray()));
+	}
+
+	@Test
+	public void snapshotContainsSameTables() {
+		assertEquals(xmlTables.getTables().size(), snapshotTables.getTables().size());
+		assertArrayEquals(xmlTables.getSourceChecksums(), snapshotTables.getSourceChecksums());
+
+		for (RosettaTable expected : xmlTables.getTables()) {
+			RosettaTable actual = snapshotTables.getTable(expected.getName());
+
+			assertArrayEquals(expected.getColumns(), actual.getColumns());
+			assertEquals(expected.getRowCount(), actual.getRowCount());
+			assertEquals(expected.hasParents(), actual.hasParents());
+
+			for (int row = 0; row < expected.getRowCount(); row++) {
+				assertEquals(expected.getParentRow(row), actual.getParentRow(row));
+				for (int column = 0; column < expected.getColumns().length; column++) {
+					assertEquals(expected.getValue(row, column), actual.getValue(row, column));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void validatorAnswersSameFromSnapshot() {
+		RosettaValidator xmlValidator = new RosettaValidator(xmlTables);
+		RosettaValidator snapshotValidator = new RosettaValidator(snapshotTables);
+
+		String[] refids = { "MDC_ECG_AMPL_ST", "MDC_AREA_BODY_SURF_ACTUAL", "MDC_AWAY_CO2", "UNKNOWN" };
+		for (String refid : refids) {
+			assertEquals(xmlValidator.isInTermsTable(refid), snapshotValidator.isInTermsTable(refid));
+			assertEquals(xmlValidator.isInHarmonizedTable(refid), snapshotValidator.isInHarmonizedTable(refid));
+			assertEquals(xmlValidator.getHarmonizedDescription(refid),
+					snapshotValidator.getHarmonizedDescription(refid));
+			assertEquals(xmlValidator.getHarmonizedUCUMUnits(refid), snapshotValidator.getHarmonizedUCUMUnits(refid));
+			assertEquals(xmlValidator.getHarmonizedSynonym(refid), snapshotValidator.getHarmonizedSynonym(refid));
+		}
+		assertEquals("mV", snapshotValidator.getUCUMUnit("MDC_DIM_MILLI_VOLT"));
+	}
+
+	@Test
+	public void staleSnapshotFallsBackToXml() throws Exception {
+		long[] checksums = xmlTables.getSourceChecksums();
+		checksums[1]++;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RosettaSnapshot.write(new RosettaTables(xmlTables.getTables(), checksums), out);
+
+		Path file = Files.createTempFile("rosetta", ".snapshot");
+		try {
+			Files.write(file, out.toByteArray());
+
+			RosettaTables loaded = RosettaLoader.load(RosettaSources.getDefault(), file.toUri().toURL());
+
+			assertArrayEquals(xmlTables.getSourceChecksums(), loaded.getSourceChecksums());
+			assertTrue(new RosettaValidator(loaded).isInTermsTable("MDC_ECG_AMPL_ST"));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test(expected = RosettaInitializationException.class)
+	public void truncatedSnapshotIsRejected() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RosettaSnapshot.write(xmlTables, out);
+		byte[] bytes = out.toByteArray();
+
+		RosettaSnapshot.read(ByteBuffer.wrap(bytes, 0, bytes.length / 2).slice());
+	}
+
+	@Test
+	public void unknownCodesAreNotFound() {
+		assertFalse(new RosettaValidator(snapshotTables).isInHarmonizedTable("MDC_NOT_A_CODE"));
+	}
+}
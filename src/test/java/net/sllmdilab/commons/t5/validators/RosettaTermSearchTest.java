@@ -0,0 +1,60 @@
+package net.sllmdilab.commons.t5.validators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class RosettaTermSearchTest {
+
+	private static RosettaTermSearch search;
+
+	@BeforeClass
+	public static void init() {
+		search = new RosettaTermSearch();
+	}
+
+	@Test
+	public void termsAreSearchedByDescription() {
+		assertEquals("MDC_ECG_HEART_RATE", search.search("heart rate", 5).get(0));
+		assertEquals("MDC_ECG_HEART_RATE", search.search("Hea", 5).get(0));
+		assertEquals(Arrays.asList("MDC_CONC_CA_ART", "MDC_CONC_CA_GEN"), search.search("calcium", 5));
+	}
+
+	@Test
+	public void searchToleratesTypos() {
+		List<String> results = search.search("temprature", 3);
+
+		assertEquals(3, results.size());
+		for (String refid : results) {
+			assertTrue(refid.startsWith("MDC_TEMP_"));
+		}
+	}
+
+	@Test
+	public void searchWithoutMatchIsEmpty() {
+		assertTrue(search.search("", 5).isEmpty());
+		assertTrue(search.search("xyzzy", 5).isEmpty());
+		assertTrue(search.search("heart rate", 0).isEmpty());
+	}
+
+	@Test
+	public void validatorDoesNotBuildSearchIndex() {
+		RosettaLookupStatistics statistics = new RosettaLookupStatistics();
+		new RosettaValidator(statistics);
+
+		assertFalse(statistics.getRetainedSizes().containsKey("searchIndex"));
+		assertEquals(0, statistics.getLoadTime("searchIndex"));
+
+		RosettaTermSearch measured = new RosettaTermSearch(statistics);
+		measured.search("heart rate", 5);
+
+		assertTrue(statistics.getLoadTime("searchIndex") > 0);
+		assertEquals(1, statistics.getCalls("search"));
+	}
+}
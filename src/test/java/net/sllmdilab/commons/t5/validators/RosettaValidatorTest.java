@@ -0,0 +1,341 @@
+package net.sllmdilab.commons.t5.validators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.sllmdilab.commons.util.ParserUtils;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class RosettaValidatorTest {
+
+	private static RosettaValidator validator;
+
+	@BeforeClass
+	public static void init() {
+		validator = new RosettaValidator();
+	}
+
+	@Test
+	public void termsAreFound() {
+		assertTrue(validator.isInTermsTable("MDC_ECG_AMPL_ST_I"));
+		assertTrue(validator.isInHarmonizedTable("MDC_AREA_BODY_SURF_ACTUAL"));
+		assertFalse(validator.isInTermsTable("MDC_MOCK_CODE"));
+		assertFalse(validator.isInHarmonizedTable("MDC_MOCK_CODE"));
+	}
+
+	@Test
+	public void harmonizedValuesAreResolved() {
+		assertEquals("Body Surface Area {GE}", validator.getHarmonizedDescription("MDC_AREA_BODY_SURF_ACTUAL"));
+		assertEquals("m2", validator.getHarmonizedUCUMUnits("MDC_AREA_BODY_SURF_ACTUAL"));
+		assertEquals("", validator.getHarmonizedDescription("MDC_MOCK_CODE"));
+		assertEquals("", validator.getHarmonizedUCUMUnits("MDC_MOCK_CODE"));
+	}
+
+	@Test
+	public void synonymsAreFoundBothWays() {
+		assertEquals("MDC_AWAY_CO2", validator.getHarmonizedSynonym("MDC_CONC_CO2"));
+		assertEquals("MDC_CONC_CO2", validator.getHarmonizedSynonym("MDC_AWAY_CO2"));
+		assertEquals("", validator.getHarmonizedSynonym("MDC_AREA_BODY_SURF_ACTUAL"));
+		assertNull(validator.getHarmonizedSynonym("MDC_MOCK_CODE"));
+	}
+
+	@Test
+	public void synonymEquivalenceClassIsReturned() {
+		Set<String> synonyms = validator.getHarmonizedSynonyms("MDC_AWAY_CO2");
+
+		assertEquals(new HashSet<String>(Arrays.asList("MDC_AWAY_CO2", "MDC_CONC_CO2")), synonyms);
+		assertEquals(synonyms, validator.getHarmonizedSynonyms("MDC_CONC_CO2"));
+		assertEquals(Arrays.asList("MDC_CONC_CO2"), validator.getTermsWithSynonym("MDC_AWAY_CO2"));
+		assertTrue(validator.getHarmonizedSynonyms("MDC_MOCK_CODE").isEmpty());
+	}
+
+	@Test
+	public void manyToOneSynonymsFormOneClass() {
+		RosettaStringPool.Builder pool = new RosettaStringPool.Builder();
+		RosettaTable.Builder harmonized = new RosettaTable.Builder(RosettaTables.HARMONIZED, pool, false);
+		harmonized.addRow(harmonizedRow("MDC_A", "MDC_C"), -1);
+		harmonized.addRow(harmonizedRow("MDC_B", "MDC_C"), -1);
+		harmonized.addRow(harmonizedRow("MDC_C", ""), -1);
+		harmonized.addRow(harmonizedRow("MDC_D", ""), -1);
+		RosettaValidator synonymValidator = new RosettaValidator(new RosettaTables(
+				Arrays.asList(harmonized.build(pool.build())), new long[3]));
+
+		assertEquals(new HashSet<String>(Arrays.asList("MDC_A", "MDC_B", "MDC_C")),
+				synonymValidator.getHarmonizedSynonyms("MDC_B"));
+		assertEquals(Arrays.asList("MDC_A", "MDC_B"), synonymValidator.getTermsWithSynonym("MDC_C"));
+		assertEquals("MDC_A", synonymValidator.getHarmonizedSynonym("MDC_C"));
+		assertEquals(Collections.singleton("MDC_D"), synonymValidator.getHarmonizedSynonyms("MDC_D"));
+	}
+
+	private Map<String, String> harmonizedRow(String refid, String synonym) {
+		Map<String, String> row = new LinkedHashMap<String, String>();
+		row.put("REFID", refid);
+		row.put("Synonym", synonym);
+		return row;
+	}
+
+	@Test
+	public void unitsAreMappedToUcum() {
+		assertEquals("mV", validator.getUCUMUnit("MDC_DIM_MILLI_VOLT"));
+		assertEquals("n/a", validator.getUCUMUnit("MDC_DIM_MOCK_UNIT"));
+	}
+
+	@Test
+	public void termsAndUnitsAreFoundByNumericCode() {
+		assertEquals("MDC_ECG_AMPL_ST", validator.getTermByCode(131840).getRefid());
+		assertSame(validator.getTermByCode(131840), validator.getTermByCode(2, 768));
+		assertSame(validator.getTerm("MDC_ECG_AMPL_ST"), validator.getTermByCode(2, 768));
+		assertEquals("MDC_AREA_BODY_SURF_ACTUAL", validator.getHarmonizedTermByCode(188744).getRefid());
+
+		assertEquals("MDC_DIM_MILLI_VOLT", validator.getUnitByCode(266418).getMdcUnit());
+		assertSame(validator.getUnitByCode(266418), validator.getUnitByCode(4, 4274));
+
+		assertNull(validator.getTermByCode(-1));
+		assertNull(validator.getTermByCode(2, 70000));
+		assertNull(validator.getUnitByCode(4, 65535));
+	}
+
+	@Test
+	public void unitsAreValidatedPerTerm() {
+		assertTrue(validator.isValidUnit("MDC_ECG_AMPL_ST_I", "MDC_DIM_MILLI_VOLT"));
+		assertTrue(validator.isValidUnit("MDC_ECG_AMPL_ST_I", "MDC_DIM_MICRO_VOLT"));
+		assertFalse(validator.isValidUnit("MDC_ECG_AMPL_ST_I", "MDC_DIM_BEAT_PER_MIN"));
+		assertFalse(validator.isValidUnit("MDC_MOCK_CODE", "MDC_DIM_MILLI_VOLT"));
+
+		assertTrue(validator.isValidUcumUnit("MDC_ECG_HEART_RATE", "{beat}/min"));
+		assertTrue(validator.isValidUcumUnit("MDC_AREA_BODY_SURF_ACTUAL", "m2"));
+		assertFalse(validator.isValidUcumUnit("MDC_ECG_HEART_RATE", "mV"));
+
+		assertTrue(validator.getAllowedUnits("MDC_ECG_AMPL_ST_I").contains("MDC_DIM_MILLI_VOLT"));
+	}
+
+	@Test
+	public void unitPairsAreValidatedInBatch() {
+		BitSet result = validator.validateUnits(new String[] { "MDC_ECG_AMPL_ST_I", "MDC_ECG_AMPL_ST_I",
+				"MDC_MOCK_CODE" }, new String[] { "MDC_DIM_MILLI_VOLT", "MDC_DIM_BEAT_PER_MIN", "MDC_DIM_MILLI_VOLT" });
+
+		assertTrue(result.get(0));
+		assertFalse(result.get(1));
+		assertFalse(result.get(2));
+	}
+
+	@Test
+	public void enumValuesAreValidated() {
+		assertEquals(Arrays.asList("RADIANT", "CONVECTIVE", "NONE"), new ArrayList<String>(validator
+				.getEnumValues("MDC_MICROENV_HEATER_TYPE")));
+		assertTrue(validator.isValidEnumValue("MDC_PUMP_MODE", "pump-mode-continuous"));
+		assertTrue(validator.isValidEnumValue("MDC_MICROENV_HEATER_TYPE", "NONE"));
+		assertFalse(validator.isValidEnumValue("MDC_MICROENV_HEATER_TYPE", "radiant"));
+		assertFalse(validator.isValidEnumValue("MDC_MICROENV_HEATER_TYPE", "pump-mode-continuous"));
+		assertFalse(validator.isValidEnumValue("MDC_AREA_BODY_SURF_ACTUAL", "NONE"));
+		assertFalse(validator.isValidEnumValue("MDC_MOCK_CODE", "NONE"));
+		assertTrue(validator.getEnumValues("MDC_MOCK_CODE").isEmpty());
+	}
+
+	@Test
+	public void sameEnumerationIsShared() {
+		assertSame(validator.getEnumValues("MDC_PUMP_MODE"), validator.getEnumValues("MDC_PUMP_MODE_SET"));
+		assertSame(validator.getEnumValues("MDC_PUMP_STAT").iterator().next(), validator.getEnumValues(
+				"MDC_PUMP_INFUSING_STATUS").iterator().next());
+	}
+
+	@Test
+	public void enumValuesAreValidatedInBatch() {
+		BitSet result = validator.validateEnumValues(new String[] { "MDC_PUMP_MODE", "MDC_COMM_STATUS",
+				"MDC_MOCK_CODE" }, new String[] { "pump-mode-kvo", "pump-mode-kvo", "pump-mode-kvo" });
+
+		assertTrue(result.get(0));
+		assertFalse(result.get(1));
+		assertFalse(result.get(2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void batchOfDifferentLengthsIsRejected() {
+		validator.validateEnumValues(new String[] { "MDC_PUMP_MODE" }, new String[0]);
+	}
+
+	@Test
+	public void observationsAreValidatedInBatch() {
+		RosettaValidationResult result = validator.validateObservations(new String[] { "MDC_ECG_AMPL_ST_I",
+				"MDC_ECG_AMPL_ST_I", "MDC_MOCK_CODE" }, new String[] { "MDC_DIM_MILLI_VOLT", "MDC_MOCK_UNIT",
+				"MDC_DIM_MILLI_VOLT" });
+
+		assertEquals(3, result.size());
+		assertTrue(result.isValid(0));
+		assertTrue(result.isInTermsTable(0));
+		assertTrue(result.isKnownUnit(0));
+		assertEquals("mV", result.getUcumUnit(0));
+
+		assertFalse(result.isValid(1));
+		assertTrue(result.isInTermsTable(1));
+		assertFalse(result.isKnownUnit(1));
+		assertNull(result.getUcumUnit(1));
+
+		assertFalse(result.isValid(2));
+		assertFalse(result.isInTermsTable(2));
+		assertFalse(result.isInHarmonizedTable(2));
+		assertEquals("", result.getHarmonizedUcumUnits(2));
+
+		BitSet invalid = new BitSet();
+		invalid.set(1, 3);
+		assertFalse(result.isAllValid());
+		assertEquals(invalid, result.getInvalid());
+	}
+
+	@Test
+	public void observationsOfT5DocumentAreValidated() {
+		Document document = ParserUtils.parseXmlString("<PCD_01_Message><Patient_Result><Order_Observations><MDS>"
+				+ "<VMD><CHAN><Metric><Observation><ObsIdentifier codingSystemName=\"MDC\">MDC_AREA_BODY_SURF_ACTUAL"
+				+ "</ObsIdentifier><Value>1.9</Value><Unit codingSystemName=\"MDC\">MDC_DIM_SQ_X_M</Unit>"
+				+ "</Observation></Metric><Metric><Observation><ObsIdentifier>MDC_ECG_AMPL_ST_I</ObsIdentifier>"
+				+ "<Unit> MDC_DIM_MILLI_VOLT </Unit></Observation></Metric></CHAN></VMD></MDS></Order_Observations>"
+				+ "</Patient_Result></PCD_01_Message>");
+
+		RosettaValidationResult result = validator.validateObservations(document);
+
+		assertEquals(2, result.size());
+		assertEquals("MDC_AREA_BODY_SURF_ACTUAL", result.getRefid(0));
+		assertTrue(result.isInHarmonizedTable(0));
+		assertEquals("m2", result.getHarmonizedUcumUnits(0));
+		assertEquals("MDC_DIM_MILLI_VOLT", result.getMdcUnit(1));
+		assertTrue(result.isValid(1));
+	}
+
+	@Test
+	public void termsAreFoundByVendorVmd() {
+		List<String> refids = validator.getRefidsByVendorVmd("Draeger", "PHYSIO_SRC_ID_ART");
+
+		assertTrue(refids.containsAll(Arrays.asList("MDC_PRESS_BLD_ART_DIA", "MDC_PRESS_BLD_ART_MEAN",
+				"MDC_PRESS_BLD_ART_SYS")));
+		assertTrue(validator.getRefidsByVendorVmd("Philips", "PHYSIO_SRC_ID_CO2").contains("MDC_AWAY_CO2_ET"));
+		assertTrue(validator.getRefidsByVendorVmd("GE", "PHYSIO_SRC_ID_ART").isEmpty());
+	}
+
+	@Test
+	public void joinedVendorVmdIsFoundByEachCode() {
+		String joined = "MDC_DEV_METER_PRESS_BLD_VMD/MDC_DEV_METER_PRESS_BLD_CHAN";
+
+		assertTrue(validator.getRefidsByVendorVmd("GE", joined).contains("MDC_BLD_PULS_RATE_INV"));
+		assertTrue(validator.getRefidsByVendorVmd("GE", "MDC_DEV_METER_PRESS_BLD_VMD").contains(
+				"MDC_BLD_PULS_RATE_INV"));
+		assertTrue(validator.getRefidsByVendorVmd("GE", "MDC_DEV_METER_PRESS_BLD_CHAN").contains(
+				"MDC_BLD_PULS_RATE_INV"));
+	}
+
+	@Test
+	public void descriptionsAreNormalized() {
+		assertEquals("end-tidal carbon dioxide", RosettaVendorIndex.normalizeDescription(
+				" \tEnd-tidal \n carbon  Dioxide\r\n"));
+		assertEquals("", RosettaVendorIndex.normalizeDescription("   "));
+	}
+
+	@Test
+	public void termsAreFoundByVendorDescription() {
+		assertTrue(validator.getRefidsByVendorDescription("Draeger", "End-tidal  carbon dioxide").contains(
+				"MDC_AWAY_CO2_ET"));
+		assertTrue(validator.getRefidsByVendorDescription("Philips", "End-Tidal CO2 Concentration").contains(
+				"MDC_AWAY_CO2_ET"));
+		assertTrue(validator.getRefidsByVendorDescription("End-Tidal CO2 Concentration").contains("MDC_AWAY_CO2_ET"));
+		assertTrue(validator.getRefidsByVendorDescription("Draeger", "End-Tidal CO2 Concentration").isEmpty());
+	}
+
+	@Test
+	public void harmonizedVendorLabelsAreSplit() {
+		List<String[]> labels = RosettaVendorIndex
+				.splitVendorLabels("PHYSIO_SRC_ID_ST {Philips}   {Spacelabs} MDC_DEV_ECG_VMD {GE }");
+
+		assertEquals(2, labels.size());
+		assertEquals("Philips", labels.get(0)[0]);
+		assertEquals("PHYSIO_SRC_ID_ST", labels.get(0)[1]);
+		assertEquals("GE", labels.get(1)[0]);
+		assertEquals("MDC_DEV_ECG_VMD", labels.get(1)[1]);
+	}
+
+	@Test
+	public void refidsAreFoundByPrefix() {
+		List<String> refids = validator.findRefidsByPrefix("MDC_ECG_AMPL_ST");
+
+		assertEquals("MDC_ECG_AMPL_ST", refids.get(0));
+		assertTrue(refids.containsAll(Arrays.asList("MDC_ECG_AMPL_ST_I", "MDC_ECG_AMPL_ST_V6", "MDC_ECG_AMPL_ST_dV1")));
+		for (String refid : refids) {
+			assertTrue(refid.startsWith("MDC_ECG_AMPL_ST"));
+		}
+		assertTrue(validator.findRefidsByPrefix("MDC_MOCK_").isEmpty());
+	}
+
+	@Test
+	public void refidsAreFoundByPattern() {
+		List<String> leads = validator.findRefids("MDC_ECG_AMPL_ST_<lead>");
+
+		assertTrue(leads.containsAll(Arrays.asList("MDC_ECG_AMPL_ST_I", "MDC_ECG_AMPL_ST_AVF", "MDC_ECG_AMPL_ST_V1")));
+		assertFalse(leads.contains("MDC_ECG_AMPL_ST"));
+		assertEquals(leads, validator.findRefids("MDC_ECG_AMPL_ST_<lead>"));
+		assertEquals(validator.findRefidsByPrefix("MDC_ECG_AMPL_ST_"), validator.findRefids("MDC_ECG_AMPL_ST_*"));
+		assertEquals(Arrays.asList("MDC_ECG_AMPL_ST_V1", "MDC_ECG_AMPL_ST_dV1"), validator
+				.findRefids("MDC_ECG_AMPL_ST_*V1"));
+		assertEquals(Collections.singletonList("MDC_ECG_AMPL_ST"), validator.findRefids("MDC_ECG_AMPL_ST"));
+	}
+
+	@Test
+	public void refidsAreListedByGroup() {
+		List<String> refids = validator.getRefidsByGroup("CVS_ECG_ST");
+
+		assertTrue(refids.contains("MDC_ECG_AMPL_ST_II"));
+		assertTrue(validator.getGroups().contains("CVS_ECG_ST"));
+		assertTrue(validator.getRefidsByGroup("MOCK_GROUP").isEmpty());
+	}
+
+	@Test
+	public void knownCodesAreRecognized() {
+		assertTrue(validator.isKnownCode("MDC_ECG_AMPL_ST_I"));
+		assertTrue(validator.isKnownCode("MDC_CONC_CO2"));
+		assertTrue(validator.isKnownCode("MDC_DIM_MMHG"));
+		assertTrue(validator.isKnownCode("mm[Hg]"));
+		assertFalse(validator.isKnownCode("MDC_MOCK_CODE"));
+		assertFalse(validator.isKnownCode(""));
+		assertFalse(validator.isKnownCode(null));
+	}
+
+	@Test
+	public void sharedInstanceGivesSameAnswersOnAllThreads() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<HarmonizedTerm>> results = new ArrayList<Future<HarmonizedTerm>>();
+			for (int i = 0; i < 16; i++) {
+				results.add(executor.submit(new Callable<HarmonizedTerm>() {
+					@Override
+					public HarmonizedTerm call() {
+						return validator.getHarmonizedTerm("MDC_CONC_CO2");
+					}
+				}));
+			}
+
+			HarmonizedTerm expected = validator.getHarmonizedTerm("MDC_CONC_CO2");
+			for (Future<HarmonizedTerm> result : results) {
+				assertSame(expected, result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package net.sllmdilab.commons.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TimeOrderedIdGeneratorTest {
+
+	private TimeOrderedIdGenerator generator;
+
+	@Before
+	public void init() {
+		generator = new TimeOrderedIdGenerator();
+	}
+
+	@Test
+	public void uuidIsVersion7WithCurrentTime() {
+		long before = System.currentTimeMillis();
+		UUID uuid = generator.generateUuid();
+		long after = System.currentTimeMillis();
+
+		assertEquals(7, uuid.version());
+		assertEquals(2, uuid.variant());
+		assertTrue(TimeOrderedIdGenerator.getTimestamp(uuid) >= before);
+		assertTrue(TimeOrderedIdGenerator.getTimestamp(uuid) <= after);
+	}
+
+	@Test
+	public void idsOfOneThreadIncrease() {
+		String previous = generator.generateId();
+		for (int i = 0; i < 100000; i++) {
+			String id = generator.generateId();
+			assertTrue(previous + " >= " + id, id.compareTo(previous) > 0);
+			previous = id;
+		}
+	}
+
+	@Test
+	public void idsOfConcurrentThreadsAreUnique() throws InterruptedException {
+		Set<String> ids = ConcurrentHashMap.newKeySet();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 8; t++) {
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 20000; i++) {
+					ids.add(generator.generateId());
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(8 * 20000, ids.size());
+	}
+
+	@Test
+	public void randomGeneratorGivesVersion4() {
+		assertEquals(4, UUID.fromString(IdGenerator.RANDOM.generateId()).version());
+	}
+}
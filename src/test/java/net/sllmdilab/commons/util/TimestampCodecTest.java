@@ -0,0 +1,86 @@
+package net.sllmdilab.commons.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class TimestampCodecTest {
+
+	private static final long MOCK_TIME = 1439903076710L;
+
+	@Test
+	public void formatsLikeDateTimeFormatter() {
+		DateTimeFormatter iso = DateTimeFormatter.ofPattern(Constants.ISO_DATE_FORMAT).withZone(ZoneOffset.UTC);
+		DateTimeFormatter hl7 = DateTimeFormatter.ofPattern("yyyyMMddHHmmss.SSSZ").withZone(ZoneOffset.UTC);
+
+		Random random = new Random(42);
+		long max = Instant.parse("9999-12-31T23:59:59.999Z").toEpochMilli();
+		for (int i = 0; i < 10000; i++) {
+			long time = (long) (random.nextDouble() * max);
+			assertEquals(iso.format(Instant.ofEpochMilli(time)), TimestampCodec.formatIso(time));
+			assertEquals(hl7.format(Instant.ofEpochMilli(time)), TimestampCodec.formatHl7(time));
+			assertEquals(time, TimestampCodec.parseIso(TimestampCodec.formatIso(time)));
+			assertEquals(time, TimestampCodec.parseHl7(TimestampCodec.formatHl7(time)));
+		}
+	}
+
+	@Test
+	public void formatsEdgeDates() {
+		assertEquals("1970-01-01T00:00:00.000", TimestampCodec.formatIso(0));
+		assertEquals("1969-12-31T23:59:59.999", TimestampCodec.formatIso(-1));
+		assertEquals("2016-02-29T12:00:00.000", TimestampCodec.formatIso(1456747200000L));
+		assertEquals("20150818130436.710+0000", TimestampCodec.formatHl7(MOCK_TIME));
+	}
+
+	@Test
+	public void formatsLocalTime() {
+		assertEquals("2015-08-18T14:04:36.710", TimestampCodec.formatIso(MOCK_TIME, TimeZone.getTimeZone("GMT+1")));
+	}
+
+	@Test
+	public void parsesIsoOffsetsAndFractions() {
+		assertEquals(MOCK_TIME, TimestampCodec.parseIso("2015-08-18T13:04:36.710"));
+		assertEquals(MOCK_TIME, TimestampCodec.parseIso("2015-08-18T13:04:36.710Z"));
+		assertEquals(MOCK_TIME, TimestampCodec.parseIso("2015-08-18T14:04:36.710+01:00"));
+		assertEquals(MOCK_TIME, TimestampCodec.parseIso("2015-08-18T12:04:36.710-0100"));
+		assertEquals(MOCK_TIME, TimestampCodec.parseIso("2015-08-18T13:04:36.710999"));
+		assertEquals(MOCK_TIME - 710, TimestampCodec.parseIso("2015-08-18T13:04:36"));
+		assertEquals(MOCK_TIME - 10, TimestampCodec.parseIso("2015-08-18T13:04:36.7"));
+	}
+
+	@Test
+	public void parsesHl7Precisions() {
+		assertEquals(Instant.parse("2015-01-01T00:00:00Z").toEpochMilli(), TimestampCodec.parseHl7("2015"));
+		assertEquals(Instant.parse("2015-08-01T00:00:00Z").toEpochMilli(), TimestampCodec.parseHl7("201508"));
+		assertEquals(Instant.parse("2015-08-18T13:00:00Z").toEpochMilli(), TimestampCodec.parseHl7("2015081813"));
+		assertEquals(Instant.parse("2015-08-18T12:04:00Z").toEpochMilli(),
+				TimestampCodec.parseHl7("201508181304+0100"));
+		assertEquals(MOCK_TIME - 10, TimestampCodec.parseHl7("20150818130436.7"));
+		assertEquals(MOCK_TIME, TimestampCodec.parseHl7("20150818130436.7109"));
+		assertEquals(MOCK_TIME, TimestampCodec.parseHl7("20150818130436.710Z"));
+		assertEquals(MOCK_TIME, TimestampCodec.parseHl7("20150818140436.710+01"));
+		assertEquals(MOCK_TIME, TimestampCodec.parseHl7("20150818120436.710-0100"));
+	}
+
+	@Test(expected = DateTimeParseException.class)
+	public void rejectsInvalidDay() {
+		TimestampCodec.parseIso("2015-02-29T00:00:00.000");
+	}
+
+	@Test(expected = DateTimeParseException.class)
+	public void rejectsOddHl7Precision() {
+		TimestampCodec.parseHl7("2015081");
+	}
+
+	@Test(expected = DateTimeParseException.class)
+	public void rejectsTrailingGarbage() {
+		TimestampCodec.parseIso("2015-08-18T13:04:36.710 UTC");
+	}
+}
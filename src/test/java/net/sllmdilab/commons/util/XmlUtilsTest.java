@@ -0,0 +1,94 @@
+package net.sllmdilab.commons.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+public class XmlUtilsTest {
+
+	@Test
+	public void builderIsReusedWithinThread() throws Exception {
+		DocumentBuilder builder = XmlUtils.getDocumentBuilder(false);
+		assertSame(builder, XmlUtils.getDocumentBuilder(false));
+		assertNotSame(builder, XmlUtils.getDocumentBuilder(true));
+
+		AtomicReference<DocumentBuilder> other = new AtomicReference<DocumentBuilder>();
+		Thread thread = new Thread(() -> other.set(XmlUtils.getDocumentBuilder(false)));
+		thread.start();
+		thread.join();
+		assertNotSame(builder, other.get());
+	}
+
+	@Test
+	public void parsesAfterFailedParse() throws Exception {
+		try {
+			XmlUtils.parse("<Observation>", false);
+		} catch (SAXException e) {
+			// expected, the builder must still be usable
+		}
+
+		Document document = XmlUtils.parse("<Observation uid=\"1\"/>", false);
+		assertEquals("1", document.getDocumentElement().getAttribute("uid"));
+	}
+
+	@Test
+	public void namespaceAwareParse() throws Exception {
+		Document document = XmlUtils.parse("<t5:Observation xmlns:t5=\"urn:t5\"/>", true);
+		assertEquals("urn:t5", document.getDocumentElement().getNamespaceURI());
+		assertNull(XmlUtils.parse("<t5:Observation xmlns:t5=\"urn:t5\"/>", false).getDocumentElement()
+				.getNamespaceURI());
+	}
+
+	@Test(expected = SAXException.class)
+	public void externalEntitiesAreNotResolved() throws Exception {
+		File file = File.createTempFile("secret", ".txt");
+		file.deleteOnExit();
+		XmlUtils.parse("<!DOCTYPE Observation [<!ENTITY secret SYSTEM \"" + file.toURI() + "\">]>"
+				+ "<Observation>&secret;</Observation>", false);
+	}
+
+	@Test
+	public void transformerIsResetBetweenUses() throws Exception {
+		Transformer transformer = XmlUtils.getTransformer();
+		transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+		transformer = XmlUtils.getTransformer();
+
+		StringWriter writer = new StringWriter();
+		transformer.transform(new DOMSource(XmlUtils.parse("<Observation/>", false)), new StreamResult(writer));
+		assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?><Observation/>",
+				writer.toString());
+	}
+
+	@Test
+	public void compiledTemplatesTransform() throws Exception {
+		Templates templates = XmlUtils.compileTemplates(new StreamSource(new StringReader(
+				"<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+						+ "<xsl:output method=\"text\"/>"
+						+ "<xsl:template match=\"/\"><xsl:value-of select=\"count(//Observation)\"/></xsl:template>"
+						+ "</xsl:stylesheet>")));
+
+		StringWriter writer = new StringWriter();
+		templates.newTransformer().transform(
+				new DOMSource(XmlUtils.parse("<Metric><Observation/><Observation/></Metric>", false)),
+				new StreamResult(writer));
+		assertEquals("2", writer.toString());
+	}
+}